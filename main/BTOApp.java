@@ -4,19 +4,29 @@ import main.models.*;
 import main.services.*;
 import main.util.*;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 public class BTOApp {
 
     private static Scanner scanner = new Scanner(System.in);
-    private static SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
     private static User currentUser = null;
-    private static ArrayList<BTOProject> allProjects = new ArrayList<>();
+    private static final int PAGE_SIZE = 20;
+    private static final int SEARCH_LIMIT = 200;
+    private static final int MAX_EDIT_ATTEMPTS = 3;
+    private static final int HOT_SPOT_LIMIT = 20;
+    private static final int SUGGESTION_LIMIT = 10;
+    private static boolean restoredFromLog = false;
 
     public static void main(String[] args) {
         initializeSystem();
+        // from here on, changes are written to the CSV files in the background
+        WriteBehindStore.start();
+        if (restoredFromLog) {
+            // the CSV files may be behind the recovered state
+            WriteBehindStore.markAllDirty();
+        }
 
         boolean running = true;
         while (running) {
@@ -56,52 +66,74 @@ public class BTOApp {
         }
 
         scanner.close();
+        WriteBehindStore.shutdown();
+        DomainEvents.stop();
+        StateJournal.close();
+        ApplicationStore.close();
+        Log.shutdown();
     }
 
-    // Initialize the system with data from CSV files
+    // Initialize the system from the recovery log, or from the CSV files on a first start
     private static void initializeSystem() {
         try {
-            // Load and add all managers
-            List<HDBManager> managers = FileManager.loadManagers();
-            for (HDBManager manager : managers) {
-                UserRepository.addUser(manager);
-            }
-            System.out.println("Loaded " + managers.size() + " managers.");
-            
-            // Load and add all officers
-            List<HDBOfficer> officers = FileManager.loadOfficers();
-            for (HDBOfficer officer : officers) {
-                UserRepository.addUser(officer);
-            }
-            System.out.println("Loaded " + officers.size() + " officers.");
-            
-            // Load and add all applicants
-            List<Applicant> applicants = FileManager.loadApplicants();
-            for (Applicant applicant : applicants) {
-                UserRepository.addUser(applicant);
-            }
-            System.out.println("Loaded " + applicants.size() + " applicants.");
-            
-            // Load all projects
-            List<BTOProject> projects = FileManager.loadProjects(UserRepository.getUserDatabase());
-            for (BTOProject project : projects) {
-                ProjectRepository.addProject(project);
-                project.getManager().addProject(project);
-
+            // the recovery log is newer than the CSV files, which are only an export
+            restoredFromLog = StateJournal.recover();
+            if (restoredFromLog) {
+                System.out.println("Restored " + UserRepository.getAllUsers().size() + " users and "
+                        + ProjectRepository.getAllProjects().size() + " projects from the recovery log.");
+            } else {
+                loadCsvFiles();
             }
-            System.out.println("Loaded " + projects.size() + " projects.");
-            
-            // Update allProjects reference
-            allProjects = ProjectRepository.getAllProjects();
-            
-            System.out.println("System initialized with data from CSV files.");
-            
+            // size the membership filters to what was loaded
+            UserRepository.rebuildFilter();
+            ApplicationStore.rebuildActiveFilter();
+            ServiceLevels.rebuild();
+            // from here on, every change is journaled
+            StateJournal.open();
+            ProjectActivity.subscribe();
+            // from here on, changes are published to subscribers
+            DomainEvents.start();
         } catch (Exception e) {
             System.out.println("Error initializing system: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    // Load every user and project from the CSV files
+    private static void loadCsvFiles() {
+        // Load and add all managers
+        List<HDBManager> managers = FileManager.loadManagers();
+        for (HDBManager manager : managers) {
+            UserRepository.addUser(manager);
+        }
+        System.out.println("Loaded " + managers.size() + " managers.");
+        
+        // Load and add all officers
+        List<HDBOfficer> officers = FileManager.loadOfficers();
+        for (HDBOfficer officer : officers) {
+            UserRepository.addUser(officer);
+        }
+        System.out.println("Loaded " + officers.size() + " officers.");
+        
+        // Load and add all applicants
+        List<Applicant> applicants = FileManager.loadApplicants();
+        for (Applicant applicant : applicants) {
+            UserRepository.addUser(applicant);
+        }
+        System.out.println("Loaded " + applicants.size() + " applicants.");
+        
+        // Load all projects
+        List<BTOProject> projects = FileManager.loadProjects(UserRepository.getAllUsers());
+        for (BTOProject project : projects) {
+            ProjectRepository.addProject(project);
+            project.getManager().addProject(project);
+
+        }
+        System.out.println("Loaded " + projects.size() + " projects.");
+        
+        System.out.println("System initialized with data from CSV files.");
+    }
+
     // Display the main menu
     private static void displayMainMenu() {
         System.out.println("\n===== BTO Application System =====");
@@ -120,7 +152,8 @@ public class BTOApp {
             return;
         }
 
-        if (!UserRepository.containsUser(nric)) {
+        User user = UserRepository.getUser(NricCodec.pack(nric));
+        if (user == null) {
             System.out.println("User not found.");
             return;
         }
@@ -128,7 +161,6 @@ public class BTOApp {
         System.out.print("Password: ");
         String password = scanner.nextLine();
         
-        User user = UserRepository.getUser(nric);
         if (user.checkPassword(password)) {
             currentUser = user;
             System.out.println("Login successful. Welcome, " + user.getName() + "!");
@@ -149,7 +181,8 @@ public class BTOApp {
             System.out.println("6. View My Enquiries");
             System.out.println("7. Edit Enquiry");
             System.out.println("8. Delete Enquiry");
-            System.out.println("9. Logout");
+            System.out.println("9. Browse Project Catalogue");
+            System.out.println("10. Logout");
 
             int choice = getIntInput("Enter your choice: ");
 
@@ -179,6 +212,9 @@ public class BTOApp {
                     deleteEnquiry(applicant);
                     break;
                 case 9:
+                    browseCatalogue();
+                    break;
+                case 10:
                     System.out.println("Logging out...");
                     currentUser = null;
                     return;
@@ -204,7 +240,10 @@ public class BTOApp {
             System.out.println("10. Handle Withdrawal Requests");
             System.out.println("11. View All Enquiries");
             System.out.println("12. Reply to Project Enquiries");
-            System.out.println("13. Logout");
+            System.out.println("13. Search Enquiries");
+            System.out.println("14. View Project Hot Spots");
+            System.out.println("15. Wait Time Report");
+            System.out.println("16. Logout");
     
             int choice = getIntInput("Enter your choice: ");
     
@@ -246,6 +285,15 @@ public class BTOApp {
                     replyToEnquiries(manager);
                     break;
                 case 13:
+                    searchEnquiries();
+                    break;
+                case 14:
+                    viewHotSpots();
+                    break;
+                case 15:
+                    viewWaitTimeReport();
+                    break;
+                case 16:
                     System.out.println("Logging out...");
                     currentUser = null;
                     return;
@@ -264,7 +312,8 @@ public class BTOApp {
             System.out.println("1. View Project Assignment");
             System.out.println("2. Book Flat for Applicant");
             System.out.println("3. Reply to Enquiry");
-            System.out.println("4. Logout");
+            System.out.println("4. Register to Handle Project");
+            System.out.println("5. Logout");
 
             int choice = getIntInput("Enter your choice: ");
 
@@ -272,18 +321,23 @@ public class BTOApp {
                 case 1:
                     System.out.println("\n===== Project Assignment =====");
                     if (officer.isHandlingProject()) {
-                        System.out.println("Currently assigned to project: " + officer.getHandlingProjectId());
+                        System.out.println("Currently assigned to project: " + officer.getHandlingProjectName());
                     } else {
                         System.out.println("Not currently assigned to any project.");
+                        String pending = officerService.getPendingRegistration(officer);
+                        if (pending != null) {
+                            System.out.println("Registration pending for project: " + pending);
+                        }
                     }
                     break;
                 case 2:
                     System.out.println("\n===== Book Flat =====");
                     System.out.print("Enter applicant NRIC: ");
                     String applicantNric = scanner.nextLine();
-                    System.out.print("Enter flat type (2-room/3-room): ");
+                    System.out.print("Enter flat type (e.g. 2-room): ");
                     String flatType = scanner.nextLine();
                     officerService.bookFlat(applicantNric, flatType);
+                    System.out.println("Flat of type " + flatType + " booked for applicant " + applicantNric);
                     break;
                 case 3:
                     System.out.println("\n===== Reply to Enquiry =====");
@@ -292,8 +346,12 @@ public class BTOApp {
                     System.out.print("Enter reply message: ");
                     String message = scanner.nextLine();
                     officerService.replyToEnquiry(enquiryId, message);
+                    System.out.println("Replied to enquiry " + enquiryId + ": " + message);
                     break;
                 case 4:
+                    registerForProject(officer, officerService);
+                    break;
+                case 5:
                     System.out.println("Logging out...");
                     currentUser = null;
                     return;
@@ -303,10 +361,49 @@ public class BTOApp {
         }
     }
 
+    // Officer: Register to handle a project
+    private static void registerForProject(HDBOfficer officer, HDBOfficerService officerService) {
+        System.out.println("\n===== Register to Handle Project =====");
+        List<BTOProject> visibleProjects = new ArrayList<>();
+        for (BTOProject project : ProjectRepository.getAllProjects()) {
+            if (project.isVisible()) {
+                visibleProjects.add(project);
+            }
+        }
+        if (visibleProjects.isEmpty()) {
+            System.out.println("No projects available.");
+            return;
+        }
+
+        System.out.println("Select project to handle:");
+        BTOProject selectedProject = selectProject(visibleProjects,
+                p -> p.getProjectName() + " (" + p.getOfficerCount() + "/" + p.getMaxOfficers() + " officers)",
+                prefix -> ApplicantService.suggestProjects(prefix, SUGGESTION_LIMIT, visibleProjects));
+        if (selectedProject == null) {
+            return;
+        }
+        switch (officerService.registerForProject(officer, selectedProject)) {
+            case SUBMITTED:
+                System.out.println("Registration submitted for project: " + selectedProject.getProjectName());
+                break;
+            case ALREADY_HANDLING:
+                System.out.println("Officer already handling a project.");
+                break;
+            case ALREADY_PENDING:
+                System.out.println("You already have a pending registration.");
+                break;
+            case APPLIED_TO_PROJECT:
+                System.out.println("You cannot handle a project you have applied for.");
+                break;
+            default:
+                System.out.println("No officer slots left for project: " + selectedProject.getProjectName());
+        }
+    }
+
     // Applicant: View available projects
     private static void viewAvailableProjects(Applicant applicant) {
         System.out.println("\n===== Available Projects =====");
-        List<BTOProject> availableProjects = ApplicantService.viewAvailableProjects(applicant, allProjects);
+        List<BTOProject> availableProjects = ApplicantService.viewAvailableProjects(applicant, ProjectRepository.getAllProjects());
 
         if (availableProjects.isEmpty()) {
             System.out.println("No available projects for your eligibility criteria.");
@@ -316,65 +413,100 @@ public class BTOApp {
         for (int i = 0; i < availableProjects.size(); i++) {
             BTOProject project = availableProjects.get(i);
             System.out.println((i + 1) + ". " + project.getProjectName() + " - " + project.getNeighborhood());
-            System.out.println("   Application Period: " + dateFormat.format(project.getStartDate()) +
-                    " to " + dateFormat.format(project.getEndDate()));
-
-            if (project.getFlatTypes().contains("2-room")) {
-                System.out.println("   2-room units available: " + project.getTwoRoomUnitsAvailable());
-            }
+            System.out.println("   Application Period: " + DateCodec.format(project.getStartDay()) +
+                    " to " + DateCodec.format(project.getEndDay()));
 
-            if (project.getFlatTypes().contains("3-room")) {
-                System.out.println("   3-room units available: " + project.getThreeRoomUnitsAvailable());
+            for (String flatType : project.getFlatTypes()) {
+                System.out.println("   " + flatType + " units available: " + project.getUnits(flatType));
             }
 
             System.out.println();
         }
     }
 
-    // Applicant: Apply for project
-    private static void applyForProject(Applicant applicant) {
-        System.out.println("\n===== Apply for Project =====");
-        List<BTOProject> availableProjects = ApplicantService.viewAvailableProjects(applicant, allProjects);
+    // Applicant: Browse the project catalogue with filters and facet counts
+    private static void browseCatalogue() {
+        System.out.println("\n===== Project Catalogue =====");
+        System.out.println("Leave a filter blank to skip it.");
+        CataloguePredicate filter = CataloguePredicate.all();
 
-        if (availableProjects.isEmpty()) {
-            System.out.println("No available projects for your eligibility criteria.");
-            return;
+        System.out.print("Neighborhood: ");
+        String neighborhood = scanner.nextLine().trim();
+        if (!neighborhood.isEmpty()) {
+            filter = filter.and(CataloguePredicate.neighborhood(neighborhood));
+        }
+
+        System.out.print("Flat type (e.g. 2-room): ");
+        String flatType = scanner.nextLine().trim();
+        if (!flatType.isEmpty()) {
+            filter = filter.and(CataloguePredicate.offersFlatType(flatType));
+            System.out.print("Minimum units available: ");
+            String minimum = scanner.nextLine().trim();
+            if (!minimum.isEmpty()) {
+                try {
+                    filter = filter.and(CataloguePredicate.unitsAtLeast(flatType, Integer.parseInt(minimum)));
+                } catch (NumberFormatException e) {
+                    System.out.println("Ignoring invalid number: " + minimum);
+                }
+            }
         }
 
-        for (int i = 0; i < availableProjects.size(); i++) {
-            System.out.println((i + 1) + ". " + availableProjects.get(i).getProjectName());
+        System.out.print("Only projects open for application today? (Y/N): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("Y")) {
+            filter = filter.and(CataloguePredicate.openOn(DateCodec.today()));
         }
 
-        int projectChoice = getIntInput("Select project number: ");
-        if (projectChoice < 1 || projectChoice > availableProjects.size()) {
-            System.out.println("Invalid project selection.");
+        ProjectCatalogue.Result result = ApplicantService.browseProjects(filter);
+        List<BTOProject> projects = result.getProjects();
+        if (projects.isEmpty()) {
+            System.out.println("No projects match these filters.");
             return;
         }
 
-        BTOProject selectedProject = availableProjects.get(projectChoice - 1);
+        StringBuilder facets = new StringBuilder();
+        facets.append(projects.size()).append(" matching project(s)");
+        appendFacet(facets, "By neighborhood", result.getNeighborhoodCounts());
+        appendFacet(facets, "By flat type", result.getFlatTypeCounts());
+        appendFacet(facets, "By units available", result.getUnitsBucketCounts());
+        System.out.println(facets);
 
-        System.out.println("Available flat types:");
-        ArrayList<String> flatOptions = new ArrayList<>();
+        browsePages(cursor -> Page.of(projects, cursor, PAGE_SIZE), BTOApp::formatProjectDetails, null);
+    }
 
-        boolean isSingle = applicant.getMaritalStatus().equalsIgnoreCase("Single");
-        boolean isMarried = applicant.getMaritalStatus().equalsIgnoreCase("Married");
-        int age = applicant.getAge();
+    private static void appendFacet(StringBuilder out, String title, Map<String, Integer> counts) {
+        out.append('\n').append(title).append(':');
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.append("\n   ").append(entry.getKey()).append(" (").append(entry.getValue()).append(')');
+        }
+    }
 
-        if ((isSingle && age >= 35 || isMarried) && selectedProject.getTwoRoomUnitsAvailable() > 0) {
-            System.out.println("1. 2-room");
-            flatOptions.add("2-room");
+    // Applicant: Apply for project
+    private static void applyForProject(Applicant applicant) {
+        System.out.println("\n===== Apply for Project =====");
+        List<BTOProject> availableProjects = ApplicantService.viewAvailableProjects(applicant, ProjectRepository.getAllProjects());
+
+        if (availableProjects.isEmpty()) {
+            System.out.println("No available projects for your eligibility criteria.");
+            return;
         }
 
-        if (isMarried && selectedProject.getThreeRoomUnitsAvailable() > 0) {
-            System.out.println(flatOptions.size() + 1 + ". 3-room");
-            flatOptions.add("3-room");
+        BTOProject selectedProject = selectProject(availableProjects, BTOProject::getProjectName,
+                prefix -> ApplicantService.suggestProjects(prefix, SUGGESTION_LIMIT, availableProjects));
+        if (selectedProject == null) {
+            return;
         }
 
+        List<String> flatOptions = ApplicantService.getEligibleFlatTypes(applicant, selectedProject);
         if (flatOptions.isEmpty()) {
             System.out.println("No suitable flat types available for your eligibility.");
             return;
         }
 
+        System.out.println("Available flat types:");
+        for (int i = 0; i < flatOptions.size(); i++) {
+            System.out.println((i + 1) + ". " + flatOptions.get(i));
+        }
+
         int flatChoice = getIntInput("Select flat type number: ");
         if (flatChoice < 1 || flatChoice > flatOptions.size()) {
             System.out.println("Invalid flat type selection.");
@@ -382,49 +514,103 @@ public class BTOApp {
         }
 
         String selectedFlatType = flatOptions.get(flatChoice - 1);
-        ApplicantService.apply(applicant, selectedProject, selectedFlatType);
+        ApplicantService.ApplyResult result;
+        try {
+            result = ApplicantService.apply(applicant, selectedProject, selectedFlatType);
+        } catch (AdmissionRejectedException e) {
+            printBusy(e);
+            return;
+        }
+        switch (result) {
+            case SUBMITTED:
+                System.out.println("Application submitted successfully.");
+                break;
+            case ALREADY_APPLIED:
+                System.out.println("You already have an active application.");
+                break;
+            case INVALID_FLAT_TYPE:
+                System.out.println("Invalid flat type.");
+                break;
+            default:
+                System.out.println(FlatTypeRegistry.eligibilityRule(FlatTypeRegistry.ordinalOf(selectedFlatType)));
+        }
     }
 
     // Applicant: View application
     private static void viewApplication(Applicant applicant) {
         System.out.println("\n===== My Application =====");
-        ApplicantService.viewAppliedProject(applicant, allProjects);
+        Application app = ApplicantService.getApplication(applicant.getNRIC());
+        if (app == null) {
+            System.out.println("No application found.");
+            return;
+        }
+
+        System.out.println("Status: " + app.getStatus());
+        System.out.println("Flat Type: " + app.getFlatType());
+
+        BTOProject p = ProjectRepository.getProjectById(app.getProjectId());
+        if (p == null) {
+            System.out.println("Applied project details are not found.");
+            return;
+        }
+        System.out.println("Project Name: " + p.getProjectName());
+        System.out.println("Neighborhood: " + p.getNeighborhood());
+        System.out.println("Application Period: " + DateCodec.format(p.getStartDay()) + " to "
+                + DateCodec.format(p.getEndDay()));
+        System.out.println("Manager: " + p.getManager().getNRIC());
     }
 
     // Applicant: Withdraw application
     private static void withdrawApplication(Applicant applicant) {
         System.out.println("\n===== Withdraw Application =====");
-        ApplicantService.requestWithdrawal(applicant);
+        switch (ApplicantService.requestWithdrawal(applicant)) {
+            case WITHDRAWN:
+                System.out.println("Application withdrawn.");
+                break;
+            case NO_APPLICATION:
+                System.out.println("No application to withdraw.");
+                break;
+            default:
+                Application app = ApplicantService.getApplication(applicant.getNRIC());
+                System.out.println("Cannot withdraw application in current state: " + (app != null ? app.getStatus() : null));
+        }
     }
 
     // Applicant: Submit enquiry
     private static void submitEnquiry(Applicant applicant) {
         System.out.println("\n===== Submit Enquiry =====");
 
-        System.out.println("Select project to enquire about:");
-        for (int i = 0; i < allProjects.size(); i++) {
-            BTOProject project = allProjects.get(i);
+        List<BTOProject> visibleProjects = new ArrayList<>();
+        for (BTOProject project : ProjectRepository.getAllProjects()) {
             if (project.isVisible()) {
-                System.out.println((i + 1) + ". " + project.getProjectName());
+                visibleProjects.add(project);
             }
         }
 
-        int projectChoice = getIntInput("Select project number (0 to cancel): ");
-        if (projectChoice == 0)
-            return;
-
-        if (projectChoice < 1 || projectChoice > allProjects.size()
-                || !allProjects.get(projectChoice - 1).isVisible()) {
-            System.out.println("Invalid project selection.");
+        System.out.println("Select project to enquire about:");
+        BTOProject selectedProject = selectProject(visibleProjects, BTOProject::getProjectName,
+                prefix -> ApplicantService.suggestProjects(prefix, SUGGESTION_LIMIT, visibleProjects));
+        if (selectedProject == null) {
             return;
         }
 
-        String projectName = allProjects.get(projectChoice - 1).getProjectName();
+        int projectId = selectedProject.getProjectId();
 
         System.out.print("Enter your message: ");
         String message = scanner.nextLine();
 
-        ApplicantService.submitEnquiry(applicant, projectName, message);
+        try {
+            long enquiryId = ApplicantService.submitEnquiry(applicant, projectId, message);
+            System.out.println("Your enquiry has been submitted with ID: " + enquiryId);
+        } catch (AdmissionRejectedException e) {
+            printBusy(e);
+        }
+    }
+
+    private static void printBusy(AdmissionRejectedException e) {
+        long seconds = Math.max(1, (e.getRetryAfterMillis() + 999) / 1000);
+        System.out.println("The project is busy right now. Please try again in " + seconds + " second"
+                + (seconds == 1 ? "" : "s") + ".");
     }
 
     // Applicant: View enquiries
@@ -476,7 +662,16 @@ public class BTOApp {
         System.out.print("Enter new message: ");
         String newMessage = scanner.nextLine();
 
-        ApplicantService.editEnquiry(applicant, selectedEnquiry.getEnquiryId(), newMessage);
+        switch (ApplicantService.editEnquiry(applicant, selectedEnquiry.getEnquiryId(), newMessage)) {
+            case CHANGED:
+                System.out.println("Enquiry updated successfully.");
+                break;
+            case ALREADY_REPLIED:
+                System.out.println("Cannot edit an enquiry that has been replied to.");
+                break;
+            default:
+                System.out.println("Enquiry not found or you don't have permission to edit it.");
+        }
     }
 
     // Applicant: Delete enquiry
@@ -504,7 +699,16 @@ public class BTOApp {
         }
 
         Enquiry selectedEnquiry = enquiries.get(enquiryChoice - 1);
-        ApplicantService.deleteEnquiry(applicant, selectedEnquiry.getEnquiryId());
+        switch (ApplicantService.deleteEnquiry(applicant, selectedEnquiry.getEnquiryId())) {
+            case CHANGED:
+                System.out.println("Enquiry deleted successfully.");
+                break;
+            case ALREADY_REPLIED:
+                System.out.println("Cannot delete an enquiry that has been replied to.");
+                break;
+            default:
+                System.out.println("Enquiry not found or you don't have permission to delete it.");
+        }
     }
 
     // Manager: Create new project
@@ -517,68 +721,58 @@ public class BTOApp {
         System.out.print("Neighborhood: ");
         String neighborhood = scanner.nextLine();
 
-        Date startDate = getDateInput("Start Date (dd/MM/yyyy): ");
-        if (startDate == null)
+        int startDay = getDateInput("Start Date (dd/MM/yyyy): ");
+        if (startDay == DateCodec.INVALID)
             return;
 
-        Date endDate = getDateInput("End Date (dd/MM/yyyy): ");
-        if (endDate == null)
+        int endDay = getDateInput("End Date (dd/MM/yyyy): ");
+        if (endDay == DateCodec.INVALID)
             return;
 
-        if (startDate.after(endDate)) {
+        if (startDay > endDay) {
             System.out.println("Start date cannot be after end date.");
             return;
         }
 
         System.out.println("Flat Types:");
-        System.out.println("1. 2-room");
-        System.out.println("2. 3-room");
-        System.out.println("3. Both");
+        List<String> allFlatTypes = FlatTypeRegistry.getAllNames();
+        for (int i = 0; i < allFlatTypes.size(); i++) {
+            System.out.println((i + 1) + ". " + allFlatTypes.get(i));
+        }
 
-        int flatTypeChoice = getIntInput("Select flat types: ");
+        System.out.print("Select flat types (comma-separated numbers, e.g. 1,2): ");
         ArrayList<String> flatTypes = new ArrayList<>();
-
-        switch (flatTypeChoice) {
-            case 1:
-                flatTypes.add("2-room");
-                break;
-            case 2:
-                flatTypes.add("3-room");
-                break;
-            case 3:
-                flatTypes.add("2-room");
-                flatTypes.add("3-room");
-                break;
-            default:
+        for (String part : scanner.nextLine().split(",")) {
+            int flatTypeChoice;
+            try {
+                flatTypeChoice = Integer.parseInt(part.trim());
+            } catch (NumberFormatException e) {
+                flatTypeChoice = -1;
+            }
+            if (flatTypeChoice < 1 || flatTypeChoice > allFlatTypes.size()) {
                 System.out.println("Invalid flat type selection.");
                 return;
-        }
-
-        int twoRoomUnits = 0;
-        int threeRoomUnits = 0;
-
-        if (flatTypes.contains("2-room")) {
-            twoRoomUnits = getIntInput("Number of 2-room units: ");
-            if (twoRoomUnits < 0) {
-                System.out.println("Number of units cannot be negative.");
-                return;
+            }
+            if (!flatTypes.contains(allFlatTypes.get(flatTypeChoice - 1))) {
+                flatTypes.add(allFlatTypes.get(flatTypeChoice - 1));
             }
         }
 
-        if (flatTypes.contains("3-room")) {
-            threeRoomUnits = getIntInput("Number of 3-room units: ");
-            if (threeRoomUnits < 0) {
+        List<Integer> units = new ArrayList<>();
+        for (String flatType : flatTypes) {
+            int count = getIntInput("Number of " + flatType + " units: ");
+            if (count < 0) {
                 System.out.println("Number of units cannot be negative.");
                 return;
             }
+            units.add(count);
         }
 
-        boolean success = HDBManagerService.createProject(manager, name, neighborhood, startDate, endDate, flatTypes,
-                twoRoomUnits, threeRoomUnits);
+        boolean success = HDBManagerService.createProject(manager, name, neighborhood, startDay, endDay, flatTypes,
+                units);
 
         if (success) {
             System.out.println("Project created successfully!");
-            allProjects = ProjectRepository.getAllProjects();
         } else {
             System.out.println("Failed to create project. Date overlap with existing projects.");
         }
@@ -587,22 +781,19 @@ public class BTOApp {
     // Manager: View all projects
     private static void viewAllProjects() {
         System.out.println("\n===== All Projects =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewAllProjects();
-
-        if (projects.isEmpty()) {
+        if (HDBManagerService.viewAllProjects().isEmpty()) {
             System.out.println("No projects found.");
             return;
         }
 
-        for (BTOProject project : projects) {
-            displayProjectDetails(project);
-        }
+        browsePages(cursor -> HDBManagerService.viewAllProjects(cursor, PAGE_SIZE),
+                BTOApp::formatProjectDetails, null);
     }
 
     // Manager: View manager's projects
     private static void viewManagerProjects(HDBManager manager) {
         System.out.println("\n===== My Projects =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects.");
@@ -617,7 +808,7 @@ public class BTOApp {
     // Manager: Edit project
     private static void editProject(HDBManager manager) {
         System.out.println("\n===== Edit Project =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects to edit.");
@@ -625,20 +816,29 @@ public class BTOApp {
         }
 
         System.out.println("Select project to edit:");
-        for (int i = 0; i < projects.size(); i++) {
-            System.out.println((i + 1) + ". " + projects.get(i).getProjectName());
-        }
-
-        int projectChoice = getIntInput("Enter project number (0 to cancel): ");
-        if (projectChoice == 0)
+        BTOProject selectedProject = selectProject(projects, BTOProject::getProjectName,
+                prefix -> HDBManagerService.suggestProjects(prefix, SUGGESTION_LIMIT, projects));
+        if (selectedProject == null) {
             return;
+        }
 
-        if (projectChoice < 1 || projectChoice > projects.size()) {
-            System.out.println("Invalid project selection.");
-            return;
+        try {
+            boolean updated = Transaction.retryOnConflict(MAX_EDIT_ATTEMPTS,
+                    () -> promptProjectEdit(manager, selectedProject),
+                    conflict -> System.out.println("The project was changed while you were editing it. "
+                            + "Please enter your changes again."));
+            if (updated) {
+                System.out.println("Project updated successfully!");
+            }
+        } catch (ProjectConflictException e) {
+            System.out.println("The project keeps changing. Project not updated.");
         }
+    }
 
-        BTOProject selectedProject = projects.get(projectChoice - 1);
+    // Prompts for the new details and applies them, unless the project changed in the meantime
+    private static boolean promptProjectEdit(HDBManager manager, BTOProject selectedProject) {
+        // the version goes first, so a change made during the prompts is caught
+        long version = selectedProject.getVersion();
 
         System.out.print("New Project Name (current: " + selectedProject.getProjectName() + "): ");
         String newName = scanner.nextLine();
@@ -652,81 +852,66 @@ public class BTOApp {
             newNeighborhood = selectedProject.getNeighborhood();
         }
 
-        System.out.print("New Start Date (current: " + dateFormat.format(selectedProject.getStartDate())
+        System.out.print("New Start Date (current: " + DateCodec.format(selectedProject.getStartDay())
                 + ", format dd/MM/yyyy): ");
         String startDateStr = scanner.nextLine();
-        Date newStartDate = selectedProject.getStartDate();
+        int newStartDay = selectedProject.getStartDay();
         if (!startDateStr.trim().isEmpty()) {
-            try {
-                newStartDate = dateFormat.parse(startDateStr);
-            } catch (ParseException e) {
+            int parsed = DateCodec.parse(startDateStr);
+            if (parsed != DateCodec.INVALID) {
+                newStartDay = parsed;
+            } else {
                 System.out.println("Invalid date format. Using current start date.");
             }
         }
 
         System.out.print(
-                "New End Date (current: " + dateFormat.format(selectedProject.getEndDate()) + ", format dd/MM/yyyy): ");
+                "New End Date (current: " + DateCodec.format(selectedProject.getEndDay()) + ", format dd/MM/yyyy): ");
         String endDateStr = scanner.nextLine();
-        Date newEndDate = selectedProject.getEndDate();
+        int newEndDay = selectedProject.getEndDay();
         if (!endDateStr.trim().isEmpty()) {
-            try {
-                newEndDate = dateFormat.parse(endDateStr);
-            } catch (ParseException e) {
+            int parsed = DateCodec.parse(endDateStr);
+            if (parsed != DateCodec.INVALID) {
+                newEndDay = parsed;
+            } else {
                 System.out.println("Invalid date format. Using current end date.");
             }
         }
 
-        if (newStartDate.after(newEndDate)) {
+        if (newStartDay > newEndDay) {
             System.out.println("Start date cannot be after end date. Project not updated.");
-            return;
-        }
-
-        int newTwoRoomUnits = selectedProject.getTwoRoomUnitsAvailable();
-        if (selectedProject.getFlatTypes().contains("2-room")) {
-            System.out.print(
-                    "New number of 2-room units (current: " + selectedProject.getTwoRoomUnitsAvailable() + "): ");
-            String twoRoomStr = scanner.nextLine();
-            if (!twoRoomStr.trim().isEmpty()) {
-                try {
-                    newTwoRoomUnits = Integer.parseInt(twoRoomStr);
-                    if (newTwoRoomUnits < 0) {
-                        System.out.println("Number of units cannot be negative. Using current value.");
-                        newTwoRoomUnits = selectedProject.getTwoRoomUnitsAvailable();
-                    }
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid number. Using current value.");
-                }
-            }
+            return false;
         }
 
-        int newThreeRoomUnits = selectedProject.getThreeRoomUnitsAvailable();
-        if (selectedProject.getFlatTypes().contains("3-room")) {
-            System.out.print(
-                    "New number of 3-room units (current: " + selectedProject.getThreeRoomUnitsAvailable() + "): ");
-            String threeRoomStr = scanner.nextLine();
-            if (!threeRoomStr.trim().isEmpty()) {
+        List<Integer> newUnits = new ArrayList<>();
+        for (String flatType : selectedProject.getFlatTypes()) {
+            int current = selectedProject.getUnits(flatType);
+            int updated = current;
+            System.out.print("New number of " + flatType + " units (current: " + current + "): ");
+            String unitsStr = scanner.nextLine();
+            if (!unitsStr.trim().isEmpty()) {
                 try {
-                    newThreeRoomUnits = Integer.parseInt(threeRoomStr);
-                    if (newThreeRoomUnits < 0) {
+                    updated = Integer.parseInt(unitsStr.trim());
+                    if (updated < 0) {
                         System.out.println("Number of units cannot be negative. Using current value.");
-                        newThreeRoomUnits = selectedProject.getThreeRoomUnitsAvailable();
+                        updated = current;
                     }
                 } catch (NumberFormatException e) {
                     System.out.println("Invalid number. Using current value.");
                 }
             }
+            newUnits.add(updated);
         }
 
-        HDBManagerService.editBTOProject(manager, selectedProject, newName, newNeighborhood, newStartDate, newEndDate,
-                selectedProject.getFlatTypes(), newTwoRoomUnits, newThreeRoomUnits);
-
-        System.out.println("Project updated successfully!");
+        HDBManagerService.editBTOProject(manager, selectedProject, version, newName, newNeighborhood, newStartDay,
+                newEndDay, newUnits);
+        return true;
     }
 
     // Manager: Toggle project visibility
     private static void toggleProjectVisibility(HDBManager manager) {
         System.out.println("\n===== Toggle Project Visibility =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects.");
@@ -734,22 +919,12 @@ public class BTOApp {
         }
 
         System.out.println("Select project to toggle visibility:");
-        for (int i = 0; i < projects.size(); i++) {
-            BTOProject p = projects.get(i);
-            System.out.println((i + 1) + ". " + p.getProjectName() + " (Currently: "
-                    + (p.isVisible() ? "Visible" : "Hidden") + ")");
-        }
-
-        int projectChoice = getIntInput("Enter project number (0 to cancel): ");
-        if (projectChoice == 0)
-            return;
-
-        if (projectChoice < 1 || projectChoice > projects.size()) {
-            System.out.println("Invalid project selection.");
+        BTOProject selectedProject = selectProject(projects,
+                p -> p.getProjectName() + " (Currently: " + (p.isVisible() ? "Visible" : "Hidden") + ")",
+                prefix -> HDBManagerService.suggestProjects(prefix, SUGGESTION_LIMIT, projects));
+        if (selectedProject == null) {
             return;
         }
-
-        BTOProject selectedProject = projects.get(projectChoice - 1);
         boolean newVisibility = !selectedProject.isVisible();
         HDBManagerService.toggleVisibility(manager, selectedProject, newVisibility);
         System.out.println("Project visibility toggled to: " + (newVisibility ? "Visible" : "Hidden"));
@@ -758,7 +933,7 @@ public class BTOApp {
     // Manager: Delete project
     private static void deleteProject(HDBManager manager) {
         System.out.println("\n===== Delete Project =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects to delete.");
@@ -766,26 +941,16 @@ public class BTOApp {
         }
 
         System.out.println("Select project to delete:");
-        for (int i = 0; i < projects.size(); i++) {
-            System.out.println((i + 1) + ". " + projects.get(i).getProjectName());
-        }
-
-        int projectChoice = getIntInput("Enter project number (0 to cancel): ");
-        if (projectChoice == 0)
-            return;
-
-        if (projectChoice < 1 || projectChoice > projects.size()) {
-            System.out.println("Invalid project selection.");
+        BTOProject selectedProject = selectProject(projects, BTOProject::getProjectName,
+                prefix -> HDBManagerService.suggestProjects(prefix, SUGGESTION_LIMIT, projects));
+        if (selectedProject == null) {
             return;
         }
 
-        BTOProject selectedProject = projects.get(projectChoice - 1);
-
         System.out.print("Are you sure you want to delete this project? (Y/N): ");
         String confirmation = scanner.nextLine();
         if (confirmation.equalsIgnoreCase("Y")) {
             HDBManagerService.deleteBTOProject(manager, selectedProject);
-            allProjects = ProjectRepository.getAllProjects();
             System.out.println("Project deleted successfully!");
         } else {
             System.out.println("Deletion cancelled.");
@@ -795,7 +960,7 @@ public class BTOApp {
     // Manager: Handle applications
     private static void handleApplications(HDBManager manager) {
         System.out.println("\n===== Handle Applications =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects.");
@@ -817,31 +982,38 @@ public class BTOApp {
         }
 
         BTOProject selectedProject = projects.get(projectChoice - 1);
-        ArrayList<Application> applications = selectedProject.getApplications();
 
-        if (applications.isEmpty()) {
+        if (selectedProject.getApplications().isEmpty()) {
             System.out.println("No applications for this project.");
             return;
         }
 
-        System.out.println("Applications for " + selectedProject.getProjectName() + ":");
-        for (int i = 0; i < applications.size(); i++) {
-            Application app = applications.get(i);
-            System.out.println((i + 1) + ". NRIC: " + app.getApplicant().getNRIC() +
-                    " | Status: " + app.getStatus() +
-                    " | Flat Type: " + app.getFlatType());
+        System.out.println("Sort applications by:");
+        System.out.println("1. Submission time");
+        System.out.println("2. Status");
+        System.out.println("3. Flat type");
+        int sortChoice = getIntInput("Enter your choice: ");
+        ApplicationSortKey sortKey;
+        switch (sortChoice) {
+            case 2:
+                sortKey = ApplicationSortKey.STATUS;
+                break;
+            case 3:
+                sortKey = ApplicationSortKey.FLAT_TYPE;
+                break;
+            default:
+                sortKey = ApplicationSortKey.SUBMISSION_TIME;
         }
 
-        int appChoice = getIntInput("Select application to handle (0 to cancel): ");
-        if (appChoice == 0)
-            return;
-
-        if (appChoice < 1 || appChoice > applications.size()) {
-            System.out.println("Invalid application selection.");
+        System.out.println("Applications for " + selectedProject.getProjectName() + ":");
+        Application selectedApp = browsePages(
+                cursor -> HDBManagerService.viewApplications(selectedProject, cursor, PAGE_SIZE, sortKey),
+                app -> "NRIC: " + app.getApplicant().getNRIC() +
+                        " | Status: " + app.getStatus() +
+                        " | Flat Type: " + app.getFlatType(),
+                "Select application to handle");
+        if (selectedApp == null)
             return;
-        }
-
-        Application selectedApp = applications.get(appChoice - 1);
 
         System.out.println("Actions:");
         System.out.println("1. Approve Application");
@@ -854,12 +1026,6 @@ public class BTOApp {
             case 1:
                 if (selectedApp.getStatus().equalsIgnoreCase("Pending")) {
                     if (HDBManagerService.handleBTOApplication(manager, selectedApp)) {
-                        selectedApp.setStatus("Successful");
-
-                        String flatType = selectedApp.getFlatType();
-                        int currentUnits = selectedProject.getUnits(flatType);
-                        selectedProject.setUnits(flatType, currentUnits - 1);
-
                         System.out.println("Application approved successfully!");
                     } else {
                         System.out.println(
@@ -870,10 +1036,7 @@ public class BTOApp {
                 }
                 break;
             case 2:
-                if (selectedApp.getStatus().equalsIgnoreCase("Pending") ||
-                        selectedApp.getStatus().equalsIgnoreCase("Successful")) {
-
-                    selectedApp.setStatus("Unsuccessful");
+                if (HDBManagerService.rejectApplication(manager, selectedApp)) {
                     System.out.println("Application rejected successfully!");
                 } else {
                     System.out.println("Cannot reject application in current status: " + selectedApp.getStatus());
@@ -891,37 +1054,44 @@ public class BTOApp {
     private static void generateBookingReport(HDBManager manager) {
         System.out.println("\n===== Booking Report =====");
         System.out.println("Select flat type filter:");
-        System.out.println("1. 2-room");
-        System.out.println("2. 3-room");
-        System.out.println("3. All");
+        List<String> allFlatTypes = FlatTypeRegistry.getAllNames();
+        for (int i = 0; i < allFlatTypes.size(); i++) {
+            System.out.println((i + 1) + ". " + allFlatTypes.get(i));
+        }
+        System.out.println((allFlatTypes.size() + 1) + ". All");
 
         int filterChoice = getIntInput("Enter your choice: ");
 
-        switch (filterChoice) {
-            case 1:
-                System.out.println("\n===== Booking Report for 2-room Flats =====");
-                HDBManagerService.bookingReport(manager, "2-room");
-                break;
-            case 2:
-                System.out.println("\n===== Booking Report for 3-room Flats =====");
-                HDBManagerService.bookingReport(manager, "3-room");
-                break;
-            case 3:
-                System.out.println("\n===== Booking Report for All Flats =====");
-                System.out.println("2-room Flats:");
-                HDBManagerService.bookingReport(manager, "2-room");
-                System.out.println("\n3-room Flats:");
-                HDBManagerService.bookingReport(manager, "3-room");
-                break;
-            default:
-                System.out.println("Invalid choice.");
+        if (filterChoice >= 1 && filterChoice <= allFlatTypes.size()) {
+            String flatType = allFlatTypes.get(filterChoice - 1);
+            System.out.println("\n===== Booking Report for " + flatType + " Flats =====");
+            printBookings(HDBManagerService.bookingReport(manager, flatType));
+        } else if (filterChoice == allFlatTypes.size() + 1) {
+            System.out.println("\n===== Booking Report for All Flats =====");
+            for (String flatType : allFlatTypes) {
+                System.out.println("\n" + flatType + " Flats:");
+                printBookings(HDBManagerService.bookingReport(manager, flatType));
+            }
+        } else {
+            System.out.println("Invalid choice.");
+        }
+    }
+
+    private static void printBookings(List<HDBManagerService.Booking> bookings) {
+        for (HDBManagerService.Booking booking : bookings) {
+            Applicant applicant = booking.getApplicant();
+            System.out.println("Applicant: " + applicant.getNRIC()
+                    + ", Flat type: " + booking.getFlatType()
+                    + ", Project name: " + booking.getProjectName()
+                    + ", Age: " + applicant.getAge()
+                    + ", Marital status: " + applicant.getMaritalStatus());
         }
     }
 
     // Handle officer registrations
     private static void handleOfficerRegistrations(HDBManager manager) {
         System.out.println("\n===== Handle Officer Registrations =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects.");
@@ -980,8 +1150,11 @@ public class BTOApp {
                 }
                 break;
             case 2:
-                HDBManagerService.rejectOfficerRegistration(manager, selectedProject, selectedOfficer);
-                System.out.println("Officer registration rejected.");
+                if (HDBManagerService.rejectOfficerRegistration(manager, selectedProject, selectedOfficer)) {
+                    System.out.println("Officer registration rejected.");
+                } else {
+                    System.out.println("Failed to reject registration. It may already have been handled.");
+                }
                 break;
             default:
                 System.out.println("Invalid choice.");
@@ -991,7 +1164,7 @@ public class BTOApp {
     // Handle withdrawal requests
     private static void handleWithdrawalRequests(HDBManager manager) {
         System.out.println("\n===== Handle Withdrawal Requests =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects.");
@@ -1013,14 +1186,8 @@ public class BTOApp {
         }
 
         BTOProject selectedProject = projects.get(projectChoice - 1);
-        ArrayList<Application> applications = selectedProject.getApplications();
-        ArrayList<Application> withdrawalRequests = new ArrayList<>();
-
-        for (Application app : applications) {
-            if ("Withdrawal Requested".equals(app.getStatus())) {
-                withdrawalRequests.add(app);
-            }
-        }
+        List<Application> withdrawalRequests = HDBManagerService.viewApplicationsWithStatus(selectedProject,
+                "Withdrawal Requested");
 
         if (withdrawalRequests.isEmpty()) {
             System.out.println("No withdrawal requests for this project.");
@@ -1072,26 +1239,23 @@ public class BTOApp {
     // View all enquiries
     private static void viewAllEnquiries() {
         System.out.println("\n===== All Enquiries =====");
-        List<Enquiry> enquiries = HDBManagerService.viewAllEnquiries();
-
-        if (enquiries.isEmpty()) {
+        if (HDBManagerService.viewAllEnquiries(0, 1).isEmpty()) {
             System.out.println("No enquiries found.");
             return;
         }
 
-        for (Enquiry enquiry : enquiries) {
-            System.out.println("ID: " + enquiry.getEnquiryId());
-            System.out.println("Project: " + enquiry.getProjectName());
-            System.out.println("From: " + enquiry.getUserNric());
-            System.out.println("Message: " + enquiry.getMessage());
-            System.out.println();
-        }
+        browsePages(cursor -> HDBManagerService.viewAllEnquiries(cursor, PAGE_SIZE),
+                enquiry -> "ID: " + enquiry.getEnquiryId() +
+                        "\n   Project: " + enquiry.getProjectName() +
+                        "\n   From: " + enquiry.getUserNric() +
+                        "\n   Message: " + enquiry.getMessage() + "\n",
+                null);
     }
 
     // Reply to enquiries
     private static void replyToEnquiries(HDBManager manager) {
         System.out.println("\n===== Reply to Enquiries =====");
-        ArrayList<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
+        List<BTOProject> projects = HDBManagerService.viewOwnProjects(manager);
 
         if (projects.isEmpty()) {
             System.out.println("You have no projects.");
@@ -1113,57 +1277,306 @@ public class BTOApp {
         }
 
         BTOProject selectedProject = projects.get(projectChoice - 1);
-        List<Enquiry> projectEnquiries = HDBManagerService.viewProjectEnquiries(manager, selectedProject.getProjectName());
+        int projectId = selectedProject.getProjectId();
 
-        if (projectEnquiries.isEmpty()) {
+        if (HDBManagerService.viewProjectEnquiries(manager, projectId, 0, 1).isEmpty()) {
             System.out.println("No enquiries for this project.");
             return;
         }
 
-        for (int i = 0; i < projectEnquiries.size(); i++) {
-            Enquiry enquiry = projectEnquiries.get(i);
-            System.out.println((i + 1) + ". ID: " + enquiry.getEnquiryId() + " | From: " + enquiry.getUserNric());
-            System.out.println("   Message: " + enquiry.getMessage());
+        Enquiry selectedEnquiry = browsePages(
+                cursor -> HDBManagerService.viewProjectEnquiries(manager, projectId, cursor, PAGE_SIZE),
+                enquiry -> "ID: " + enquiry.getEnquiryId() + " | From: " + enquiry.getUserNric() +
+                        "\n   Message: " + enquiry.getMessage(),
+                "Select enquiry to reply to");
+        if (selectedEnquiry == null)
+            return;
+        System.out.print("Enter your reply: ");
+        String reply = scanner.nextLine();
+
+        List<Enquiry> similar = HDBManagerService.viewSimilarUnansweredEnquiries(selectedEnquiry);
+        boolean replyToAll = false;
+        if (!similar.isEmpty()) {
+            System.out.println(similar.size() + " other unanswered enquiries ask a similar question, e.g.:");
+            for (int i = 0; i < Math.min(3, similar.size()); i++) {
+                System.out.println("   " + similar.get(i).getMessage());
+            }
+            System.out.print("Send this reply to all of them too? (Y/N): ");
+            replyToAll = scanner.nextLine().trim().equalsIgnoreCase("Y");
         }
 
-        int enquiryChoice = getIntInput("Select enquiry to reply to (0 to cancel): ");
-        if (enquiryChoice == 0)
+        if (replyToAll) {
+            int answered = HDBManagerService.replyToEnquiryCluster(manager, selectedEnquiry, reply);
+            if (answered > 0) {
+                System.out.println("Reply sent to " + answered + " enquiries.");
+            } else {
+                System.out.println("Failed to send reply. Insufficient permissions.");
+            }
+        } else if (HDBManagerService.replyToEnquiry(manager, selectedEnquiry, reply)) {
+            System.out.println("Reply sent successfully.");
+        } else {
+            System.out.println("Failed to send reply. Insufficient permissions.");
+        }
+    }
+
+    // Search enquiries by keyword or "quoted phrase"
+    private static void searchEnquiries() {
+        System.out.println("\n===== Search Enquiries =====");
+        System.out.print("Search for (use quotes for phrases): ");
+        String query = scanner.nextLine();
+        if (query.trim().isEmpty()) {
+            System.out.println("Search cancelled.");
             return;
+        }
 
-        if (enquiryChoice < 1 || enquiryChoice > projectEnquiries.size()) {
-            System.out.println("Invalid enquiry selection.");
+        List<BTOProject> allProjects = ProjectRepository.getAllProjects();
+        System.out.println("Project filter:");
+        System.out.println("0. All projects");
+        for (int i = 0; i < allProjects.size(); i++) {
+            System.out.println((i + 1) + ". " + allProjects.get(i).getProjectName());
+        }
+        int projectChoice = getIntInput("Enter project number: ");
+        int projectId = 0;
+        if (projectChoice >= 1 && projectChoice <= allProjects.size()) {
+            projectId = allProjects.get(projectChoice - 1).getProjectId();
+        }
+
+        System.out.println("Status filter:");
+        System.out.println("1. All");
+        System.out.println("2. Unanswered");
+        System.out.println("3. Answered");
+        int statusChoice = getIntInput("Enter your choice: ");
+        EnquirySearchIndex.StatusFilter status = statusChoice == 2 ? EnquirySearchIndex.StatusFilter.UNANSWERED
+                : statusChoice == 3 ? EnquirySearchIndex.StatusFilter.ANSWERED
+                : EnquirySearchIndex.StatusFilter.ANY;
+
+        List<Enquiry> results = HDBManagerService.searchEnquiries(query, projectId, status, SEARCH_LIMIT);
+        if (results.isEmpty()) {
+            System.out.println("No matching enquiries.");
             return;
         }
 
-        Enquiry selectedEnquiry = projectEnquiries.get(enquiryChoice - 1);
-        System.out.print("Enter your reply: ");
-        String reply = scanner.nextLine();
+        browsePages(cursor -> Page.of(results, cursor, PAGE_SIZE),
+                enquiry -> "ID: " + enquiry.getEnquiryId() + " | Project: " + enquiry.getProjectName() +
+                        " | From: " + enquiry.getUserNric() +
+                        "\n   Message: " + enquiry.getMessage() +
+                        (enquiry.hasReply() ? "\n   Reply: " + enquiry.getReply() : ""),
+                null);
+    }
 
-        if (HDBManagerService.replyToEnquiry(manager, selectedEnquiry, reply)) {
-            System.out.println("Reply sent successfully.");
-        } else {
-            System.out.println("Failed to send reply. Insufficient permissions.");
+    // Projects drawing the most applications or enquiries over a recent window
+    private static void viewHotSpots() {
+        System.out.println("\n===== Project Hot Spots =====");
+        System.out.println("1. Applications");
+        System.out.println("2. Enquiries");
+        int kind = getIntInput("Enter your choice: ");
+        if (kind != 1 && kind != 2) {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        System.out.println("1. Last hour");
+        System.out.println("2. Last 24 hours");
+        int period = getIntInput("Enter your choice: ");
+        long windowMillis = period == 2 ? 24 * 60 * 60 * 1000L : 60 * 60 * 1000L;
+        windowMillis = Math.min(windowMillis, ProjectActivity.maxWindowMillis());
+
+        List<SlidingTopK.Count> top = kind == 1
+                ? HDBManagerService.viewApplicationHotSpots(HOT_SPOT_LIMIT, windowMillis)
+                : HDBManagerService.viewEnquiryHotSpots(HOT_SPOT_LIMIT, windowMillis);
+        if (top.isEmpty()) {
+            System.out.println("No " + (kind == 1 ? "applications" : "enquiries") + " submitted in that period.");
+            return;
+        }
+        for (int i = 0; i < top.size(); i++) {
+            BTOProject project = ProjectRepository.getProjectById(top.get(i).getKey());
+            String name = project != null ? project.getProjectName() : "Project " + top.get(i).getKey() + " (deleted)";
+            System.out.println((i + 1) + ". " + name + " - about " + top.get(i).getCount());
+        }
+    }
+
+    // How long applicants wait for decisions and replies, per project and overall
+    private static void viewWaitTimeReport() {
+        System.out.println("\n===== Wait Time Report =====");
+        List<BTOProject> projects = ProjectRepository.getAllProjects();
+        for (BTOProject project : projects) {
+            printWaitTimes(project.getProjectName(), project.getProjectId());
+        }
+        printWaitTimes("All projects", 0);
+    }
+
+    private static void printWaitTimes(String title, int projectId) {
+        ServiceLevels.Summary summary = HDBManagerService.viewWaitTimes(projectId);
+        LatencyHistogram decisions = summary.getDecisionTimes();
+        LatencyHistogram replies = summary.getReplyTimes();
+        System.out.println(title);
+        System.out.println("  Decisions: " + decisions.count()
+                + (decisions.count() > 0 ? " | p50 " + formatDuration(decisions.percentile(50))
+                        + " | p90 " + formatDuration(decisions.percentile(90))
+                        + " | p99 " + formatDuration(decisions.percentile(99)) : ""));
+        System.out.println("  Pending applications: " + summary.getPendingApplications()
+                + (summary.getPendingApplications() > 0
+                        ? " | oldest waiting " + formatAge(summary.getOldestPendingMillis()) : ""));
+        System.out.println("  Replies: " + replies.count()
+                + (replies.count() > 0 ? " | p50 " + formatDuration(replies.percentile(50))
+                        + " | p90 " + formatDuration(replies.percentile(90))
+                        + " | p99 " + formatDuration(replies.percentile(99)) : ""));
+        System.out.println("  Unanswered enquiries: " + summary.getUnansweredEnquiries()
+                + (summary.getUnansweredEnquiries() > 0
+                        ? " | oldest waiting " + formatAge(summary.getOldestUnansweredMillis()) : ""));
+        printAdmission("Application admission", HDBManagerService.viewApplicationAdmission(projectId));
+        printAdmission("Enquiry admission", HDBManagerService.viewEnquiryAdmission(projectId));
+    }
+
+    private static void printAdmission(String title, AdmissionQueue.Stats stats) {
+        LatencyHistogram waits = stats.getWaitMicros();
+        System.out.println("  " + title + ": admitted " + stats.getAdmitted()
+                + " | turned away " + (stats.getQueueFull() + stats.getTimedOut())
+                + " | queued " + stats.getQueued() + " | in progress " + stats.getInFlight()
+                + (waits.count() > 0 ? " | queue wait p50 " + formatMicros(waits.percentile(50))
+                        + " | p99 " + formatMicros(waits.percentile(99)) : ""));
+    }
+
+    // Waits under a second in milliseconds, e.g. "0.4ms", "250ms"
+    private static String formatMicros(long micros) {
+        if (micros < 1000) {
+            return String.format("%.1fms", micros / 1000.0);
         }
+        return micros < 1_000_000 ? (micros / 1000) + "ms" : formatDuration(micros / 1000);
+    }
+
+    // Submissions journaled before timestamps were kept have no age
+    private static String formatAge(long millis) {
+        return millis < 0 ? "unknown" : formatDuration(millis);
+    }
+
+    // Largest two units of a duration, e.g. "2d 4h", "3m 10s"
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        long minutes = seconds / 60;
+        if (minutes < 60) {
+            return minutes + "m " + (seconds % 60) + "s";
+        }
+        long hours = minutes / 60;
+        if (hours < 24) {
+            return hours + "h " + (minutes % 60) + "m";
+        }
+        return (hours / 24) + "d " + (hours % 24) + "h";
     }
 
     // Utility method to display project details
     private static void displayProjectDetails(BTOProject project) {
-        System.out.println("Project Name: " + project.getProjectName());
-        System.out.println("Neighborhood: " + project.getNeighborhood());
-        System.out.println("Application Period: " + dateFormat.format(project.getStartDate()) +
-                " to " + dateFormat.format(project.getEndDate()));
-        System.out.println("Visibility: " + (project.isVisible() ? "Visible" : "Hidden"));
-        System.out.println("Manager: " + project.getManager().getName());
+        System.out.println(formatProjectDetails(project));
+    }
 
-        if (project.getFlatTypes().contains("2-room")) {
-            System.out.println("2-room units available: " + project.getTwoRoomUnitsAvailable());
+    // Utility method to format project details as one block
+    private static String formatProjectDetails(BTOProject project) {
+        StringBuilder details = new StringBuilder();
+        details.append("Project Name: ").append(project.getProjectName())
+               .append("\nNeighborhood: ").append(project.getNeighborhood())
+               .append("\nApplication Period: ").append(DateCodec.format(project.getStartDay()))
+               .append(" to ").append(DateCodec.format(project.getEndDay()))
+               .append("\nVisibility: ").append(project.isVisible() ? "Visible" : "Hidden")
+               .append("\nManager: ").append(project.getManager().getName());
+
+        for (String flatType : project.getFlatTypes()) {
+            details.append('\n').append(flatType).append(" units available: ").append(project.getUnits(flatType));
         }
 
-        if (project.getFlatTypes().contains("3-room")) {
-            System.out.println("3-room units available: " + project.getThreeRoomUnitsAvailable());
+        return details.append('\n').toString();
+    }
+
+    // Utility method to pick one of the given projects, or null if cancelled. Short lists are
+    // numbered directly; longer ones are narrowed down by typing the start of a name or neighborhood.
+    private static BTOProject selectProject(List<BTOProject> projects, Function<BTOProject, String> label,
+            Function<String, List<BTOProject>> suggest) {
+        if (projects.size() <= PAGE_SIZE) {
+            for (int i = 0; i < projects.size(); i++) {
+                System.out.println((i + 1) + ". " + label.apply(projects.get(i)));
+            }
+            int projectChoice = getIntInput("Enter project number (0 to cancel): ");
+            if (projectChoice == 0) {
+                return null;
+            }
+            if (projectChoice < 1 || projectChoice > projects.size()) {
+                System.out.println("Invalid project selection.");
+                return null;
+            }
+            return projects.get(projectChoice - 1);
         }
 
-        System.out.println();
+        while (true) {
+            System.out.print("Type the start of a project name or neighborhood (blank to cancel): ");
+            String prefix = scanner.nextLine().trim();
+            if (prefix.isEmpty()) {
+                return null;
+            }
+            List<BTOProject> matches = suggest.apply(prefix);
+            if (matches.isEmpty()) {
+                System.out.println("No matching projects.");
+                continue;
+            }
+            for (int i = 0; i < matches.size(); i++) {
+                System.out.println((i + 1) + ". " + label.apply(matches.get(i)) + " - " + matches.get(i).getNeighborhood());
+            }
+            int projectChoice = getIntInput("Enter project number (0 to search again): ");
+            if (projectChoice >= 1 && projectChoice <= matches.size()) {
+                return matches.get(projectChoice - 1);
+            }
+            if (projectChoice != 0) {
+                System.out.println("Invalid project selection.");
+            }
+        }
+    }
+
+    // Utility method to page through a listing one buffered page at a time.
+    // With a select prompt the chosen item is returned; otherwise returns null when the user quits.
+    private static <T> T browsePages(IntFunction<Page<T>> fetch, Function<T, String> formatter, String selectPrompt) {
+        int cursor = 0;
+        while (true) {
+            Page<T> page = fetch.apply(cursor);
+            if (page.isEmpty()) {
+                System.out.println("Nothing to show.");
+                return null;
+            }
+            PageRenderer.render(page, formatter);
+
+            StringBuilder prompt = new StringBuilder();
+            if (selectPrompt != null) {
+                prompt.append(selectPrompt).append(" by number, ");
+            }
+            if (page.hasNext()) {
+                prompt.append("N for next page, ");
+            }
+            if (page.hasPrevious()) {
+                prompt.append("P for previous page, ");
+            }
+            prompt.append("0 to ").append(selectPrompt != null ? "cancel" : "return").append(": ");
+            System.out.print(prompt);
+
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("N") && page.hasNext()) {
+                cursor = page.getNextCursor();
+            } else if (input.equalsIgnoreCase("P") && page.hasPrevious()) {
+                cursor = page.getPreviousCursor(PAGE_SIZE);
+            } else if (input.equals("0") || (selectPrompt == null && input.isEmpty())) {
+                return null;
+            } else {
+                int choice;
+                try {
+                    choice = Integer.parseInt(input);
+                } catch (NumberFormatException e) {
+                    choice = -1;
+                }
+                int index = choice - 1 - page.getCursor();
+                if (selectPrompt != null && index >= 0 && index < page.size()) {
+                    return page.getItems().get(index);
+                }
+                System.out.println("Invalid choice. Please try again.");
+            }
+        }
     }
 
     // Utility method to get integer input
@@ -1176,15 +1589,14 @@ public class BTOApp {
         }
     }
 
-    // Utility method to get date input
-    private static Date getDateInput(String prompt) {
+    // Utility method to get date input as an epoch day, or DateCodec.INVALID
+    private static int getDateInput(String prompt) {
         System.out.print(prompt);
         String dateStr = scanner.nextLine();
-        try {
-            return dateFormat.parse(dateStr);
-        } catch (java.text.ParseException e) {
+        int day = DateCodec.parse(dateStr);
+        if (day == DateCodec.INVALID) {
             System.out.println("Invalid date format. Please use dd/MM/yyyy.");
-            return null;
         }
+        return day;
     }
 }
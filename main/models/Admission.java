@@ -0,0 +1,55 @@
+package main.models;
+
+import main.util.AdmissionQueue;
+import main.util.Log;
+
+/**
+ * Admission control in front of application and enquiry submission, so a launch-day rush on
+ * one project neither slows every submission down nor crowds out other projects. Each kind
+ * of submission has its own AdmissionQueue keyed by project ID; see AdmissionQueue for how
+ * callers are queued and served.
+ *
+ * Configured with system properties:
+ *   bto.admission.concurrency  submissions of one kind in progress at once (default: processors, at least 2)
+ *   bto.admission.perProject   of those, for one project (default: half of concurrency, at least 1)
+ *   bto.admission.queue        submissions that may wait for one project (default 64)
+ *   bto.admission.maxWaitMs    longest a submission waits before it is turned away (default 2000)
+ */
+public class Admission {
+    private static final int CONCURRENCY = Integer.getInteger("bto.admission.concurrency",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final int PER_PROJECT = Integer.getInteger("bto.admission.perProject", Math.max(1, CONCURRENCY / 2));
+    private static final int QUEUE = Integer.getInteger("bto.admission.queue", 64);
+    private static final long MAX_WAIT_MILLIS = Long.getLong("bto.admission.maxWaitMs", 2000);
+
+    private static final AdmissionQueue APPLICATIONS = new AdmissionQueue(CONCURRENCY, PER_PROJECT, QUEUE, MAX_WAIT_MILLIS);
+    private static final AdmissionQueue ENQUIRIES = new AdmissionQueue(CONCURRENCY, PER_PROJECT, QUEUE, MAX_WAIT_MILLIS);
+
+    // An admitted ticket to be closed when the application is done; throws AdmissionRejectedException if refused
+    public static AdmissionQueue.Ticket enterApplication(int projectId) {
+        return enter(APPLICATIONS, "application", projectId);
+    }
+
+    public static AdmissionQueue.Ticket enterEnquiry(int projectId) {
+        return enter(ENQUIRIES, "enquiry", projectId);
+    }
+
+    // Figures for one project, or for every project if projectId is 0
+    public static AdmissionQueue.Stats applicationStats(int projectId) {
+        return projectId == 0 ? APPLICATIONS.stats() : APPLICATIONS.stats(projectId);
+    }
+
+    public static AdmissionQueue.Stats enquiryStats(int projectId) {
+        return projectId == 0 ? ENQUIRIES.stats() : ENQUIRIES.stats(projectId);
+    }
+
+    private static AdmissionQueue.Ticket enter(AdmissionQueue queue, String kind, int projectId) {
+        AdmissionQueue.Ticket ticket = queue.acquire(projectId);
+        if (!ticket.isAdmitted()) {
+            Log.info("admission.rejected", "kind", kind, "project", projectId, "reason", ticket.getOutcome(),
+                    "retryAfterMs", ticket.getRetryAfterMillis());
+            throw new AdmissionRejectedException(projectId, ticket.getOutcome(), ticket.getRetryAfterMillis());
+        }
+        return ticket;
+    }
+}
@@ -0,0 +1,36 @@
+package main.models;
+
+import main.util.AdmissionQueue;
+
+/**
+ * Thrown when a submission is turned away by admission control because too many are already
+ * queued for the project, or it waited too long for its turn. Nothing has been written; try
+ * again after getRetryAfterMillis.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int projectId;
+    private final AdmissionQueue.Outcome reason;
+    private final long retryAfterMillis;
+
+    public AdmissionRejectedException(int projectId, AdmissionQueue.Outcome reason, long retryAfterMillis) {
+        super("Project " + projectId + " is busy (" + reason + "); retry after " + retryAfterMillis + " ms.");
+        this.projectId = projectId;
+        this.reason = reason;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    // QUEUE_FULL or TIMED_OUT
+    public AdmissionQueue.Outcome getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -1,35 +1,75 @@
 package main.models;
 
+// Flyweight view of one row in ApplicationStore. submit stores a new row; fromRow wraps
+// an existing row without copying it.
 public class Application {
-    private Applicant applicant;
-    private String projectName;
-    private String flatType;
-    private String status; // Pending, Successful, Unsuccessful, Booked
+    private final int row;
 
-    public Application(Applicant applicant, String projectName, String flatType) {
-        this.applicant = applicant;
-        this.projectName = projectName;
-        this.flatType = flatType;
-        this.status = "Pending";
+    private Application(int row) {
+        this.row = row;
+    }
+
+    // Stores a new Pending application, or returns null if the applicant's latest one is still
+    // active. The check and the append happen under one lock, so concurrent submits cannot both pass.
+    public static Application submit(Applicant applicant, int projectId, String flatType) {
+        int row = ApplicationStore.add(applicant, projectId, flatType);
+        return row >= 0 ? new Application(row) : null;
+    }
+
+    public static Application fromRow(int row) {
+        if (row < 0 || row >= ApplicationStore.size()) {
+            throw new IndexOutOfBoundsException("No application at row " + row);
+        }
+        return new Application(row);
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    // Rows are assigned in submission order and never reused, so the row doubles as the ID
+    public long getApplicationId() {
+        return row + 1L;
     }
 
     public Applicant getApplicant() {
-        return applicant;
+        return (Applicant) UserRepository.getUserByIndex(ApplicationStore.getApplicantIndex(row));
     }
 
+    public int getProjectId() {
+        return ApplicationStore.getProjectId(row);
+    }
+
+    // Resolved through the project ID, so it follows renames
     public String getProjectName() {
-        return projectName;
+        BTOProject project = ProjectRepository.getProjectById(getProjectId());
+        return project != null ? project.getProjectName() : null;
     }
 
     public String getFlatType() {
-        return flatType;
+        return ApplicationStore.getFlatType(row);
     }
 
     public String getStatus() {
-        return status;
+        return ApplicationStore.getStatus(row); // Pending, Successful, Unsuccessful, Booked, ...
     }
 
     public void setStatus(String status) {
-        this.status = status;
+        ApplicationStore.setStatus(row, status);
+    }
+
+    // Whether one of the project's units is set aside for this application
+    public boolean holdsUnit() {
+        return ApplicationStore.holdsUnit(row);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Application && ((Application) other).row == row;
+    }
+
+    @Override
+    public int hashCode() {
+        return row;
     }
 }
@@ -0,0 +1,628 @@
+package main.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.util.CuckooFilter;
+import main.util.Log;
+import main.util.MonotonicClock;
+
+/**
+ * Columnar storage for every application. Each application is one row spread over
+ * parallel primitive columns (applicant index, project ID, flat-type ordinal, status
+ * ordinal), so a row costs about ten bytes instead of a full object with four references.
+ * Columns grow one fixed-size chunk at a time, so growing never copies existing rows.
+ * Application objects are flyweights that only hold a row number. Three timestamp columns
+ * record when each application was submitted, first decided and last changed status.
+ *
+ * Only a bounded number of chunks stay on the heap. Past that, the least recently used one,
+ * found by a clock sweep so reads take no lock, is written to its page of a memory-mapped
+ * file and dropped, and read back the next time one of its rows is touched. The page file
+ * only has to last as long as the process: on startup the journal and recovery snapshots
+ * rebuild the store, which pages out again as it grows.
+ *
+ * snapshot() gives a point-in-time view for reports. Rows are only ever appended and only
+ * their status changes, so a snapshot reads every other column from the live store and keeps
+ * just the status slices; a status slice is copied before a write only if a snapshot was
+ * taken since it was last copied. A snapshot shares the slices of chunks on the heap when it
+ * is taken, and those of paged-out chunks when it first reads them, or earlier if a write
+ * comes first. Taking a snapshot costs one reference per chunk.
+ *
+ * Configured with system properties:
+ *   bto.applications.file            the page file (default ./data/applications.pages)
+ *   bto.applications.residentChunks  chunks of 4096 rows kept on the heap (default 256)
+ */
+public class ApplicationStore {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;   // rows per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // byte offsets of each column's slice within a chunk's page
+    private static final int PROJECTS_AT = CHUNK_SIZE * 4;
+    private static final int FLAT_TYPES_AT = CHUNK_SIZE * 8;
+    private static final int SUBMITTED_AT = CHUNK_SIZE * 10;
+    private static final int DECIDED_AT = CHUNK_SIZE * 18;
+    private static final int CHANGED_AT = CHUNK_SIZE * 26;
+    private static final int CHUNK_BYTES = CHUNK_SIZE * 34;
+
+    private static final Path PAGE_FILE = Paths.get(System.getProperty("bto.applications.file", "./data/applications.pages"));
+    private static final int RESIDENT_LIMIT = Math.max(2, Integer.getInteger("bto.applications.residentChunks", 256));
+
+    // Statuses are stored as ordinals into this table; flat types as FlatTypeRegistry ordinals
+    static final String[] STATUSES = {
+        "Pending", "Successful", "Unsuccessful", "Booked", "Withdrawal Requested", "Withdrawn"
+    };
+    // set in the status byte while the application holds one of its project's units, so a
+    // withdrawal returns the unit whatever status it was requested from
+    static final int UNIT_HELD = 0x40;
+    private static final int STATUS_MASK = UNIT_HELD - 1;
+    static final int PENDING = 0;
+    static final int SUCCESSFUL = 1;
+    static final int UNSUCCESSFUL = 2;
+
+    // by chunk index; null while the chunk is paged out
+    private static Chunk[] chunks = new Chunk[16];
+    private static int chunkCount = 0;
+    private static int residentChunks = 0;
+    private static int clockHand = 0;
+    // opened when the first chunk is paged out
+    private static FileChannel pageFile;
+    private static boolean pagingFailed;
+    private static int size = 0;
+    // bumped by every snapshot; a status slice last copied in an older epoch may be shared
+    private static long snapshotEpoch = 0;
+    // snapshots still missing the status slice of some paged-out chunk
+    private static final ArrayList<WeakReference<Snapshot>> PARTIAL_SNAPSHOTS = new ArrayList<>();
+    // most recent row for each applicant, indexed by user index (-1 for none)
+    private static int[] latestRowByApplicant = new int[0];
+    // packed NRICs of applicants whose latest application is active (any status but
+    // Unsuccessful), so the duplicate check for everyone else never reads a row
+    private static volatile CuckooFilter activeApplicants = new CuckooFilter(1024);
+
+    // Append a new Pending application and return its row, or -1 if the applicant's
+    // latest application is still active. The event and journal record go out after the
+    // lock is released, since publishing can block on a full event ring.
+    static int add(Applicant applicant, int projectId, String flatType) {
+        if (applicant.getIndex() < 0) {
+            throw new IllegalArgumentException("Applicant is not registered in UserRepository.");
+        }
+        int row;
+        synchronized (ApplicationStore.class) {
+            int previous = getLatestRow(applicant.getIndex());
+            if (previous >= 0 && isActive(getStatusCode(previous))) {
+                return -1;
+            }
+            row = append(applicant.getIndex(), projectId, flatTypeOrdinal(flatType), 0);
+            long now = MonotonicClock.now();
+            chunk(row >>> CHUNK_BITS).submitted[row & CHUNK_MASK] = now;
+            setChangedAt(row, now);
+            activeApplicants.add(applicant.getNricKey());
+            ServiceLevels.applicationSubmitted(row);
+        }
+        DomainEvents.applicationSubmitted(row);
+        StateJournal.applicationChanged(row);
+        return row;
+    }
+
+    // Recovery: recreate the next row, or bring the status of an existing row up to date
+    static synchronized void restore(int row, int applicantIndex, int projectId, int flatType, int status,
+            long submittedAt, long decidedAt, long changedAt) {
+        if (row > size) {
+            throw new IllegalStateException("Application row " + row + " restored before row " + size);
+        }
+        if (row < size) {
+            writeStatus(row, status);
+        } else {
+            append(applicantIndex, projectId, flatType, status);
+        }
+        Chunk chunk = chunk(row >>> CHUNK_BITS);
+        int offset = row & CHUNK_MASK;
+        chunk.submitted[offset] = submittedAt;
+        chunk.decided[offset] = decidedAt;
+        chunk.changed[offset] = changedAt;
+        chunk.dirty = true;
+        MonotonicClock.advanceTo(Math.max(submittedAt, Math.max(decidedAt, changedAt)));
+    }
+
+    private static int append(int applicantIndex, int projectId, int flatType, int status) {
+        int row = size;
+        int index = row >>> CHUNK_BITS;
+        if (index == chunkCount) {
+            if (index == chunks.length) {
+                chunks = Arrays.copyOf(chunks, index * 2);
+            }
+            Chunk created = new Chunk();
+            created.statusEpoch = snapshotEpoch;
+            chunkCount++;
+            install(index, created);
+        }
+        // rows at or past size are in no snapshot, so they are written in place
+        Chunk chunk = chunk(index);
+        int offset = row & CHUNK_MASK;
+        chunk.applicants[offset] = applicantIndex;
+        chunk.projects[offset] = projectId;
+        chunk.flatTypes[offset] = (byte) flatType;
+        chunk.statuses[offset] = (byte) status;
+        chunk.dirty = true;
+        size = row + 1;
+
+        if (applicantIndex < 0) {
+            return row;
+        }
+        if (applicantIndex >= latestRowByApplicant.length) {
+            int oldLength = latestRowByApplicant.length;
+            latestRowByApplicant = Arrays.copyOf(latestRowByApplicant, Math.max(applicantIndex + 1, oldLength * 2));
+            Arrays.fill(latestRowByApplicant, oldLength, latestRowByApplicant.length, -1);
+        }
+        latestRowByApplicant[applicantIndex] = row;
+        return row;
+    }
+
+    // Most recent row submitted by an applicant, or -1 if they never applied
+    public static int getLatestRow(int applicantIndex) {
+        if (applicantIndex < 0 || applicantIndex >= latestRowByApplicant.length) {
+            return -1;
+        }
+        return latestRowByApplicant[applicantIndex];
+    }
+
+    // Number of rows ever stored; rows are never removed
+    public static int size() {
+        return size;
+    }
+
+    public static int getApplicantIndex(int row) {
+        return chunk(row >>> CHUNK_BITS).applicants[row & CHUNK_MASK];
+    }
+
+    public static int getProjectId(int row) {
+        return chunk(row >>> CHUNK_BITS).projects[row & CHUNK_MASK];
+    }
+
+    public static int getFlatTypeOrdinal(int row) {
+        return chunk(row >>> CHUNK_BITS).flatTypes[row & CHUNK_MASK];
+    }
+
+    public static int getStatusOrdinal(int row) {
+        return getStatusCode(row) & STATUS_MASK;
+    }
+
+    public static boolean holdsUnit(int row) {
+        return (getStatusCode(row) & UNIT_HELD) != 0;
+    }
+
+    // Status ordinal plus the UNIT_HELD flag, as stored and journaled
+    static int getStatusCode(int row) {
+        return chunk(row >>> CHUNK_BITS).statuses[row & CHUNK_MASK];
+    }
+
+    public static String getFlatType(int row) {
+        return FlatTypeRegistry.name(getFlatTypeOrdinal(row));
+    }
+
+    public static long getSubmittedAt(int row) {
+        return chunk(row >>> CHUNK_BITS).submitted[row & CHUNK_MASK];
+    }
+
+    // When the application left Pending for Successful or Unsuccessful, or 0 while undecided
+    public static long getDecidedAt(int row) {
+        return chunk(row >>> CHUNK_BITS).decided[row & CHUNK_MASK];
+    }
+
+    public static long getStatusChangedAt(int row) {
+        return chunk(row >>> CHUNK_BITS).changed[row & CHUNK_MASK];
+    }
+
+    public static String getStatus(int row) {
+        return STATUSES[getStatusOrdinal(row)];
+    }
+
+    // Changes the status; whether the application holds a unit stays as it was
+    static void setStatus(int row, String status) {
+        int ordinal = ordinalOf(STATUSES, status);
+        int previous;
+        int code;
+        synchronized (ApplicationStore.class) {
+            previous = getStatusCode(row);
+            code = ordinal | (previous & UNIT_HELD);
+            writeStatus(row, code);
+            activeChanged(row, previous);
+            stampStatusChange(row, previous);
+        }
+        DomainEvents.statusChanged(row, previous, code);
+        StateJournal.applicationChanged(row);
+    }
+
+    // Sets the status ordinal and UNIT_HELD flag together
+    static void setStatusCode(int row, int code) {
+        int previous;
+        synchronized (ApplicationStore.class) {
+            previous = getStatusCode(row);
+            writeStatus(row, code);
+            activeChanged(row, previous);
+            stampStatusChange(row, previous);
+        }
+        DomainEvents.statusChanged(row, previous, code);
+        StateJournal.applicationChanged(row);
+    }
+
+    // False only if the applicant's latest application is certainly not active
+    public static boolean mayHaveActiveApplication(long nricKey) {
+        return activeApplicants.mightContain(nricKey);
+    }
+
+    // Whether a status code counts against applying again
+    static boolean isActive(int statusCode) {
+        return (statusCode & STATUS_MASK) != UNSUCCESSFUL;
+    }
+
+    // Refills the active-applicant filter from the latest rows; called once loading or
+    // recovery is done, since restore() leaves the filter alone
+    public static synchronized void rebuildActiveFilter() {
+        CuckooFilter rebuilt = new CuckooFilter(latestRowByApplicant.length);
+        for (int applicantIndex = 0; applicantIndex < latestRowByApplicant.length; applicantIndex++) {
+            int row = latestRowByApplicant[applicantIndex];
+            User applicant = UserRepository.getUserByIndex(applicantIndex);
+            if (row >= 0 && applicant != null && isActive(getStatusCode(row))) {
+                rebuilt.add(applicant.getNricKey());
+            }
+        }
+        activeApplicants = rebuilt;
+    }
+
+    // Adds or removes the applicant's NRIC when a status change on their latest row flips whether it is active
+    private static void activeChanged(int row, int previousCode) {
+        int applicantIndex = getApplicantIndex(row);
+        boolean wasActive = isActive(previousCode);
+        boolean active = isActive(getStatusCode(row));
+        if (wasActive == active || getLatestRow(applicantIndex) != row) {
+            return;
+        }
+        User applicant = UserRepository.getUserByIndex(applicantIndex);
+        if (applicant == null) {
+            return;
+        }
+        if (active) {
+            activeApplicants.add(applicant.getNricKey());
+        } else {
+            activeApplicants.remove(applicant.getNricKey());
+        }
+    }
+
+    // Times a change of status ordinal. Pending going to Successful or Unsuccessful is the
+    // decision; one of those going back to Pending can only be a rolled-back decision.
+    private static void stampStatusChange(int row, int previousCode) {
+        int was = previousCode & STATUS_MASK;
+        int now = getStatusOrdinal(row);
+        if (was == now) {
+            return;
+        }
+        long time = MonotonicClock.now();
+        setChangedAt(row, time);
+        if (was == PENDING && isDecision(now) && getDecidedAt(row) == 0) {
+            setDecidedAt(row, time);
+            ServiceLevels.applicationDecided(row);
+        } else if (now == PENDING && isDecision(was) && getDecidedAt(row) != 0) {
+            ServiceLevels.decisionUndone(row);
+            setDecidedAt(row, 0);
+        }
+        ServiceLevels.applicationStatusChanged(row, was, now);
+    }
+
+    static boolean isDecision(int statusOrdinal) {
+        return statusOrdinal == SUCCESSFUL || statusOrdinal == UNSUCCESSFUL;
+    }
+
+    // Writes take the chunk again each time, since paging another chunk in may page this one out
+    private static void setChangedAt(int row, long millis) {
+        Chunk chunk = chunk(row >>> CHUNK_BITS);
+        chunk.changed[row & CHUNK_MASK] = millis;
+        chunk.dirty = true;
+    }
+
+    private static void setDecidedAt(int row, long millis) {
+        Chunk chunk = chunk(row >>> CHUNK_BITS);
+        chunk.decided[row & CHUNK_MASK] = millis;
+        chunk.dirty = true;
+    }
+
+    // Copies the row's status slice first if a snapshot may still be reading it
+    private static void writeStatus(int row, int status) {
+        int index = row >>> CHUNK_BITS;
+        Chunk chunk = chunk(index);
+        if (chunk.statusEpoch != snapshotEpoch) {
+            shareWithPartialSnapshots(index, chunk.statuses);
+            chunk.statuses = chunk.statuses.clone();
+            chunk.statusEpoch = snapshotEpoch;
+        }
+        chunk.statuses[row & CHUNK_MASK] = (byte) status;
+        chunk.dirty = true;
+    }
+
+    // A consistent view of every row stored so far; later writes never show through
+    public static synchronized Snapshot snapshot() {
+        snapshotEpoch++;
+        int count = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        AtomicReferenceArray<byte[]> statuses = new AtomicReferenceArray<>(count);
+        int missing = 0;
+        for (int index = 0; index < count; index++) {
+            Chunk chunk = chunks[index];
+            if (chunk != null) {
+                statuses.set(index, chunk.statuses);
+            } else {
+                missing++;
+            }
+        }
+        Snapshot snapshot = new Snapshot(size, statuses, missing);
+        if (missing > 0) {
+            PARTIAL_SNAPSHOTS.removeIf(reference -> reference.get() == null);
+            PARTIAL_SNAPSHOTS.add(new WeakReference<>(snapshot));
+        }
+        return snapshot;
+    }
+
+    // Closes the page file once nothing reads the store any more; its pages are only good for this run
+    public static synchronized void close() {
+        if (pageFile == null) {
+            return;
+        }
+        try {
+            pageFile.close();
+            pageFile = null;
+            Files.deleteIfExists(PAGE_FILE);
+        } catch (IOException e) {
+            Log.error("applications.close_failed", "error", e);
+        }
+    }
+
+    // The chunk, read back from the page file if it was paged out
+    private static Chunk chunk(int index) {
+        Chunk chunk = chunks[index];
+        if (chunk == null) {
+            chunk = pageIn(index);
+        }
+        chunk.referenced = true;
+        return chunk;
+    }
+
+    private static synchronized Chunk pageIn(int index) {
+        Chunk chunk = chunks[index];
+        if (chunk != null) {
+            return chunk;
+        }
+        chunk = new Chunk();
+        chunk.dirty = false;
+        try {
+            MappedByteBuffer page = pageFile.map(FileChannel.MapMode.READ_ONLY, (long) index * CHUNK_BYTES, CHUNK_BYTES);
+            page.asIntBuffer().get(chunk.applicants);
+            page.position(PROJECTS_AT);
+            page.asIntBuffer().get(chunk.projects);
+            page.position(FLAT_TYPES_AT);
+            page.get(chunk.flatTypes);
+            page.get(chunk.statuses);
+            page.position(SUBMITTED_AT);
+            page.asLongBuffer().get(chunk.submitted);
+            page.position(DECIDED_AT);
+            page.asLongBuffer().get(chunk.decided);
+            page.position(CHANGED_AT);
+            page.asLongBuffer().get(chunk.changed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // a snapshot taken while it was paged out may not have its statuses yet
+        chunk.statusEpoch = PARTIAL_SNAPSHOTS.isEmpty() ? snapshotEpoch : -1;
+        install(index, chunk);
+        return chunk;
+    }
+
+    private static void install(int index, Chunk chunk) {
+        chunks[index] = chunk;
+        chunk.referenced = true;
+        residentChunks++;
+        if (residentChunks > RESIDENT_LIMIT) {
+            pageOutOne(index);
+        }
+    }
+
+    // Clock sweep: pages out the first chunk not read since the hand last passed it
+    private static void pageOutOne(int keep) {
+        if (pagingFailed) {
+            return;
+        }
+        for (int step = 0; step < 2 * chunkCount; step++) {
+            int index = clockHand;
+            clockHand = (clockHand + 1) % chunkCount;
+            Chunk chunk = chunks[index];
+            if (chunk == null || index == keep) {
+                continue;
+            }
+            if (chunk.referenced) {
+                chunk.referenced = false;
+                continue;
+            }
+            if (chunk.dirty && !write(index, chunk)) {
+                return;
+            }
+            chunks[index] = null;
+            residentChunks--;
+            return;
+        }
+    }
+
+    // Writes the chunk to its page; on failure paging stops and every chunk stays on the heap
+    private static boolean write(int index, Chunk chunk) {
+        try {
+            if (pageFile == null) {
+                Path parent = PAGE_FILE.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                pageFile = FileChannel.open(PAGE_FILE, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            MappedByteBuffer page = pageFile.map(FileChannel.MapMode.READ_WRITE, (long) index * CHUNK_BYTES, CHUNK_BYTES);
+            page.asIntBuffer().put(chunk.applicants);
+            page.position(PROJECTS_AT);
+            page.asIntBuffer().put(chunk.projects);
+            page.position(FLAT_TYPES_AT);
+            page.put(chunk.flatTypes);
+            page.put(chunk.statuses);
+            page.position(SUBMITTED_AT);
+            page.asLongBuffer().put(chunk.submitted);
+            page.position(DECIDED_AT);
+            page.asLongBuffer().put(chunk.decided);
+            page.position(CHANGED_AT);
+            page.asLongBuffer().put(chunk.changed);
+            chunk.dirty = false;
+            return true;
+        } catch (IOException e) {
+            pagingFailed = true;
+            Log.error("applications.page_out_failed", "fallback", "memory", "error", e);
+            return false;
+        }
+    }
+
+    // Gives the status slice, as it is before a write, to snapshots that have not read it yet
+    private static void shareWithPartialSnapshots(int index, byte[] statuses) {
+        for (Iterator<WeakReference<Snapshot>> it = PARTIAL_SNAPSHOTS.iterator(); it.hasNext();) {
+            Snapshot snapshot = it.next().get();
+            if (snapshot != null && index < snapshot.statuses.length() && snapshot.statuses.get(index) == null) {
+                snapshot.share(index, statuses);
+            }
+            if (snapshot == null || snapshot.missing == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    // The status slice of a chunk that was paged out when the snapshot was taken. Any write
+    // since then would have handed the snapshot the slice first, so the live one is unchanged.
+    private static synchronized byte[] shareStatuses(Snapshot snapshot, int index) {
+        byte[] statuses = snapshot.statuses.get(index);
+        if (statuses == null) {
+            Chunk chunk = chunk(index);
+            statuses = chunk.statuses;
+            chunk.statusEpoch = -1; // shared now, so the next write copies it
+            snapshot.share(index, statuses);
+        }
+        return statuses;
+    }
+
+    // Ordinal of a status name, case-insensitive
+    public static int statusOrdinal(String status) {
+        return ordinalOf(STATUSES, status);
+    }
+
+    // Ordinal of a flat type name, case-insensitive
+    public static int flatTypeOrdinal(String flatType) {
+        int ordinal = FlatTypeRegistry.ordinalOf(flatType);
+        if (ordinal == FlatTypeRegistry.UNKNOWN) {
+            throw new IllegalArgumentException("Unknown value: " + flatType);
+        }
+        return ordinal;
+    }
+
+    private static int ordinalOf(String[] table, String value) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].equalsIgnoreCase(value)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown value: " + value);
+    }
+
+    // One CHUNK_SIZE slice of every column
+    private static final class Chunk {
+        final int[] applicants = new int[CHUNK_SIZE];
+        final int[] projects = new int[CHUNK_SIZE];
+        final byte[] flatTypes = new byte[CHUNK_SIZE];
+        byte[] statuses = new byte[CHUNK_SIZE];
+        // epoch milliseconds from MonotonicClock; 0 where not known or not happened yet
+        final long[] submitted = new long[CHUNK_SIZE];
+        final long[] decided = new long[CHUNK_SIZE];
+        final long[] changed = new long[CHUNK_SIZE];
+        // snapshotEpoch when statuses was last copied; anything else means a snapshot may share it
+        long statusEpoch;
+        // changed since it was last written to its page
+        boolean dirty = true;
+        // set by every read, cleared as the clock hand passes
+        boolean referenced;
+    }
+
+    public static final class Snapshot {
+        private final int size;
+        // the status slices as they were, by chunk; writers replace, never change, these.
+        // Null for a chunk that was paged out until the snapshot reads it or a write comes first.
+        private final AtomicReferenceArray<byte[]> statuses;
+        private int missing; // guarded by ApplicationStore.class
+
+        private Snapshot(int size, AtomicReferenceArray<byte[]> statuses, int missing) {
+            this.size = size;
+            this.statuses = statuses;
+            this.missing = missing;
+        }
+
+        private void share(int index, byte[] slice) {
+            statuses.set(index, slice);
+            missing--;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // rows before size never change in the append-only columns, so those are read live
+        public int getApplicantIndex(int row) {
+            return ApplicationStore.getApplicantIndex(checkRow(row));
+        }
+
+        public int getProjectId(int row) {
+            return ApplicationStore.getProjectId(checkRow(row));
+        }
+
+        public int getFlatTypeOrdinal(int row) {
+            return ApplicationStore.getFlatTypeOrdinal(checkRow(row));
+        }
+
+        public int getStatusOrdinal(int row) {
+            return getStatusCode(row) & STATUS_MASK;
+        }
+
+        public boolean holdsUnit(int row) {
+            return (getStatusCode(row) & UNIT_HELD) != 0;
+        }
+
+        int getStatusCode(int row) {
+            int index = checkRow(row) >>> CHUNK_BITS;
+            byte[] slice = statuses.get(index);
+            if (slice == null) {
+                slice = shareStatuses(this, index);
+            }
+            return slice[row & CHUNK_MASK];
+        }
+
+        public String getFlatType(int row) {
+            return FlatTypeRegistry.name(getFlatTypeOrdinal(row));
+        }
+
+        public String getStatus(int row) {
+            return STATUSES[getStatusOrdinal(row)];
+        }
+
+        private int checkRow(int row) {
+            return Objects.checkIndex(row, size);
+        }
+    }
+}
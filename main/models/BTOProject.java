@@ -1,42 +1,67 @@
 package main.models;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import main.util.IntSnapshotList;
+import main.util.WriteBehindStore;
 
 
 public class BTOProject {
     
+    private final int projectId;              // Stable numeric ID, unaffected by renames
     private HDBManager manager;               // The manager who owns/created this project
     private String projectName;               // Name of the BTO project
     private String neighborhood;              // E.g., Yishun, Boon Lay, etc.
-    public Date startDate;                    // Application opening date
-    public Date endDate;                      // Application closing date
-    private ArrayList<String> flatTypes;      // ["2-room", "3-room"]
+    private int startDay;                     // Application opening date, as an epoch day
+    private int endDay;                       // Application closing date (inclusive), as an epoch day
+    private ArrayList<String> flatTypes;      // Offered types, e.g. ["2-room", "3-room"]
     
-    private int twoRoomUnitsAvailable;        // How many 2-room units are available
-    private int threeRoomUnitsAvailable;      // How many 3-room units are available
+    private int[] units;                      // Units available, by FlatTypeRegistry ordinal
+    private int[] prices;                     // Selling price, by FlatTypeRegistry ordinal
     
     private boolean visibility;               // Whether the project is visible to applicants
     private int maxOfficers;                  // Max number of HDB officers that can handle this project
     private ArrayList<HDBOfficer> HDBOfficers;// The officers assigned to handle
-    private ArrayList<Application> applications;
+    private final AtomicInteger officerCount; // Officer slots taken, checked against maxOfficers
+    private final IntSnapshotList applicationRows; // ApplicationStore rows, in submission order
+    private final AtomicLong version;         // Bumped by every change, for conditional edits
+
+    public BTOProject(HDBManager manager, String projectName, String neighborhood, int startDay, int endDay, int maxOfficers) {
+        this(ProjectRepository.nextProjectId(), manager, projectName, neighborhood, startDay, endDay, maxOfficers);
+    }
 
-    public BTOProject(HDBManager manager, String projectName, String neighborhood, Date startDate, Date endDate, ArrayList<String> flatTypes, int twoRoomUnits, int threeRoomUnits, int maxOfficers) {
+    // Recovery recreates projects under the ID they were journaled with
+    BTOProject(int projectId, HDBManager manager, String projectName, String neighborhood, int startDay, int endDay, int maxOfficers) {
+        this.projectId = projectId;
         this.manager = manager;
         this.projectName = projectName;
         this.neighborhood = neighborhood;
-        this.startDate = startDate;
-        this.endDate = endDate;
-        this.flatTypes = flatTypes;
-        this.twoRoomUnitsAvailable = twoRoomUnits;
-        this.threeRoomUnitsAvailable = threeRoomUnits;
+        this.startDay = startDay;
+        this.endDay = endDay;
+        this.flatTypes = new ArrayList<>();
+        this.units = new int[FlatTypeRegistry.count()];
+        this.prices = new int[FlatTypeRegistry.count()];
         this.maxOfficers = maxOfficers;
         this.visibility = true; 
         this.HDBOfficers = new ArrayList<>();
-        this.applications = new ArrayList<>();
+        this.officerCount = new AtomicInteger();
+        this.applicationRows = new IntSnapshotList();
+        this.version = new AtomicLong();
     }
     
+    public int getProjectId() {
+        return projectId;
+    }
+
+    // Version of the project's fields; read it before the fields an edit is based on
+    public long getVersion() {
+        return version.get();
+    }
+
     public HDBManager getManager() {
         return manager;
     }
@@ -47,6 +72,8 @@ public class BTOProject {
 
     public void setProjectName(String projectName) {
         this.projectName = projectName;
+        ProjectCatalogue.renamed(this);
+        changed();
     }
 
     public String getNeighborhood() {
@@ -55,30 +82,54 @@ public class BTOProject {
 
     public void setNeighborhood(String neighborhood) {
         this.neighborhood = neighborhood;
+        ProjectCatalogue.neighborhoodChanged(this);
+        changed();
+    }
+
+    public int getStartDay() {
+        return startDay;
     }
 
-    public Date getStartDate() {
-        return startDate;
+    public void setStartDay(int startDay) {
+        this.startDay = startDay;
+        ProjectCatalogue.windowChanged(this);
+        changed();
     }
 
-    public void setStartDate(Date startDate) {
-        this.startDate = startDate;
+    public int getEndDay() {
+        return endDay;
     }
 
-    public Date getEndDate() {
-        return endDate;
+    public void setEndDay(int endDay) {
+        this.endDay = endDay;
+        ProjectCatalogue.windowChanged(this);
+        changed();
     }
 
-    public void setEndDate(Date endDate) {
-        this.endDate = endDate;
+    // Whether the application window includes the given epoch day
+    public boolean isOpenOn(int day) {
+        return startDay <= day && day <= endDay;
     }
 
     public ArrayList<String> getFlatTypes() {
         return flatTypes;
     }
 
-    public void setFlatTypes(ArrayList<String> flatTypes) {
-        this.flatTypes = flatTypes;
+    // Offer a flat type, or update its units and price if it is already offered
+    public void addFlatType(String flatType, int units, int price) {
+        int ordinal = FlatTypeRegistry.intern(flatType);
+        ensureCapacity(ordinal);
+        if (!offersFlatType(ordinal)) {
+            flatTypes.add(FlatTypeRegistry.name(ordinal));
+        }
+        this.units[ordinal] = units;
+        this.prices[ordinal] = price;
+        ProjectCatalogue.unitsChanged(this, FlatTypeRegistry.name(ordinal));
+        changed();
+    }
+
+    public boolean offersFlatType(int ordinal) {
+        return ordinal >= 0 && flatTypes.contains(FlatTypeRegistry.name(ordinal));
     }
 
     public boolean isVisible() {
@@ -87,68 +138,147 @@ public class BTOProject {
 
     public void setVisibility(boolean visibility) {
         this.visibility = visibility;
+        ProjectCatalogue.visibilityChanged(this);
+        changed();
     }
 
-    public int getTwoRoomUnitsAvailable() {
-        return twoRoomUnitsAvailable;
+    public int getMaxOfficers() {
+        return maxOfficers;
     }
 
-    public void setTwoRoomUnitsAvailable(int twoRoomUnitsAvailable) {
-        this.twoRoomUnitsAvailable = twoRoomUnitsAvailable;
+    // A copy taken under the list's lock, safe to read while officers are added or removed
+    public List<HDBOfficer> getHDBOfficers() {
+        synchronized (HDBOfficers) {
+            return new ArrayList<>(HDBOfficers);
+        }
     }
 
-    public int getThreeRoomUnitsAvailable() {
-        return threeRoomUnitsAvailable;
+    public int getOfficerCount() {
+        return officerCount.get();
     }
 
-    public void setThreeRoomUnitsAvailable(int threeRoomUnitsAvailable) {
-        this.threeRoomUnitsAvailable = threeRoomUnitsAvailable;
+    // Takes an officer slot if one is free; false once maxOfficers is reached
+    public boolean tryAddOfficer(HDBOfficer officer) {
+        int taken;
+        do {
+            taken = officerCount.get();
+            if (taken >= maxOfficers) {
+                return false;
+            }
+        } while (!officerCount.compareAndSet(taken, taken + 1));
+        synchronized (HDBOfficers) {
+            HDBOfficers.add(officer);
+        }
+        changed();
+        return true;
     }
 
-    public int getMaxOfficers() {
-        return maxOfficers;
+    public void removeOfficer(HDBOfficer officer) {
+        synchronized (HDBOfficers) {
+            if (HDBOfficers.remove(officer)) {
+                officerCount.decrementAndGet();
+            }
+        }
+        changed();
     }
 
-    public List<HDBOfficer> getHDBOfficers() {
-        return HDBOfficers;
+    // Flyweight views of every application; prefer the row accessors for large scans
+    public ArrayList<Application> getApplications() {
+        IntSnapshotList.View rows = applicationRows.snapshot();
+        ArrayList<Application> applications = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            applications.add(Application.fromRow(rows.get(i)));
+        }
+        return applications;
     }
 
-    public ArrayList<Application> getApplications() {
-        return applications; 
+    public int getApplicationCount() {
+        return applicationRows.size();
+    }
+
+    // ApplicationStore row of the i-th application submitted to this project
+    public int getApplicationRow(int i) {
+        return applicationRows.snapshot().get(i);
+    }
+
+    // The project's rows as of an ApplicationStore snapshot, in submission order
+    public IntSnapshotList.View getApplicationRows(ApplicationStore.Snapshot snapshot) {
+        return applicationRows.snapshot().headBelow(snapshot.size());
     }
 
     public void addApplication(Application application) {
-        if (!applications.contains(application)) {
-            applications.add(application);
+        // rows only ever grow, so the list stays sorted
+        if (!applicationRows.snapshot().containsSorted(application.getRow())) {
+            applicationRows.add(application.getRow());
         }
     }
 
     public void removeApplication(Application application) {
-        applications.remove(application);
+        applicationRows.removeValue(application.getRow());
     }
 
+    // get available units for a flat type; 0 for types this project does not offer
+    public int getUnits(int ordinal) {
+        return ordinal >= 0 && ordinal < units.length ? units[ordinal] : 0;
+    }
 
-
-    // get available units for each flat type
     public int getUnits(String flatType) {
-        if ("2-room".equals(flatType)) {
-            return twoRoomUnitsAvailable;
-        } else if ("3-room".equals(flatType)) {
-            return threeRoomUnitsAvailable;
-        } else {
-            // If more flat types exist, handle them or default to 0
-            return 0;
+        return getUnits(FlatTypeRegistry.ordinalOf(flatType));
+    }
+
+    // set units for an offered flat type; other types are ignored
+    public void setUnits(int ordinal, int units) {
+        if (offersFlatType(ordinal)) {
+            this.units[ordinal] = units;
+            ProjectCatalogue.unitsChanged(this, FlatTypeRegistry.name(ordinal));
+            changed();
         }
     }
 
-    // set units for each flat type
     public void setUnits(String flatType, int units) {
-        if ("2-room".equals(flatType)) {
-            this.twoRoomUnitsAvailable = units;
-        } else if ("3-room".equals(flatType)) {
-            this.threeRoomUnitsAvailable = units;
-        } else {
-            // If more flat types exist, handle them accordingly
+        setUnits(FlatTypeRegistry.ordinalOf(flatType), units);
+    }
+
+    // Transaction writes: set fields without notifying anyone, then call fieldsChanged once
+    void assignDetails(String projectName, String neighborhood, int startDay, int endDay) {
+        this.projectName = projectName;
+        this.neighborhood = neighborhood;
+        this.startDay = startDay;
+        this.endDay = endDay;
+    }
+
+    void assignUnits(int ordinal, int units) {
+        if (offersFlatType(ordinal)) {
+            this.units[ordinal] = units;
+        }
+    }
+
+    // Brings the catalogue, journal and subscribers up to date after assign calls
+    void fieldsChanged() {
+        ProjectCatalogue.refresh(this);
+        changed();
+    }
+
+    public int getPrice(int ordinal) {
+        return ordinal >= 0 && ordinal < prices.length ? prices[ordinal] : 0;
+    }
+
+    // Journal the change and schedule the project for writing, once it is registered.
+    // Setters of indexed fields update their ProjectCatalogue entries first.
+    private void changed() {
+        version.incrementAndGet();
+        if (ProjectRepository.getProjectById(projectId) == this) {
+            StateJournal.projectChanged(this);
+            WriteBehindStore.markDirty(this);
+            DomainEvents.projectEdited(this);
+        }
+    }
+
+    // types registered after this project was created need room in the per-type arrays
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= units.length) {
+            units = Arrays.copyOf(units, FlatTypeRegistry.count());
+            prices = Arrays.copyOf(prices, FlatTypeRegistry.count());
         }
     }
 }
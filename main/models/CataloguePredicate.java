@@ -0,0 +1,71 @@
+package main.models;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+// A filter over the project catalogue. Each predicate produces the set of matching project IDs
+// as a bitmap, so predicates combine with and/or/not as plain bitmap operations.
+public interface CataloguePredicate {
+
+    BitSet evaluate();
+
+    default CataloguePredicate and(CataloguePredicate other) {
+        return () -> {
+            BitSet result = evaluate();
+            result.and(other.evaluate());
+            return result;
+        };
+    }
+
+    default CataloguePredicate or(CataloguePredicate other) {
+        return () -> {
+            BitSet result = evaluate();
+            result.or(other.evaluate());
+            return result;
+        };
+    }
+
+    default CataloguePredicate not() {
+        return () -> {
+            BitSet result = ProjectCatalogue.allProjects();
+            result.andNot(evaluate());
+            return result;
+        };
+    }
+
+    static CataloguePredicate all() {
+        return ProjectCatalogue::allProjects;
+    }
+
+    // Exactly the given projects, e.g. the ones a manager owns
+    static CataloguePredicate among(Collection<BTOProject> projects) {
+        return () -> {
+            BitSet result = new BitSet();
+            for (BTOProject project : projects) {
+                result.set(project.getProjectId());
+            }
+            return result;
+        };
+    }
+
+    static CataloguePredicate visible() {
+        return ProjectCatalogue::visibleProjects;
+    }
+
+    static CataloguePredicate neighborhood(String neighborhood) {
+        return () -> ProjectCatalogue.projectsInNeighborhood(neighborhood);
+    }
+
+    static CataloguePredicate offersFlatType(String flatType) {
+        return () -> ProjectCatalogue.projectsOffering(flatType);
+    }
+
+    static CataloguePredicate unitsAtLeast(String flatType, int units) {
+        return () -> ProjectCatalogue.projectsWithUnitsAtLeast(flatType, units);
+    }
+
+    // Application window includes the given epoch day
+    static CataloguePredicate openOn(int day) {
+        return () -> ProjectCatalogue.projectsOpenOn(day);
+    }
+}
@@ -0,0 +1,59 @@
+package main.models;
+
+/**
+ * Something that happened to an application, enquiry or project, as seen by subscribers of
+ * DomainEvents. Instances are slots of the event ring, reused for later events, so a
+ * subscriber copies out what it needs instead of keeping the event.
+ */
+public class DomainEvent {
+    public enum Type {
+        APPLICATION_SUBMITTED,  // subject: application row
+        STATUS_CHANGED,         // subject: application row; previous/current: status codes
+        ENQUIRY_SUBMITTED,      // subject: enquiry ID
+        ENQUIRY_REPLIED,        // subject: enquiry ID
+        ENQUIRY_REMOVED,        // subject: enquiry ID
+        PROJECT_EDITED          // subject: project ID; current: the project's new version
+    }
+
+    private Type type;
+    private int projectId;
+    private long subject;
+    private int previous;
+    private int current;
+    private long timestamp;
+
+    void set(Type type, int projectId, long subject, int previous, int current, long timestamp) {
+        this.type = type;
+        this.projectId = projectId;
+        this.subject = subject;
+        this.previous = previous;
+        this.current = current;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    // Application row, enquiry ID or project ID, by type
+    public long getSubject() {
+        return subject;
+    }
+
+    public int getPrevious() {
+        return previous;
+    }
+
+    public int getCurrent() {
+        return current;
+    }
+
+    // MonotonicClock time the event was published
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,67 @@
+package main.models;
+
+import main.util.EventRing;
+import main.util.MonotonicClock;
+
+/**
+ * In-process bus of DomainEvents. The stores publish as they change, into a preallocated
+ * EventRing, and each subscriber handles events in batches on its own thread, so work such
+ * as counting project activity or updating metrics stays off the thread that made the
+ * change. Subscribers are added during startup; nothing is published until start(), so
+ * loading and recovery, which subscribers catch up with on their own, raise no events.
+ *
+ * Configured with system properties:
+ *   bto.events.ringSize  events the ring holds before publishers wait (default 1024)
+ */
+public class DomainEvents {
+    private static final EventRing<DomainEvent> RING =
+            new EventRing<>(Integer.getInteger("bto.events.ringSize", 1024), DomainEvent::new);
+
+    public static EventRing.Subscription<DomainEvent> subscribe(String name, EventRing.Handler<DomainEvent> handler) {
+        return RING.subscribe(name, handler);
+    }
+
+    public static void start() {
+        RING.start();
+    }
+
+    // Lets every subscriber finish what was published, then stops their threads
+    public static void stop() {
+        RING.stop();
+    }
+
+    static void applicationSubmitted(int row) {
+        publish(DomainEvent.Type.APPLICATION_SUBMITTED, ApplicationStore.getProjectId(row), row, 0, 0);
+    }
+
+    // Status codes include the UNIT_HELD flag
+    static void statusChanged(int row, int previousCode, int code) {
+        publish(DomainEvent.Type.STATUS_CHANGED, ApplicationStore.getProjectId(row), row, previousCode, code);
+    }
+
+    static void enquirySubmitted(Enquiry enquiry) {
+        publish(DomainEvent.Type.ENQUIRY_SUBMITTED, enquiry.getProjectId(), enquiry.getEnquiryId(), 0, 0);
+    }
+
+    static void enquiryReplied(Enquiry enquiry) {
+        publish(DomainEvent.Type.ENQUIRY_REPLIED, enquiry.getProjectId(), enquiry.getEnquiryId(), 0, 0);
+    }
+
+    static void enquiryRemoved(Enquiry enquiry) {
+        publish(DomainEvent.Type.ENQUIRY_REMOVED, enquiry.getProjectId(), enquiry.getEnquiryId(), 0, 0);
+    }
+
+    static void projectEdited(BTOProject project) {
+        publish(DomainEvent.Type.PROJECT_EDITED, project.getProjectId(), project.getProjectId(), 0,
+                (int) project.getVersion());
+    }
+
+    private static void publish(DomainEvent.Type type, int projectId, long subject, int previous, int current) {
+        if (!RING.isStarted()) {
+            return;
+        }
+        long sequence = RING.claim();
+        RING.slot(sequence).set(type, projectId, subject, previous, current, MonotonicClock.now());
+        RING.publish(sequence);
+    }
+}
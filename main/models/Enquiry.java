@@ -1,30 +1,46 @@
 package main.models;
 
+import main.util.MonotonicClock;
+import main.util.NricCodec;
+
 public class Enquiry {
-    private String enquiryId;
-    private String userNric;
-    private String projectName;
+    private long enquiryId;
+    private long userKey;            // packed NRIC of the enquirer
+    private int projectId;
     private String message;
     private String reply;
+    private long submittedAt;        // MonotonicClock milliseconds; 0 if not known
+    private long repliedAt;          // when it was first answered, or 0 while unanswered
 
-    public Enquiry(String enquiryId, String userNric, String projectName, String message) {
+    public Enquiry(long enquiryId, long userKey, int projectId, String message) {
         this.enquiryId = enquiryId;
-        this.userNric = userNric;
-        this.projectName = projectName;
+        this.userKey = userKey;
+        this.projectId = projectId;
         this.message = message;
         this.reply = null;  
+        this.submittedAt = MonotonicClock.now();
     }
 
-    public String getEnquiryId() {
+    public long getEnquiryId() {
         return enquiryId;
     }
 
+    public long getUserKey() {
+        return userKey;
+    }
+
     public String getUserNric() {
-        return userNric;
+        return NricCodec.unpack(userKey);
+    }
+
+    public int getProjectId() {
+        return projectId;
     }
 
+    // Resolved through the project ID, so it follows renames
     public String getProjectName() {
-        return projectName;
+        BTOProject project = ProjectRepository.getProjectById(projectId);
+        return project != null ? project.getProjectName() : null;
     }
 
     public String getMessage() {
@@ -33,10 +49,53 @@ public class Enquiry {
 
     public void setMessage(String message) {
         this.message = message;
+        EnquiryRepository.enquiryChanged(this, true);
     }
 
     public String getReply() { return reply; }
-    public void setReply(String reply) { this.reply = reply; }
+    public void setReply(String reply) {
+        boolean wasAnswered = hasReply();
+        this.reply = reply;
+        if (!wasAnswered && hasReply()) {
+            repliedAt = MonotonicClock.now();
+        } else if (!hasReply()) {
+            repliedAt = 0;
+        }
+        EnquiryRepository.enquiryChanged(this, false);
+        if (wasAnswered != hasReply()) {
+            ServiceLevels.enquiryAnswerChanged(this);
+        }
+        if (hasReply()) {
+            DomainEvents.enquiryReplied(this);
+        }
+    }
     public boolean hasReply() { return reply != null && !reply.isEmpty(); }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public long getRepliedAt() {
+        return repliedAt;
+    }
+
+    // Sets the reply of an enquiry read back from storage, which is already up to date
+    void restoreReply(String reply) {
+        this.reply = reply;
+    }
+
+    void restoreTimes(long submittedAt, long repliedAt) {
+        this.submittedAt = submittedAt;
+        this.repliedAt = repliedAt;
+    }
+
+    // Recovery: takes every field as journaled, stamping nothing
+    void restore(String message, String reply, long submittedAt, long repliedAt) {
+        boolean messageChanged = !message.equals(this.message);
+        this.message = message;
+        this.reply = reply;
+        restoreTimes(submittedAt, repliedAt);
+        EnquiryRepository.enquiryChanged(this, messageChanged);
+    }
 }
 
@@ -0,0 +1,341 @@
+package main.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import main.util.IntList;
+import main.util.LongIndex;
+
+/**
+ * Streaming near-duplicate clustering of enquiry messages, per project.
+ * Each message gets a MinHash signature over its words and word pairs. The signature is
+ * split into bands, and enquiries of the same project whose bands collide are compared
+ * (locality-sensitive hashing), so a new enquiry is only checked against likely
+ * duplicates instead of every other enquiry. Matches are merged with union-find.
+ * An edited or removed message leaves its cluster, and the rest of that cluster is linked
+ * again without it the next time it is read, so a match made through the old text no longer
+ * holds the others together. Once most slots belong to removed entries the index is rebuilt
+ * from the live ones.
+ */
+public class EnquiryClusterIndex {
+    private static final int NUM_HASHES = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = NUM_HASHES / BANDS;
+    private static final double SIMILARITY_THRESHOLD = 0.5;  // estimated Jaccard similarity
+    private static final int MAX_COMPARISONS_PER_BUCKET = 16;
+    // entries looked at per bucket, live or not, until the next rebuild drops the dead ones
+    private static final int MAX_SCANNED_PER_BUCKET = 4 * MAX_COMPARISONS_PER_BUCKET;
+
+    private static final long[] SEEDS = new long[NUM_HASHES];
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    // per-entry data, by slot
+    private static long[] slotEnquiryId = new long[1024];
+    private static int[] slotProjectId = new int[1024];
+    private static int[][] slotSignature = new int[1024][];
+    private static int[] parent = new int[1024];
+    private static boolean[] live = new boolean[1024];
+    private static int slotCount = 0;
+    private static int liveCount = 0;
+    // members of each cluster, kept on the root slot
+    private static final ArrayList<IntList> MEMBERS = new ArrayList<>();
+    // roots of clusters holding a retired slot, to be linked again before they are read
+    private static final BitSet STALE = new BitSet();
+
+    // band bucket (project, band, band values) -> slots
+    private static final HashMap<Long, IntList> BUCKETS = new HashMap<>();
+    // enquiry ID -> its current slot
+    private static final LongIndex CURRENT_SLOT = new LongIndex();
+
+    public static synchronized void add(Enquiry enquiry) {
+        remove(enquiry);
+        addEntry(enquiry.getEnquiryId(), enquiry.getProjectId(), signature(enquiry.getMessage()));
+    }
+
+    private static void addEntry(long enquiryId, int projectId, int[] signature) {
+        int slot = slotCount++;
+        if (slot == parent.length) {
+            int grown = slot * 2;
+            slotEnquiryId = Arrays.copyOf(slotEnquiryId, grown);
+            slotProjectId = Arrays.copyOf(slotProjectId, grown);
+            slotSignature = Arrays.copyOf(slotSignature, grown);
+            parent = Arrays.copyOf(parent, grown);
+            live = Arrays.copyOf(live, grown);
+        }
+        slotEnquiryId[slot] = enquiryId;
+        slotProjectId[slot] = projectId;
+        slotSignature[slot] = signature;
+        parent[slot] = slot;
+        live[slot] = true;
+        liveCount++;
+        MEMBERS.add(singleton(slot));
+        CURRENT_SLOT.put(enquiryId, slot);
+        link(slot, BUCKETS);
+    }
+
+    // Files the slot under its band buckets, merging it with similar entries already there
+    private static void link(int slot, HashMap<Long, IntList> buckets) {
+        int[] signature = slotSignature[slot];
+        if (signature == null) {
+            return; // nothing to compare, e.g. an empty message
+        }
+        for (int band = 0; band < BANDS; band++) {
+            IntList bucket = buckets.computeIfAbsent(bucketKey(slotProjectId[slot], band, signature), k -> new IntList(2));
+            // compare against the most recent entries only, which bounds the cost of a hot bucket
+            int compared = 0;
+            int scanned = 0;
+            for (int i = bucket.size() - 1; i >= 0 && compared < MAX_COMPARISONS_PER_BUCKET
+                    && scanned < MAX_SCANNED_PER_BUCKET; i--) {
+                int other = bucket.get(i);
+                scanned++;
+                if (!live[other]) {
+                    continue;
+                }
+                compared++;
+                if (find(other) != find(slot) && similarity(signature, slotSignature[other]) >= SIMILARITY_THRESHOLD) {
+                    union(slot, other);
+                }
+            }
+            bucket.add(slot);
+        }
+    }
+
+    // Re-cluster after the message changed
+    public static synchronized void update(Enquiry enquiry) {
+        add(enquiry);
+    }
+
+    public static synchronized void remove(Enquiry enquiry) {
+        int slot = CURRENT_SLOT.remove(enquiry.getEnquiryId());
+        if (slot == LongIndex.NOT_FOUND) {
+            return;
+        }
+        live[slot] = false;
+        slotSignature[slot] = null;
+        liveCount--;
+
+        // once most slots are retired, rebuild so buckets and clusters stop carrying them
+        if (slotCount > 1024 && liveCount < slotCount / 2) {
+            rebuild();
+            return;
+        }
+        int root = find(slot);
+        if (MEMBERS.get(root).size() == 1) {
+            MEMBERS.set(root, null);
+        } else {
+            STALE.set(root);
+        }
+    }
+
+    // Splits a stale cluster back into its live members and links them again among
+    // themselves, in slot order, so nothing stays joined only through a retired slot
+    private static void relink(int root) {
+        STALE.clear(root);
+        IntList members = MEMBERS.get(root);
+        MEMBERS.set(root, null);
+        int[] remaining = new int[members.size()];
+        int count = 0;
+        for (int i = 0; i < members.size(); i++) {
+            int member = members.get(i);
+            if (live[member]) {
+                parent[member] = member;
+                MEMBERS.set(member, singleton(member));
+                remaining[count++] = member;
+            }
+        }
+        if (count < 2) {
+            return;
+        }
+        Arrays.sort(remaining, 0, count);
+        HashMap<Long, IntList> buckets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            link(remaining[i], buckets);
+        }
+    }
+
+    // Every enquiry in the same cluster as this one, including itself. Enquiries are read
+    // after the index lock is released, since EnquiryRepository calls in holding its own lock.
+    public static List<Enquiry> getCluster(Enquiry enquiry) {
+        List<Enquiry> cluster = new ArrayList<>();
+        long[] ids = clusterIds(enquiry.getEnquiryId());
+        if (ids == null) {
+            cluster.add(enquiry);
+            return cluster;
+        }
+        for (long id : ids) {
+            Enquiry found = EnquiryRepository.getEnquiryById(id);
+            if (found != null) {
+                cluster.add(found);
+            }
+        }
+        return cluster;
+    }
+
+    // IDs of the live members of the enquiry's cluster, or null if it is not indexed
+    private static synchronized long[] clusterIds(long enquiryId) {
+        int slot = CURRENT_SLOT.get(enquiryId);
+        if (slot == LongIndex.NOT_FOUND) {
+            return null;
+        }
+        int root = find(slot);
+        if (STALE.get(root)) {
+            relink(root);
+            root = find(slot);
+        }
+        IntList members = MEMBERS.get(root);
+        long[] ids = new long[members.size()];
+        int count = 0;
+        for (int i = 0; i < members.size(); i++) {
+            int member = members.get(i);
+            if (live[member]) {
+                ids[count++] = slotEnquiryId[member];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    // Re-number the live slots from scratch, dropping retired ones from every bucket and cluster.
+    // Works from the stored signatures, so it never reads enquiries back from the repository.
+    private static void rebuild() {
+        int oldCount = slotCount;
+        long[] oldIds = slotEnquiryId;
+        int[] oldProjects = slotProjectId;
+        int[][] oldSignatures = slotSignature;
+        boolean[] oldLive = live;
+
+        int capacity = Math.max(1024, liveCount * 2);
+        slotEnquiryId = new long[capacity];
+        slotProjectId = new int[capacity];
+        slotSignature = new int[capacity][];
+        parent = new int[capacity];
+        live = new boolean[capacity];
+        MEMBERS.clear();
+        STALE.clear();
+        BUCKETS.clear();
+        CURRENT_SLOT.clear();
+        slotCount = 0;
+        liveCount = 0;
+
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (oldLive[slot]) {
+                addEntry(oldIds[slot], oldProjects[slot], oldSignatures[slot]);
+            }
+        }
+    }
+
+    private static IntList singleton(int slot) {
+        IntList members = new IntList(1);
+        members.add(slot);
+        return members;
+    }
+
+    private static int find(int slot) {
+        while (parent[slot] != slot) {
+            parent[slot] = parent[parent[slot]]; // path halving
+            slot = parent[slot];
+        }
+        return slot;
+    }
+
+    // Union by size, moving the smaller member list into the larger one
+    private static void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (MEMBERS.get(rootA).size() < MEMBERS.get(rootB).size()) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        IntList into = MEMBERS.get(rootA);
+        IntList from = MEMBERS.get(rootB);
+        for (int i = 0; i < from.size(); i++) {
+            into.add(from.get(i));
+        }
+        MEMBERS.set(rootB, null);
+        parent[rootB] = rootA;
+        if (STALE.get(rootB)) {
+            STALE.clear(rootB);
+            STALE.set(rootA);
+        }
+    }
+
+    private static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / NUM_HASHES;
+    }
+
+    private static long bucketKey(int projectId, int band, int[] signature) {
+        long key = mix(((long) projectId << 8) | band);
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = mix(key ^ signature[i]);
+        }
+        return key;
+    }
+
+    // MinHash over the message's words and adjacent word pairs; null if it has no words
+    private static int[] signature(String message) {
+        if (message == null) {
+            return null;
+        }
+        int[] minimums = new int[NUM_HASHES];
+        Arrays.fill(minimums, -1);            // largest unsigned value
+        boolean any = false;
+        long previousWord = 0;
+        long word = 0xcbf29ce484222325L;    // FNV-1a offset basis
+        boolean inWord = false;
+
+        for (int i = 0; i <= message.length(); i++) {
+            char c = i < message.length() ? message.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word = (word ^ Character.toLowerCase(c)) * 0x100000001b3L;
+                inWord = true;
+            } else if (inWord) {
+                addShingle(minimums, word);
+                if (previousWord != 0) {
+                    addShingle(minimums, mix(previousWord * 31 + word));
+                }
+                previousWord = word;
+                word = 0xcbf29ce484222325L;
+                inWord = false;
+                any = true;
+            }
+        }
+        return any ? minimums : null;
+    }
+
+    private static void addShingle(int[] minimums, long shingle) {
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int h = (int) (mix(shingle ^ SEEDS[i]) >>> 32);
+            if (Integer.compareUnsigned(h, minimums[i]) < 0) {
+                minimums[i] = h;
+            }
+        }
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,29 +1,289 @@
 package main.models;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import main.util.IdGenerator;
+import main.util.IntSnapshotList;
+import main.util.LogStructuredStore;
+import main.util.LongIndex;
+import main.util.Page;
+
+/**
+ * Enquiries live in a LogStructuredStore keyed by ID: recent writes in memory, the rest in
+ * sorted segment files, so the heap holds only enquiry IDs and a bounded cache of recently
+ * used Enquiry objects however many enquiries accumulate. The store is rebuilt from the
+ * recovery journal on every start.
+ *
+ * Writers are serialized on the class; they wait for the store's capacity before taking the
+ * lock, and segment files are read without it, so a flush or compaction that has fallen
+ * behind never holds up callers that only need the ID lists or the cache. Listings are
+ * immutable versions of the ID lists, resolved into enquiries when they are read.
+ *
+ * Configured with system properties:
+ *   bto.enquiries.dir           segment directory (default ./data/enquiries)
+ *   bto.enquiries.memtableSize  enquiries written before a segment is flushed (default 2048)
+ *   bto.enquiries.cacheSize     Enquiry objects kept in memory (default 1024)
+ */
 public class EnquiryRepository {
-    private static final ArrayList<Enquiry> ENQUIRIES = new ArrayList<>();
-    
+    private static final LogStructuredStore STORE = new LogStructuredStore(
+            Paths.get(System.getProperty("bto.enquiries.dir", "./data/enquiries")),
+            Integer.getInteger("bto.enquiries.memtableSize", 2048));
+    private static final int CACHE_SIZE = Integer.getInteger("bto.enquiries.cacheSize", 1024);
+    // recently used enquiries by ID, least recently used first; the object last changed wins
+    private static final LinkedHashMap<Long, Enquiry> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Enquiry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final IntSnapshotList ENQUIRIES = new IntSnapshotList();
+    // IDs of the enquiries that exist, so a lookup for anything else costs no read
+    private static final BitSet LIVE = new BitSet();
+    // bumped by every store write; a read that raced one is not cached
+    private static long writes;
+    // enquiry IDs grouped by project ID, in submission order, so project listings never scan everything
+    private static final ArrayList<IntSnapshotList> BY_PROJECT = new ArrayList<>();
+    // enquiry IDs grouped by enquirer: packed NRIC -> slot in BY_USER
+    private static final LongIndex USER_SLOTS = new LongIndex();
+    private static final ArrayList<IntSnapshotList> BY_USER = new ArrayList<>();
+    private static final IdGenerator ENQUIRY_IDS = new IdGenerator(1);
+
     public static List<Enquiry> getAllEnquiries() {
-        return ENQUIRIES;
+        return resolve(ENQUIRIES.snapshot());
     }
-    
+
+    // One page of every enquiry, reading only the enquiries on it
+    public static Page<Enquiry> getAllEnquiries(int cursor, int pageSize) {
+        return page(ENQUIRIES.snapshot(), cursor, pageSize);
+    }
+
+    // IDs of every enquiry, in submission order, for walking them without holding them all
+    public static IntSnapshotList.View getAllEnquiryIds() {
+        return ENQUIRIES.snapshot();
+    }
+
+    public static List<Enquiry> getProjectEnquiries(int projectId) {
+        return resolve(projectIds(projectId));
+    }
+
+    public static Page<Enquiry> getProjectEnquiries(int projectId, int cursor, int pageSize) {
+        return page(projectIds(projectId), cursor, pageSize);
+    }
+
+    public static List<Enquiry> getUserEnquiries(long userKey) {
+        IntSnapshotList.View ids;
+        synchronized (EnquiryRepository.class) {
+            int slot = USER_SLOTS.get(userKey);
+            if (slot == LongIndex.NOT_FOUND) {
+                return new ArrayList<>();
+            }
+            ids = BY_USER.get(slot).snapshot();
+        }
+        return resolve(ids);
+    }
+
     public static void addEnquiry(Enquiry enquiry) {
-        ENQUIRIES.add(enquiry);
+        STORE.awaitCapacity();
+        synchronized (EnquiryRepository.class) {
+            add(enquiry);
+        }
     }
-    
+
+    private static void add(Enquiry enquiry) {
+        int id = Math.toIntExact(enquiry.getEnquiryId());
+        store(enquiry);
+        ENQUIRIES.add(id);
+        LIVE.set(id);
+
+        int projectId = enquiry.getProjectId();
+        while (BY_PROJECT.size() <= projectId) {
+            BY_PROJECT.add(null);
+        }
+        if (BY_PROJECT.get(projectId) == null) {
+            BY_PROJECT.set(projectId, new IntSnapshotList());
+        }
+        BY_PROJECT.get(projectId).add(id);
+
+        int slot = USER_SLOTS.get(enquiry.getUserKey());
+        if (slot == LongIndex.NOT_FOUND) {
+            slot = BY_USER.size();
+            BY_USER.add(new IntSnapshotList());
+            USER_SLOTS.put(enquiry.getUserKey(), slot);
+        }
+        BY_USER.get(slot).add(id);
+
+        EnquirySearchIndex.add(enquiry);
+        EnquiryClusterIndex.add(enquiry);
+        ServiceLevels.enquirySubmitted(enquiry);
+        DomainEvents.enquirySubmitted(enquiry);
+
+        ENQUIRY_IDS.advancePast(id); // recovered enquiries keep their journaled ID
+        StateJournal.enquiryChanged(enquiry);
+    }
+
     public static void removeEnquiry(Enquiry enquiry) {
-        ENQUIRIES.remove(enquiry);
+        STORE.awaitCapacity();
+        synchronized (EnquiryRepository.class) {
+            remove(enquiry);
+        }
+    }
+
+    private static void remove(Enquiry enquiry) {
+        EnquirySearchIndex.remove(enquiry);
+        EnquiryClusterIndex.remove(enquiry);
+        int id = Math.toIntExact(enquiry.getEnquiryId());
+        ENQUIRIES.removeValue(id);
+        LIVE.clear(id);
+        int projectId = enquiry.getProjectId();
+        if (projectId >= 0 && projectId < BY_PROJECT.size() && BY_PROJECT.get(projectId) != null) {
+            BY_PROJECT.get(projectId).removeValue(id);
+        }
+        int slot = USER_SLOTS.get(enquiry.getUserKey());
+        if (slot != LongIndex.NOT_FOUND) {
+            BY_USER.get(slot).removeValue(id);
+        }
+        CACHE.remove(enquiry.getEnquiryId());
+        STORE.remove(enquiry.getEnquiryId());
+        writes++;
+        ServiceLevels.enquiryRemoved(enquiry);
+        DomainEvents.enquiryRemoved(enquiry);
+        StateJournal.enquiryRemoved(enquiry);
     }
-    
-    public static Enquiry getEnquiryById(String enquiryId) {
-        for (Enquiry enquiry : ENQUIRIES) {
-            if (enquiry.getEnquiryId().equals(enquiryId)) {
-                return enquiry;
+
+    // A cache miss reads the segments outside the lock. If a write landed meanwhile, the
+    // enquiry read is returned but not cached, so it never hides the newer object.
+    public static Enquiry getEnquiryById(long enquiryId) {
+        if (enquiryId <= 0 || enquiryId > Integer.MAX_VALUE) {
+            return null;
+        }
+        long seen;
+        synchronized (EnquiryRepository.class) {
+            if (!LIVE.get((int) enquiryId)) {
+                return null;
+            }
+            Enquiry cached = CACHE.get(enquiryId);
+            if (cached != null) {
+                return cached;
+            }
+            seen = writes;
+        }
+        byte[] bytes = STORE.get(enquiryId);
+        if (bytes == null) {
+            return null;
+        }
+        Enquiry enquiry = decode(enquiryId, bytes);
+        synchronized (EnquiryRepository.class) {
+            Enquiry cached = CACHE.get(enquiryId);
+            if (cached != null) {
+                return cached;
+            }
+            if (writes == seen) {
+                CACHE.put(enquiryId, enquiry);
+            }
+        }
+        return enquiry;
+    }
+
+    // called by Enquiry after its message or reply changed, to keep the store and indexes current
+    static void enquiryChanged(Enquiry enquiry, boolean messageChanged) {
+        STORE.awaitCapacity();
+        synchronized (EnquiryRepository.class) {
+            if (LIVE.get(Math.toIntExact(enquiry.getEnquiryId()))) {
+                store(enquiry);
+                EnquirySearchIndex.update(enquiry);
+                if (messageChanged) {
+                    EnquiryClusterIndex.update(enquiry);
+                }
+                StateJournal.enquiryChanged(enquiry);
+            }
+        }
+    }
+
+    // hand out the ID for a newly submitted enquiry
+    public static long nextEnquiryId() {
+        return ENQUIRY_IDS.nextId();
+    }
+
+    private static synchronized IntSnapshotList.View projectIds(int projectId) {
+        if (projectId >= 0 && projectId < BY_PROJECT.size() && BY_PROJECT.get(projectId) != null) {
+            return BY_PROJECT.get(projectId).snapshot();
+        }
+        return new IntSnapshotList().snapshot();
+    }
+
+    // Enquiries for the IDs, skipping any removed since the IDs were listed
+    private static List<Enquiry> resolve(IntSnapshotList.View ids) {
+        List<Enquiry> enquiries = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Enquiry enquiry = getEnquiryById(ids.get(i));
+            if (enquiry != null) {
+                enquiries.add(enquiry);
+            }
+        }
+        return enquiries;
+    }
+
+    private static Page<Enquiry> page(IntSnapshotList.View ids, int cursor, int pageSize) {
+        int total = ids.size();
+        int from = Math.max(0, Math.min(cursor, total));
+        int to = Math.min(total, from + Math.max(1, pageSize));
+        List<Enquiry> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Enquiry enquiry = getEnquiryById(ids.get(i));
+            if (enquiry != null) {
+                items.add(enquiry);
+            }
+        }
+        return new Page<>(items, from, total);
+    }
+
+    // The cached object becomes this one, so later lookups see the latest change
+    private static void store(Enquiry enquiry) {
+        STORE.put(enquiry.getEnquiryId(), encode(enquiry));
+        CACHE.put(enquiry.getEnquiryId(), enquiry);
+        writes++;
+    }
+
+    private static byte[] encode(Enquiry enquiry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(enquiry.getUserKey());
+            out.writeInt(enquiry.getProjectId());
+            out.writeUTF(enquiry.getMessage());
+            out.writeBoolean(enquiry.getReply() != null);
+            if (enquiry.getReply() != null) {
+                out.writeUTF(enquiry.getReply());
+            }
+            out.writeLong(enquiry.getSubmittedAt());
+            out.writeLong(enquiry.getRepliedAt());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Enquiry decode(long enquiryId, byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Enquiry enquiry = new Enquiry(enquiryId, in.readLong(), in.readInt(), in.readUTF());
+            if (in.readBoolean()) {
+                enquiry.restoreReply(in.readUTF());
             }
+            enquiry.restoreTimes(in.readLong(), in.readLong());
+            return enquiry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return null;
     }
-}
\ No newline at end of file
+}
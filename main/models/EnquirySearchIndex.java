@@ -0,0 +1,384 @@
+package main.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import main.util.IntList;
+import main.util.LongIndex;
+
+/**
+ * Inverted index over enquiry messages and replies, kept up to date by EnquiryRepository
+ * and the Enquiry setters. Each indexed version of an enquiry is a document; postings
+ * lists hold document numbers in ascending order, so an edit retires the old document
+ * and appends a new one instead of rewriting postings. Retired documents are skipped
+ * at query time and dropped when the index is rebuilt.
+ *
+ * Queries are whitespace-separated keywords and "quoted phrases"; every keyword and phrase
+ * must match. Results are ranked by BM25 and can be filtered by project and reply status.
+ */
+public class EnquirySearchIndex {
+
+    public enum StatusFilter { ANY, ANSWERED, UNANSWERED }
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int SEPARATOR = -1;     // between message and reply, so phrases never span both
+    private static final int UNKNOWN_TERM = -2;  // a query word that was never indexed
+
+    // term dictionary and postings, by term ID
+    private static final HashMap<String, Integer> TERM_IDS = new HashMap<>();
+    private static final ArrayList<IntList> POSTINGS = new ArrayList<>();
+    private static final ArrayList<IntList> FREQUENCIES = new ArrayList<>();
+    private static final IntList LIVE_DOC_FREQUENCY = new IntList();
+
+    // per-document data, by document number
+    private static long[] docEnquiryId = new long[1024];
+    private static int[] docProjectId = new int[1024];
+    private static int[][] docTerms = new int[1024][];
+    private static final BitSet LIVE_DOCS = new BitSet();
+    private static final BitSet ANSWERED_DOCS = new BitSet();
+    private static int docCount = 0;
+    private static int liveDocCount = 0;
+    private static long liveTokenCount = 0;
+
+    // enquiry ID -> its current document number
+    private static final LongIndex CURRENT_DOC = new LongIndex();
+
+    public static synchronized void add(Enquiry enquiry) {
+        remove(enquiry);
+        addDocument(enquiry.getEnquiryId(), enquiry.getProjectId(), tokenize(enquiry.getMessage(), enquiry.getReply()),
+                enquiry.hasReply());
+    }
+
+    private static void addDocument(long enquiryId, int projectId, int[] terms, boolean answered) {
+        int doc = docCount++;
+        if (doc == docEnquiryId.length) {
+            int grown = doc * 2;
+            docEnquiryId = Arrays.copyOf(docEnquiryId, grown);
+            docProjectId = Arrays.copyOf(docProjectId, grown);
+            docTerms = Arrays.copyOf(docTerms, grown);
+        }
+        docEnquiryId[doc] = enquiryId;
+        docProjectId[doc] = projectId;
+        docTerms[doc] = terms;
+        LIVE_DOCS.set(doc);
+        ANSWERED_DOCS.set(doc, answered);
+        CURRENT_DOC.put(enquiryId, doc);
+        liveDocCount++;
+
+        // terms are appended in document order, so each postings list stays sorted
+        for (int i = 0; i < terms.length; i++) {
+            int term = terms[i];
+            if (term == SEPARATOR) {
+                continue;
+            }
+            IntList docs = POSTINGS.get(term);
+            IntList frequencies = FREQUENCIES.get(term);
+            int last = docs.size() - 1;
+            if (last >= 0 && docs.get(last) == doc) {
+                frequencies.set(last, frequencies.get(last) + 1);
+            } else {
+                docs.add(doc);
+                frequencies.add(1);
+                LIVE_DOC_FREQUENCY.set(term, LIVE_DOC_FREQUENCY.get(term) + 1);
+            }
+            liveTokenCount++;
+        }
+    }
+
+    // Re-index after the message or reply changed
+    public static synchronized void update(Enquiry enquiry) {
+        add(enquiry);
+    }
+
+    public static synchronized void remove(Enquiry enquiry) {
+        int doc = CURRENT_DOC.remove(enquiry.getEnquiryId());
+        if (doc == LongIndex.NOT_FOUND) {
+            return;
+        }
+        LIVE_DOCS.clear(doc);
+        liveDocCount--;
+
+        int[] terms = docTerms[doc];
+        docTerms[doc] = null;
+        BitSet seen = new BitSet();
+        for (int term : terms) {
+            if (term == SEPARATOR) {
+                continue;
+            }
+            liveTokenCount--;
+            if (!seen.get(term)) {
+                seen.set(term);
+                LIVE_DOC_FREQUENCY.set(term, LIVE_DOC_FREQUENCY.get(term) - 1);
+            }
+        }
+
+        // once most documents are retired, rebuild so postings stop carrying them
+        if (docCount > 1024 && liveDocCount < docCount / 2) {
+            rebuild();
+        }
+    }
+
+    // Ranked search. projectId 0 searches every project.
+    // Enquiries are read after the index lock is released: EnquiryRepository calls into the
+    // index while holding its own lock, so the index must never wait on the repository.
+    public static List<Enquiry> search(String query, int projectId, StatusFilter status, int limit) {
+        List<Enquiry> results = new ArrayList<>();
+        for (long enquiryId : searchIds(query, projectId, status, limit)) {
+            Enquiry enquiry = EnquiryRepository.getEnquiryById(enquiryId);
+            if (enquiry != null) {
+                results.add(enquiry);
+            }
+        }
+        return results;
+    }
+
+    // IDs of the best matches, best first
+    private static synchronized long[] searchIds(String query, int projectId, StatusFilter status, int limit) {
+        List<int[]> clauses = parseQuery(query);
+        long[] none = new long[0];
+        if (clauses.isEmpty() || limit <= 0) {
+            return none;
+        }
+
+        // every term of every clause must be present; collect the distinct terms
+        IntList required = new IntList();
+        for (int[] clause : clauses) {
+            for (int term : clause) {
+                if (term < 0) {
+                    return none; // a word that was never indexed cannot match
+                }
+                if (!required.contains(term)) {
+                    required.add(term);
+                }
+            }
+        }
+
+        // walk the rarest postings list and probe the others
+        int rarest = required.get(0);
+        for (int i = 1; i < required.size(); i++) {
+            if (POSTINGS.get(required.get(i)).size() < POSTINGS.get(rarest).size()) {
+                rarest = required.get(i);
+            }
+        }
+        int[] cursors = new int[required.size()];
+        double averageLength = liveDocCount == 0 ? 1 : (double) liveTokenCount / liveDocCount;
+
+        PriorityQueue<double[]> top = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a[0], b[0]));
+        IntList candidates = POSTINGS.get(rarest);
+        for (int c = 0; c < candidates.size(); c++) {
+            int doc = candidates.get(c);
+            if (!LIVE_DOCS.get(doc) || !matchesFilters(doc, projectId, status)) {
+                continue;
+            }
+
+            double score = 0;
+            boolean all = true;
+            for (int i = 0; i < required.size(); i++) {
+                int term = required.get(i);
+                IntList docs = POSTINGS.get(term);
+                int position = advance(docs, cursors[i], doc);
+                cursors[i] = position;
+                if (position >= docs.size() || docs.get(position) != doc) {
+                    all = false;
+                    break;
+                }
+                score += bm25(FREQUENCIES.get(term).get(position), LIVE_DOC_FREQUENCY.get(term),
+                        docTerms[doc].length, averageLength);
+            }
+            if (!all || !matchesPhrases(docTerms[doc], clauses)) {
+                continue;
+            }
+
+            top.add(new double[] { score, doc });
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        long[] ids = new long[top.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = docEnquiryId[(int) top.poll()[1]];
+        }
+        return ids;
+    }
+
+    private static boolean matchesFilters(int doc, int projectId, StatusFilter status) {
+        if (projectId != 0 && docProjectId[doc] != projectId) {
+            return false;
+        }
+        if (status == StatusFilter.ANSWERED) {
+            return ANSWERED_DOCS.get(doc);
+        }
+        if (status == StatusFilter.UNANSWERED) {
+            return !ANSWERED_DOCS.get(doc);
+        }
+        return true;
+    }
+
+    // First position at or after 'from' whose document is >= doc (galloping, then binary search)
+    private static int advance(IntList docs, int from, int doc) {
+        int step = 1;
+        int high = from;
+        while (high < docs.size() && docs.get(high) < doc) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, docs.size() - 1);
+        while (from <= high) {
+            int mid = (from + high) >>> 1;
+            if (docs.get(mid) < doc) {
+                from = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return from;
+    }
+
+    private static boolean matchesPhrases(int[] terms, List<int[]> clauses) {
+        for (int[] clause : clauses) {
+            if (clause.length > 1 && !containsSequence(terms, clause)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsSequence(int[] terms, int[] phrase) {
+        outer:
+        for (int start = 0; start + phrase.length <= terms.length; start++) {
+            for (int i = 0; i < phrase.length; i++) {
+                if (terms[start + i] != phrase[i]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static double bm25(int termFrequency, int documentFrequency, int length, double averageLength) {
+        double idf = Math.log(1 + (liveDocCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        double norm = termFrequency + K1 * (1 - B + B * length / averageLength);
+        return idf * termFrequency * (K1 + 1) / norm;
+    }
+
+    // Each clause is one keyword, or the words of one quoted phrase
+    private static List<int[]> parseQuery(String query) {
+        List<int[]> clauses = new ArrayList<>();
+        if (query == null) {
+            return clauses;
+        }
+        boolean inPhrase = false;
+        int start = 0;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean end = i == query.length();
+            char c = end ? ' ' : query.charAt(i);
+            if (c == '"' || end) {
+                String part = query.substring(start, i);
+                if (inPhrase) {
+                    int[] phrase = lookupTerms(part);
+                    if (phrase.length > 0) {
+                        clauses.add(phrase);
+                    }
+                } else {
+                    for (int term : lookupTerms(part)) {
+                        clauses.add(new int[] { term });
+                    }
+                }
+                inPhrase = !inPhrase;
+                start = i + 1;
+            }
+        }
+        return clauses;
+    }
+
+    private static int[] lookupTerms(String text) {
+        IntList terms = new IntList();
+        forEachWord(text, word -> {
+            Integer term = TERM_IDS.get(word);
+            terms.add(term != null ? term : UNKNOWN_TERM);
+        });
+        return terms.toArray();
+    }
+
+    private static int[] tokenize(String message, String reply) {
+        IntList terms = new IntList();
+        forEachWord(message, word -> terms.add(termId(word)));
+        if (reply != null && !reply.isEmpty()) {
+            terms.add(SEPARATOR);
+            forEachWord(reply, word -> terms.add(termId(word)));
+        }
+        return terms.toArray();
+    }
+
+    private static int termId(String word) {
+        Integer term = TERM_IDS.get(word);
+        if (term == null) {
+            term = POSTINGS.size();
+            TERM_IDS.put(word, term);
+            POSTINGS.add(new IntList());
+            FREQUENCIES.add(new IntList());
+            LIVE_DOC_FREQUENCY.add(0);
+        }
+        return term;
+    }
+
+    // Words are runs of letters and digits, lower-cased
+    private static void forEachWord(String text, Consumer<String> action) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                action.accept(word.toString());
+                word.setLength(0);
+            }
+        }
+    }
+
+    // Re-number the live documents from scratch, dropping retired ones from every postings list.
+    // Works from the stored terms, so it never reads enquiries back from the repository.
+    private static void rebuild() {
+        int oldCount = docCount;
+        long[] oldIds = docEnquiryId;
+        int[] oldProjects = docProjectId;
+        int[][] oldTerms = docTerms;
+        BitSet oldLive = (BitSet) LIVE_DOCS.clone();
+        BitSet oldAnswered = (BitSet) ANSWERED_DOCS.clone();
+
+        for (IntList docs : POSTINGS) {
+            docs.clear();
+        }
+        for (IntList frequencies : FREQUENCIES) {
+            frequencies.clear();
+        }
+        for (int term = 0; term < LIVE_DOC_FREQUENCY.size(); term++) {
+            LIVE_DOC_FREQUENCY.set(term, 0);
+        }
+        docEnquiryId = new long[Math.max(1024, liveDocCount * 2)];
+        docProjectId = new int[docEnquiryId.length];
+        docTerms = new int[docEnquiryId.length][];
+        LIVE_DOCS.clear();
+        ANSWERED_DOCS.clear();
+        CURRENT_DOC.clear();
+        docCount = 0;
+        liveDocCount = 0;
+        liveTokenCount = 0;
+
+        for (int doc = oldLive.nextSetBit(0); doc >= 0 && doc < oldCount; doc = oldLive.nextSetBit(doc + 1)) {
+            addDocument(oldIds[doc], oldProjects[doc], oldTerms[doc], oldAnswered.get(doc));
+        }
+    }
+}
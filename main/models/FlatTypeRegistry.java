@@ -0,0 +1,103 @@
+package main.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Interns flat-type names to small ordinals, so projects can keep unit counts and prices
+ * in arrays indexed by ordinal and applications can store the type in one byte.
+ * Names match case-insensitively ("2-Room" and "2-room" are the same type). The standard
+ * HDB types are registered up front in size order; unknown types from data files are
+ * appended as they are first seen. Ordinals never change once handed out.
+ */
+public class FlatTypeRegistry {
+    public static final int UNKNOWN = -1;
+    // ordinals are stored in a byte column by ApplicationStore
+    private static final int MAX_TYPES = Byte.MAX_VALUE + 1;
+
+    public static final int TWO_ROOM = 0;
+    public static final int THREE_ROOM = 1;
+    public static final int FOUR_ROOM = 2;
+    public static final int FIVE_ROOM = 3;
+    public static final int EXECUTIVE = 4;
+
+    private static final int SINGLE_MIN_AGE = 35;
+    private static final int MARRIED_MIN_AGE = 21;
+
+    private static final HashMap<String, Integer> ORDINALS = new HashMap<>();
+    private static volatile String[] names = new String[0];
+
+    static {
+        for (String name : new String[] { "2-room", "3-room", "4-room", "5-room", "executive" }) {
+            intern(name);
+        }
+    }
+
+    // Ordinal of the type, registering it if it is new
+    public static synchronized int intern(String flatType) {
+        String key = normalize(flatType);
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Flat type must not be blank.");
+        }
+        Integer ordinal = ORDINALS.get(key);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (names.length == MAX_TYPES) {
+            throw new IllegalStateException("Too many flat types: " + flatType);
+        }
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = key;
+        ORDINALS.put(key, names.length);
+        names = grown;
+        return names.length - 1;
+    }
+
+    // Ordinal of a registered type, or UNKNOWN
+    public static synchronized int ordinalOf(String flatType) {
+        Integer ordinal = ORDINALS.get(normalize(flatType));
+        return ordinal == null ? UNKNOWN : ordinal;
+    }
+
+    public static String name(int ordinal) {
+        return names[ordinal];
+    }
+
+    public static int count() {
+        return names.length;
+    }
+
+    public static List<String> getAllNames() {
+        List<String> all = new ArrayList<>();
+        for (String name : names) {
+            all.add(name);
+        }
+        return all;
+    }
+
+    // Singles aged 35+ may only take 2-room flats; married applicants aged 21+ may take any type
+    public static boolean isEligible(int ordinal, String maritalStatus, int age) {
+        if ("Married".equalsIgnoreCase(maritalStatus)) {
+            return age >= MARRIED_MIN_AGE;
+        }
+        if ("Single".equalsIgnoreCase(maritalStatus)) {
+            return ordinal == TWO_ROOM && age >= SINGLE_MIN_AGE;
+        }
+        return false;
+    }
+
+    // Who may apply for the type, for error messages
+    public static String eligibilityRule(int ordinal) {
+        if (ordinal == TWO_ROOM) {
+            return "Only singles aged " + SINGLE_MIN_AGE + "+ or married applicants aged " + MARRIED_MIN_AGE
+                    + "+ can apply for " + name(ordinal) + " flats.";
+        }
+        return "Only married applicants aged " + MARRIED_MIN_AGE + "+ can apply for " + name(ordinal) + " flats.";
+    }
+
+    private static String normalize(String flatType) {
+        return flatType == null ? "" : flatType.trim().toLowerCase();
+    }
+}
@@ -1,19 +1,21 @@
 package main.models;
 
-import java.util.ArrayList;
+import java.util.List;
+
+import main.util.SnapshotList;
 
 public class HDBManager extends User {
     // project list created by each manager
-    private ArrayList<BTOProject> projects = new ArrayList<>();
+    private final SnapshotList<BTOProject> projects = new SnapshotList<>();
 
     // constructor
     public HDBManager(String nric, String name, int age, String maritalStatus, String password) {
         super(nric, name, age, maritalStatus, password);
     }
 
-    // get created project by this manager
-    public ArrayList<BTOProject> getProjects(){
-        return projects;
+    // get created project by this manager, as they are now
+    public List<BTOProject> getProjects(){
+        return projects.snapshot();
     }
 
     // add another project to the list
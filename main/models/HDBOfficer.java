@@ -1,29 +1,38 @@
 package main.models;
 
 public class HDBOfficer extends Applicant {
-    private String handlingProjectId; // Can only handle 1 project at a time
+    private static final int NO_PROJECT = 0;
+    private int handlingProjectId; // Can only handle 1 project at a time
 
     public HDBOfficer(String nric, String name, int age, String maritalStatus, String password) {
         super(nric, name, age, maritalStatus, password);
-        this.handlingProjectId = null;
+        this.handlingProjectId = NO_PROJECT;
     }
 
-    public void assignToProject(String projectId) {
+    public void assignToProject(int projectId) {
         this.handlingProjectId = projectId;
+        OfficerRegistrationRepository.officerChanged(this);
     }
 
     public void removeFromProject() {
-        this.handlingProjectId = null;
+        this.handlingProjectId = NO_PROJECT;
+        OfficerRegistrationRepository.officerChanged(this);
     }
 
     public boolean isHandlingProject() {
-        return handlingProjectId != null;
+        return handlingProjectId != NO_PROJECT;
     }
 
-    public String getHandlingProjectId() {
+    public int getHandlingProjectId() {
         return handlingProjectId;
     }
 
+    // Name of the handled project, resolved through its ID
+    public String getHandlingProjectName() {
+        BTOProject project = ProjectRepository.getProjectById(handlingProjectId);
+        return project != null ? project.getProjectName() : null;
+    }
+
     @Override
     public String getRole() {
         return "HDBOfficer";
@@ -31,6 +40,6 @@ public class HDBOfficer extends Applicant {
 
     @Override
     public String toString() {
-        return super.toString() + (isHandlingProject() ? " | Handling Project: " + handlingProjectId : " | Not assigned to a project");
+        return super.toString() + (isHandlingProject() ? " | Handling Project: " + getHandlingProjectName() : " | Not assigned to a project");
     }
 }
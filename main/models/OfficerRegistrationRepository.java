@@ -0,0 +1,150 @@
+package main.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import main.util.LongIndex;
+
+/**
+ * Officer registrations to handle a project. Each project keeps its own queue of pending
+ * officers in submission order, so a manager's screen only touches that project's queue.
+ * An officer has at most one pending registration, and a bitmap over user indexes tracks
+ * which officers are not handling any project. Every change goes through this class's
+ * lock, so approving an officer updates the queue, the officer and the project together.
+ */
+public class OfficerRegistrationRepository {
+    // pending officers by project ID, in submission order
+    private static final ArrayList<LinkedHashSet<HDBOfficer>> BY_PROJECT = new ArrayList<>();
+    // officer's packed NRIC -> the project ID of their pending registration
+    private static final LongIndex PENDING_PROJECT = new LongIndex();
+    // user indexes of officers not handling a project
+    private static final BitSet UNASSIGNED = new BitSet();
+
+    public enum Result { SUBMITTED, ALREADY_HANDLING, ALREADY_PENDING, APPLIED_TO_PROJECT, PROJECT_FULL }
+
+    public static synchronized Result submit(HDBOfficer officer, BTOProject project) {
+        if (officer.isHandlingProject()) {
+            return Result.ALREADY_HANDLING;
+        }
+        if (PENDING_PROJECT.containsKey(officer.getNricKey())) {
+            return Result.ALREADY_PENDING;
+        }
+        // an officer cannot handle a project they have applied to themselves
+        int row = ApplicationStore.getLatestRow(officer.getIndex());
+        if (row >= 0 && ApplicationStore.getProjectId(row) == project.getProjectId()) {
+            return Result.APPLIED_TO_PROJECT;
+        }
+        if (project.getOfficerCount() >= project.getMaxOfficers()) {
+            return Result.PROJECT_FULL;
+        }
+        queueOf(project.getProjectId(), true).add(officer);
+        PENDING_PROJECT.put(officer.getNricKey(), project.getProjectId());
+        StateJournal.registrationChanged(officer, project.getProjectId());
+        return Result.SUBMITTED;
+    }
+
+    public static synchronized List<HDBOfficer> getPending(BTOProject project) {
+        LinkedHashSet<HDBOfficer> queue = queueOf(project.getProjectId(), false);
+        return queue == null ? new ArrayList<>() : new ArrayList<>(queue);
+    }
+
+    // Project ID of the officer's pending registration, or 0 if there is none
+    public static synchronized int getPendingProjectId(HDBOfficer officer) {
+        int projectId = PENDING_PROJECT.get(officer.getNricKey());
+        return projectId == LongIndex.NOT_FOUND ? 0 : projectId;
+    }
+
+    // Assigns the officer if they are still pending for this project and a slot is free
+    public static synchronized boolean approve(BTOProject project, HDBOfficer officer) {
+        LinkedHashSet<HDBOfficer> queue = queueOf(project.getProjectId(), false);
+        if (queue == null || !queue.contains(officer) || officer.isHandlingProject()) {
+            return false;
+        }
+        if (!project.tryAddOfficer(officer)) {
+            return false;
+        }
+        queue.remove(officer);
+        PENDING_PROJECT.remove(officer.getNricKey());
+        officer.assignToProject(project.getProjectId());
+        StateJournal.registrationChanged(officer, 0);
+        return true;
+    }
+
+    public static synchronized boolean reject(BTOProject project, HDBOfficer officer) {
+        LinkedHashSet<HDBOfficer> queue = queueOf(project.getProjectId(), false);
+        if (queue == null || !queue.remove(officer)) {
+            return false;
+        }
+        PENDING_PROJECT.remove(officer.getNricKey());
+        StateJournal.registrationChanged(officer, 0);
+        return true;
+    }
+
+    // Recovery: make projectId the officer's pending registration, or clear it when 0
+    static synchronized void restorePending(HDBOfficer officer, int projectId) {
+        int previous = PENDING_PROJECT.remove(officer.getNricKey());
+        if (previous != LongIndex.NOT_FOUND) {
+            queueOf(previous, false).remove(officer);
+        }
+        if (projectId != 0) {
+            queueOf(projectId, true).add(officer);
+            PENDING_PROJECT.put(officer.getNricKey(), projectId);
+        }
+    }
+
+    public static synchronized List<HDBOfficer> getUnassignedOfficers() {
+        List<HDBOfficer> officers = new ArrayList<>(UNASSIGNED.cardinality());
+        for (int i = UNASSIGNED.nextSetBit(0); i >= 0; i = UNASSIGNED.nextSetBit(i + 1)) {
+            officers.add((HDBOfficer) UserRepository.getUserByIndex(i));
+        }
+        return officers;
+    }
+
+    // Called when an officer is added to the user repository or their assignment changes
+    static synchronized void officerChanged(HDBOfficer officer) {
+        if (officer.getIndex() >= 0) {
+            UNASSIGNED.set(officer.getIndex(), !officer.isHandlingProject());
+        }
+    }
+
+    static synchronized void officerRemoved(HDBOfficer officer) {
+        if (officer.getIndex() >= 0) {
+            UNASSIGNED.clear(officer.getIndex());
+        }
+        int projectId = PENDING_PROJECT.remove(officer.getNricKey());
+        if (projectId != LongIndex.NOT_FOUND) {
+            queueOf(projectId, false).remove(officer);
+        }
+    }
+
+    // Drops a deleted project's queue; its officers can register elsewhere
+    static synchronized void projectRemoved(BTOProject project) {
+        LinkedHashSet<HDBOfficer> queue = queueOf(project.getProjectId(), false);
+        if (queue == null) {
+            return;
+        }
+        for (HDBOfficer officer : queue) {
+            PENDING_PROJECT.remove(officer.getNricKey());
+        }
+        BY_PROJECT.set(project.getProjectId(), null);
+    }
+
+    private static LinkedHashSet<HDBOfficer> queueOf(int projectId, boolean create) {
+        if (projectId >= BY_PROJECT.size()) {
+            if (!create) {
+                return null;
+            }
+            while (BY_PROJECT.size() <= projectId) {
+                BY_PROJECT.add(null);
+            }
+        }
+        LinkedHashSet<HDBOfficer> queue = BY_PROJECT.get(projectId);
+        if (queue == null && create) {
+            queue = new LinkedHashSet<>();
+            BY_PROJECT.set(projectId, queue);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,71 @@
+package main.models;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import main.util.EventRing;
+import main.util.SlidingTopK;
+
+/**
+ * Which projects are drawing applications and enquiries right now. Every submission is
+ * counted from DomainEvents, off the submitting thread, in trackers of fixed size, so asking for the busiest projects over
+ * a recent window never scans the stored applications or enquiries. Counts are estimates
+ * that may run slightly high, start from zero on each run and cover only live submissions.
+ *
+ * Configured with system properties:
+ *   bto.hotspots.sliceMinutes  length of one counting slice (default 5)
+ *   bto.hotspots.slices        slices kept; the longest window is their total (default 288, a day)
+ *   bto.hotspots.width         counters per sketch row (default 128)
+ *   bto.hotspots.tracked       projects each slice tracks as candidates (default 64)
+ */
+public class ProjectActivity {
+    private static final long SLICE_MILLIS = TimeUnit.MINUTES.toMillis(Integer.getInteger("bto.hotspots.sliceMinutes", 5));
+    private static final int SLICES = Integer.getInteger("bto.hotspots.slices", 288);
+    private static final int WIDTH = Integer.getInteger("bto.hotspots.width", 128);
+    private static final int TRACKED = Integer.getInteger("bto.hotspots.tracked", 64);
+    private static final int DEPTH = 4;
+
+    private static final SlidingTopK APPLICATIONS = new SlidingTopK(SLICE_MILLIS, SLICES, WIDTH, DEPTH, TRACKED);
+    private static final SlidingTopK ENQUIRIES = new SlidingTopK(SLICE_MILLIS, SLICES, WIDTH, DEPTH, TRACKED);
+
+    private static EventRing.Subscription<DomainEvent> subscription;
+
+    // Starts counting submissions; called during startup, before DomainEvents starts
+    public static synchronized void subscribe() {
+        if (subscription == null) {
+            subscription = DomainEvents.subscribe("project-activity", ProjectActivity::onEvent);
+        }
+    }
+
+    private static void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        if (event.getType() == DomainEvent.Type.APPLICATION_SUBMITTED) {
+            APPLICATIONS.record(event.getProjectId(), event.getTimestamp());
+        } else if (event.getType() == DomainEvent.Type.ENQUIRY_SUBMITTED) {
+            ENQUIRIES.record(event.getProjectId(), event.getTimestamp());
+        }
+    }
+
+    // The n projects with the most applications over the last windowMillis, busiest first
+    public static List<SlidingTopK.Count> topByApplications(int n, long windowMillis) {
+        awaitCaughtUp();
+        return APPLICATIONS.top(n, windowMillis, System.currentTimeMillis());
+    }
+
+    public static List<SlidingTopK.Count> topByEnquiries(int n, long windowMillis) {
+        awaitCaughtUp();
+        return ENQUIRIES.top(n, windowMillis, System.currentTimeMillis());
+    }
+
+    // Submissions made before the query are counted in it
+    private static void awaitCaughtUp() {
+        EventRing.Subscription<DomainEvent> current = subscription;
+        if (current != null) {
+            current.awaitCaughtUp();
+        }
+    }
+
+    // Longest window the trackers can answer for
+    public static long maxWindowMillis() {
+        return APPLICATIONS.windowMillis();
+    }
+}
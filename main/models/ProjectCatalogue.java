@@ -0,0 +1,404 @@
+package main.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.util.IntList;
+import main.util.PrefixIndex;
+
+/**
+ * Bitmap indexes over project attributes, keyed by project ID, for filtered and faceted
+ * catalogue queries, plus a prefix index over names and neighborhoods for autocomplete.
+ * ProjectRepository adds and removes projects here, and each BTOProject setter updates
+ * only the entries its field is indexed under, so the indexes always match the live projects.
+ */
+public class ProjectCatalogue {
+    // units-remaining buckets: [0], [1, 9], [10, 49], [50, 99], [100, ...)
+    private static final int[] BUCKET_LOWER_BOUNDS = { 0, 1, 10, 50, 100 };
+    private static final String[] BUCKET_LABELS = { "0", "1-9", "10-49", "50-99", "100+" };
+
+    private static final BitSet ALL = new BitSet();
+    private static final BitSet VISIBLE = new BitSet();
+    private static final HashMap<String, BitSet> BY_NEIGHBORHOOD = new HashMap<>();
+    private static final HashMap<String, BitSet> BY_FLAT_TYPE = new HashMap<>();
+    private static final HashMap<String, BitSet[]> BY_UNITS_BUCKET = new HashMap<>();
+    private static final HashMap<String, int[]> UNITS = new HashMap<>();
+    // first spelling seen for each lower-cased key, for display in facets
+    private static final HashMap<String, String> DISPLAY_NAMES = new HashMap<>();
+    // project names and neighborhoods, for autocomplete
+    private static final PrefixIndex NAMES = new PrefixIndex();
+    // projects whose application window overlaps each span of WINDOW_BUCKET_DAYS days;
+    // windows covering more than MAX_WINDOW_BUCKETS spans are kept in LONG_WINDOWS instead
+    private static final int WINDOW_BUCKET_DAYS = 32;
+    private static final int MAX_WINDOW_BUCKETS = 64;
+    private static final HashMap<Integer, BitSet> OPEN_BY_BUCKET = new HashMap<>();
+    private static final BitSet LONG_WINDOWS = new BitSet();
+
+    // what each project is currently indexed under, so an update can clear exactly those bits
+    private static String[] indexedName = new String[64];
+    private static String[] indexedNeighborhood = new String[64];
+    private static String[][] indexedFlatTypes = new String[64][];
+    private static int[] startDays = new int[64];
+    private static int[] endDays = new int[64];
+
+    // Result of a catalogue query: the matching projects plus facet counts over them
+    public static class Result {
+        private final List<BTOProject> projects;
+        private final Map<String, Integer> neighborhoodCounts;
+        private final Map<String, Integer> flatTypeCounts;
+        private final Map<String, Integer> unitsBucketCounts;
+
+        Result(List<BTOProject> projects, Map<String, Integer> neighborhoodCounts,
+                Map<String, Integer> flatTypeCounts, Map<String, Integer> unitsBucketCounts) {
+            this.projects = projects;
+            this.neighborhoodCounts = neighborhoodCounts;
+            this.flatTypeCounts = flatTypeCounts;
+            this.unitsBucketCounts = unitsBucketCounts;
+        }
+
+        public List<BTOProject> getProjects() {
+            return projects;
+        }
+
+        public Map<String, Integer> getNeighborhoodCounts() {
+            return neighborhoodCounts;
+        }
+
+        public Map<String, Integer> getFlatTypeCounts() {
+            return flatTypeCounts;
+        }
+
+        // keyed by "<flat type> <bucket>", e.g. "2-room 10-49"
+        public Map<String, Integer> getUnitsBucketCounts() {
+            return unitsBucketCounts;
+        }
+    }
+
+    public static synchronized Result query(CataloguePredicate predicate) {
+        BitSet matches = predicate.evaluate();
+        matches.and(ALL);
+
+        List<BTOProject> projects = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            BTOProject project = ProjectRepository.getProjectById(id);
+            if (project != null) {
+                projects.add(project);
+            }
+        }
+
+        Map<String, Integer> unitsBucketCounts = new LinkedHashMap<>();
+        for (Map.Entry<String, BitSet[]> entry : BY_UNITS_BUCKET.entrySet()) {
+            BitSet[] buckets = entry.getValue();
+            for (int b = 0; b < buckets.length; b++) {
+                int count = intersectionCount(matches, buckets[b]);
+                if (count > 0) {
+                    unitsBucketCounts.put(DISPLAY_NAMES.get(entry.getKey()) + " " + BUCKET_LABELS[b], count);
+                }
+            }
+        }
+        return new Result(projects, facetCounts(matches, BY_NEIGHBORHOOD), facetCounts(matches, BY_FLAT_TYPE),
+                unitsBucketCounts);
+    }
+
+    // Top completions of a prefix over project names and neighborhoods, restricted to the filter
+    public static synchronized List<BTOProject> complete(String prefix, int limit, CataloguePredicate filter) {
+        BitSet allowed = filter.evaluate();
+        allowed.and(ALL);
+        IntList ids = NAMES.complete(prefix, limit, allowed);
+        List<BTOProject> projects = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            projects.add(ProjectRepository.getProjectById(ids.get(i)));
+        }
+        return projects;
+    }
+
+    static synchronized void add(BTOProject project) {
+        int id = project.getProjectId();
+        ensureCapacity(id);
+        ALL.set(id);
+        VISIBLE.set(id, project.isVisible());
+
+        String neighborhood = key(project.getNeighborhood());
+        DISPLAY_NAMES.putIfAbsent(neighborhood, project.getNeighborhood());
+        BY_NEIGHBORHOOD.computeIfAbsent(neighborhood, k -> new BitSet()).set(id);
+        indexedNeighborhood[id] = neighborhood;
+        indexedName[id] = project.getProjectName();
+        NAMES.add(indexedName[id], id);
+        NAMES.add(neighborhood, id);
+
+        List<String> flatTypes = project.getFlatTypes();
+        String[] typeKeys = new String[flatTypes.size()];
+        for (int i = 0; i < typeKeys.length; i++) {
+            typeKeys[i] = key(flatTypes.get(i));
+            indexFlatType(id, typeKeys[i], project.getUnits(typeKeys[i]));
+        }
+        indexedFlatTypes[id] = typeKeys;
+
+        indexWindow(id, project.getStartDay(), project.getEndDay());
+    }
+
+    static synchronized void remove(BTOProject project) {
+        int id = project.getProjectId();
+        if (!ALL.get(id)) {
+            return;
+        }
+        ALL.clear(id);
+        VISIBLE.clear(id);
+        BY_NEIGHBORHOOD.get(indexedNeighborhood[id]).clear(id);
+        NAMES.remove(indexedName[id], id);
+        NAMES.remove(indexedNeighborhood[id], id);
+        for (String type : indexedFlatTypes[id]) {
+            BY_FLAT_TYPE.get(type).clear(id);
+            BY_UNITS_BUCKET.get(type)[bucketOf(UNITS.get(type)[id])].clear(id);
+        }
+        unindexWindow(id);
+        indexedName[id] = null;
+        indexedNeighborhood[id] = null;
+        indexedFlatTypes[id] = null;
+    }
+
+    // The BTOProject setters call these with the project already changed; each touches only the
+    // entries of the field that changed, and ignores projects that are not in the repository
+
+    static synchronized void renamed(BTOProject project) {
+        if (!indexed(project)) {
+            return;
+        }
+        int id = project.getProjectId();
+        NAMES.replace(indexedName[id], project.getProjectName(), id);
+        indexedName[id] = project.getProjectName();
+    }
+
+    static synchronized void neighborhoodChanged(BTOProject project) {
+        if (!indexed(project)) {
+            return;
+        }
+        int id = project.getProjectId();
+        String neighborhood = key(project.getNeighborhood());
+        if (neighborhood.equals(indexedNeighborhood[id])) {
+            return;
+        }
+        BY_NEIGHBORHOOD.get(indexedNeighborhood[id]).clear(id);
+        DISPLAY_NAMES.putIfAbsent(neighborhood, project.getNeighborhood());
+        BY_NEIGHBORHOOD.computeIfAbsent(neighborhood, k -> new BitSet()).set(id);
+        NAMES.replace(indexedNeighborhood[id], neighborhood, id);
+        indexedNeighborhood[id] = neighborhood;
+    }
+
+    static synchronized void visibilityChanged(BTOProject project) {
+        if (indexed(project)) {
+            VISIBLE.set(project.getProjectId(), project.isVisible());
+        }
+    }
+
+    static synchronized void windowChanged(BTOProject project) {
+        if (indexed(project)) {
+            unindexWindow(project.getProjectId());
+            indexWindow(project.getProjectId(), project.getStartDay(), project.getEndDay());
+        }
+    }
+
+    // A flat type was offered, or its units changed; only moves the project between unit buckets
+    static synchronized void unitsChanged(BTOProject project, String flatType) {
+        if (!indexed(project)) {
+            return;
+        }
+        int id = project.getProjectId();
+        String type = key(flatType);
+        int units = project.getUnits(type);
+        String[] typeKeys = indexedFlatTypes[id];
+        if (!Arrays.asList(typeKeys).contains(type)) {
+            typeKeys = Arrays.copyOf(typeKeys, typeKeys.length + 1);
+            typeKeys[typeKeys.length - 1] = type;
+            indexedFlatTypes[id] = typeKeys;
+            indexFlatType(id, type, units);
+            return;
+        }
+        int[] unitColumn = UNITS.get(type);
+        int from = bucketOf(unitColumn[id]);
+        int to = bucketOf(units);
+        unitColumn[id] = units;
+        if (from != to) {
+            BitSet[] buckets = BY_UNITS_BUCKET.get(type);
+            buckets[from].clear(id);
+            buckets[to].set(id);
+        }
+    }
+
+    static synchronized BitSet allProjects() {
+        return (BitSet) ALL.clone();
+    }
+
+    static synchronized BitSet visibleProjects() {
+        return (BitSet) VISIBLE.clone();
+    }
+
+    static synchronized BitSet projectsInNeighborhood(String neighborhood) {
+        BitSet projects = BY_NEIGHBORHOOD.get(key(neighborhood));
+        return projects != null ? (BitSet) projects.clone() : new BitSet();
+    }
+
+    static synchronized BitSet projectsOffering(String flatType) {
+        BitSet projects = BY_FLAT_TYPE.get(key(flatType));
+        return projects != null ? (BitSet) projects.clone() : new BitSet();
+    }
+
+    static synchronized BitSet projectsWithUnitsAtLeast(String flatType, int units) {
+        String type = key(flatType);
+        BitSet result = new BitSet();
+        BitSet[] buckets = BY_UNITS_BUCKET.get(type);
+        if (buckets == null) {
+            return result;
+        }
+        // whole buckets above the threshold qualify; only the bucket containing it needs exact counts
+        int partial = bucketOf(units);
+        for (int b = partial + 1; b < buckets.length; b++) {
+            result.or(buckets[b]);
+        }
+        int[] unitColumn = UNITS.get(type);
+        BitSet edge = buckets[partial];
+        for (int id = edge.nextSetBit(0); id >= 0; id = edge.nextSetBit(id + 1)) {
+            if (unitColumn[id] >= units) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    static synchronized BitSet projectsOpenOn(int day) {
+        BitSet result = new BitSet();
+        BitSet bucket = OPEN_BY_BUCKET.get(Math.floorDiv(day, WINDOW_BUCKET_DAYS));
+        if (bucket != null) {
+            result.or(bucket);
+        }
+        result.or(LONG_WINDOWS);
+        // every candidate overlaps the day's bucket; only their exact days decide
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            if (day < startDays[id] || endDays[id] < day) {
+                result.clear(id);
+            }
+        }
+        return result;
+    }
+
+    // After fields were assigned without their setters; each step is a no-op for fields that did not change
+    static synchronized void refresh(BTOProject project) {
+        renamed(project);
+        neighborhoodChanged(project);
+        windowChanged(project);
+        for (String flatType : project.getFlatTypes()) {
+            unitsChanged(project, flatType);
+        }
+    }
+
+    private static boolean indexed(BTOProject project) {
+        return ALL.get(project.getProjectId()) && ProjectRepository.getProjectById(project.getProjectId()) == project;
+    }
+
+    private static void indexFlatType(int id, String type, int units) {
+        DISPLAY_NAMES.putIfAbsent(type, type);
+        BY_FLAT_TYPE.computeIfAbsent(type, k -> new BitSet()).set(id);
+
+        int[] unitColumn = UNITS.computeIfAbsent(type, k -> new int[indexedNeighborhood.length]);
+        if (unitColumn.length <= id) {
+            unitColumn = Arrays.copyOf(unitColumn, indexedNeighborhood.length);
+            UNITS.put(type, unitColumn);
+        }
+        unitColumn[id] = units;
+        BitSet[] buckets = BY_UNITS_BUCKET.computeIfAbsent(type, k -> newBuckets());
+        buckets[bucketOf(units)].set(id);
+    }
+
+    private static void indexWindow(int id, int startDay, int endDay) {
+        startDays[id] = startDay;
+        endDays[id] = endDay;
+        if (endDay < startDay) {
+            return; // never open
+        }
+        int first = Math.floorDiv(startDay, WINDOW_BUCKET_DAYS);
+        int last = Math.floorDiv(endDay, WINDOW_BUCKET_DAYS);
+        if (last - first >= MAX_WINDOW_BUCKETS) {
+            LONG_WINDOWS.set(id);
+            return;
+        }
+        for (int b = first; b <= last; b++) {
+            OPEN_BY_BUCKET.computeIfAbsent(b, k -> new BitSet()).set(id);
+        }
+    }
+
+    // Clears the buckets filed under the project's indexed start and end days
+    private static void unindexWindow(int id) {
+        if (LONG_WINDOWS.get(id)) {
+            LONG_WINDOWS.clear(id);
+            return;
+        }
+        if (endDays[id] < startDays[id]) {
+            return;
+        }
+        int last = Math.floorDiv(endDays[id], WINDOW_BUCKET_DAYS);
+        for (int b = Math.floorDiv(startDays[id], WINDOW_BUCKET_DAYS); b <= last; b++) {
+            BitSet bucket = OPEN_BY_BUCKET.get(b);
+            bucket.clear(id);
+            if (bucket.isEmpty()) {
+                OPEN_BY_BUCKET.remove(b);
+            }
+        }
+    }
+
+    private static Map<String, Integer> facetCounts(BitSet matches, HashMap<String, BitSet> facet) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, BitSet> entry : facet.entrySet()) {
+            int count = intersectionCount(matches, entry.getValue());
+            if (count > 0) {
+                counts.put(DISPLAY_NAMES.get(entry.getKey()), count);
+            }
+        }
+        return counts;
+    }
+
+    private static int intersectionCount(BitSet a, BitSet b) {
+        BitSet both = (BitSet) a.clone();
+        both.and(b);
+        return both.cardinality();
+    }
+
+    private static int bucketOf(int units) {
+        int bucket = 0;
+        while (bucket + 1 < BUCKET_LOWER_BOUNDS.length && units >= BUCKET_LOWER_BOUNDS[bucket + 1]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static BitSet[] newBuckets() {
+        BitSet[] buckets = new BitSet[BUCKET_LOWER_BOUNDS.length];
+        for (int b = 0; b < buckets.length; b++) {
+            buckets[b] = new BitSet();
+        }
+        return buckets;
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    private static void ensureCapacity(int id) {
+        if (id < indexedNeighborhood.length) {
+            return;
+        }
+        int grown = Math.max(id + 1, indexedNeighborhood.length * 2);
+        indexedName = Arrays.copyOf(indexedName, grown);
+        indexedNeighborhood = Arrays.copyOf(indexedNeighborhood, grown);
+        indexedFlatTypes = Arrays.copyOf(indexedFlatTypes, grown);
+        startDays = Arrays.copyOf(startDays, grown);
+        endDays = Arrays.copyOf(endDays, grown);
+        for (Map.Entry<String, int[]> entry : UNITS.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), grown));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package main.models;
+
+/**
+ * Thrown by a conditional project edit when the project has changed since the caller read
+ * it. Nothing has been written; read the project again and redo the edit, or use
+ * Transaction.retryOnConflict.
+ */
+public class ProjectConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int projectId;
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    public ProjectConflictException(BTOProject project, long expectedVersion, long actualVersion) {
+        super("Project " + project.getProjectName() + " is at version " + actualVersion
+                + ", not " + expectedVersion + ".");
+        this.projectId = project.getProjectId();
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
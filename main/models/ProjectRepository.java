@@ -1,24 +1,62 @@
 package main.models;
 
 import java.util.ArrayList;
+import java.util.List;
+
+import main.util.IdGenerator;
+import main.util.SnapshotList;
+import main.util.WriteBehindStore;
 
 public class ProjectRepository {
-    // one common list to store all projects created by all managers
-    private static final ArrayList<BTOProject> PROJECTS = new ArrayList<>();
+    // one common list to store all projects created by all managers; readers get immutable versions
+    private static final SnapshotList<BTOProject> PROJECTS = new SnapshotList<>();
+    // projects indexed by their numeric ID (slot 0 is unused), null once deleted
+    private static final ArrayList<BTOProject> BY_ID = new ArrayList<>();
+    private static final IdGenerator PROJECT_IDS = new IdGenerator(1);
 
-    // method for managers to view the list of all projects
-    public static ArrayList<BTOProject> getAllProjects(){
-        return PROJECTS;
+    // method for managers to view the list of all projects, as it is now; later changes do not show through
+    public static List<BTOProject> getAllProjects(){
+        return PROJECTS.snapshot();
     }
 
     // add new projects created by managers to the common list
     public static void addProject(BTOProject project){
         PROJECTS.add(project);
+        int id = project.getProjectId();
+        while (BY_ID.size() <= id) {
+            BY_ID.add(null);
+        }
+        BY_ID.set(id, project);
+        PROJECT_IDS.advancePast(id); // recovered projects keep their journaled ID
+        ProjectCatalogue.add(project);
+        StateJournal.projectChanged(project);
+        WriteBehindStore.markDirty(project);
     }
 
     // remove a project
     public static void removeProject(BTOProject project){
+        ProjectCatalogue.remove(project);
+        OfficerRegistrationRepository.projectRemoved(project);
+        StateJournal.projectRemoved(project);
+        WriteBehindStore.markDirty(project);
         PROJECTS.remove(project);
+        int id = project.getProjectId();
+        if (id < BY_ID.size()) {
+            BY_ID.set(id, null);
+        }
+    }
+
+    // look up a project by ID, null if it does not exist
+    public static BTOProject getProjectById(int projectId){
+        if (projectId <= 0 || projectId >= BY_ID.size()) {
+            return null;
+        }
+        return BY_ID.get(projectId);
+    }
+
+    // hand out the ID for a newly created project
+    public static int nextProjectId(){
+        return PROJECT_IDS.nextIntId();
     }
 
 }
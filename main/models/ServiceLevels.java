@@ -0,0 +1,345 @@
+package main.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import main.util.IntSnapshotList;
+import main.util.LatencyHistogram;
+import main.util.MonotonicClock;
+
+/**
+ * How long applicants wait, per project: a histogram of time from submission to decision
+ * (Pending to Successful or Unsuccessful), a histogram of time from an enquiry to its first
+ * reply, and the backlog still waiting for each with the age of its oldest item. Histograms
+ * merge, so the figures for all projects are the per-project ones added together.
+ *
+ * Everything is updated as applications and enquiries change. rebuild() fills it once from
+ * the stored timestamps after loading or recovery; until then changes are ignored, since the
+ * rebuild will see them. Items without a known submission time (journaled before timestamps
+ * were kept) count towards the backlog but not its age or the histograms.
+ *
+ * The oldest waiting item is found with a min-heap per project of rows or enquiry IDs,
+ * both of which grow with submission time, each with its submission time. Items that stop
+ * waiting are left in the heap and dropped when they reach the top; a bit per enquiry ID
+ * says which are still unanswered, so the heaps are checked without reading enquiries.
+ */
+public class ServiceLevels {
+    private static ArrayList<ProjectLevels> byProject = new ArrayList<>();
+    // enquiry IDs still waiting for a reply
+    private static BitSet waitingEnquiries = new BitSet();
+    private static boolean enabled = false;
+
+    public static final class Summary {
+        private final LatencyHistogram decisions;
+        private final LatencyHistogram replies;
+        private final int pendingApplications;
+        private final long oldestPendingMillis;
+        private final int unansweredEnquiries;
+        private final long oldestUnansweredMillis;
+
+        Summary(LatencyHistogram decisions, LatencyHistogram replies, int pendingApplications,
+                long oldestPendingMillis, int unansweredEnquiries, long oldestUnansweredMillis) {
+            this.decisions = decisions;
+            this.replies = replies;
+            this.pendingApplications = pendingApplications;
+            this.oldestPendingMillis = oldestPendingMillis;
+            this.unansweredEnquiries = unansweredEnquiries;
+            this.oldestUnansweredMillis = oldestUnansweredMillis;
+        }
+
+        // Time from submission to decision
+        public LatencyHistogram getDecisionTimes() {
+            return decisions;
+        }
+
+        // Time from an enquiry to its first reply
+        public LatencyHistogram getReplyTimes() {
+            return replies;
+        }
+
+        public int getPendingApplications() {
+            return pendingApplications;
+        }
+
+        // Age of the oldest application still Pending, or -1 if none or its submission time is not known
+        public long getOldestPendingMillis() {
+            return oldestPendingMillis;
+        }
+
+        public int getUnansweredEnquiries() {
+            return unansweredEnquiries;
+        }
+
+        public long getOldestUnansweredMillis() {
+            return oldestUnansweredMillis;
+        }
+    }
+
+    // Figures for one project, or for every project if projectId is 0
+    public static synchronized Summary summarize(int projectId) {
+        long now = MonotonicClock.now();
+        if (projectId != 0) {
+            ProjectLevels levels = levels(projectId, false);
+            return levels == null ? new Summary(new LatencyHistogram(), new LatencyHistogram(), 0, -1, 0, -1)
+                    : levels.summarize(now);
+        }
+        LatencyHistogram decisions = new LatencyHistogram();
+        LatencyHistogram replies = new LatencyHistogram();
+        int pending = 0;
+        int unanswered = 0;
+        long oldestPending = -1;
+        long oldestUnanswered = -1;
+        for (ProjectLevels levels : byProject) {
+            if (levels == null) {
+                continue;
+            }
+            decisions.merge(levels.decisions);
+            replies.merge(levels.replies);
+            pending += levels.pending;
+            unanswered += levels.unanswered;
+            oldestPending = Math.max(oldestPending, levels.oldestPendingAge(now));
+            oldestUnanswered = Math.max(oldestUnanswered, levels.oldestUnansweredAge(now));
+        }
+        return new Summary(decisions, replies, pending, oldestPending, unanswered, oldestUnanswered);
+    }
+
+    // Refills everything from the stored applications and enquiries, then follows changes.
+    // Built outside the lock, since reading enquiries takes the repository's lock.
+    public static void rebuild() {
+        ArrayList<ProjectLevels> rebuilt = new ArrayList<>();
+        BitSet waiting = new BitSet();
+        for (int row = 0, size = ApplicationStore.size(); row < size; row++) {
+            ProjectLevels levels = levels(rebuilt, ApplicationStore.getProjectId(row), true);
+            long submittedAt = ApplicationStore.getSubmittedAt(row);
+            long decidedAt = ApplicationStore.getDecidedAt(row);
+            if (submittedAt != 0 && decidedAt != 0) {
+                levels.decisions.record(decidedAt - submittedAt);
+            }
+            if (ApplicationStore.getStatusOrdinal(row) == ApplicationStore.PENDING) {
+                levels.pending++;
+                levels.pendingRows.push(row, submittedAt);
+            }
+        }
+        IntSnapshotList.View enquiryIds = EnquiryRepository.getAllEnquiryIds();
+        for (int i = 0; i < enquiryIds.size(); i++) {
+            Enquiry enquiry = EnquiryRepository.getEnquiryById(enquiryIds.get(i));
+            if (enquiry != null) {
+                addEnquiry(rebuilt, waiting, enquiry);
+            }
+        }
+        synchronized (ServiceLevels.class) {
+            byProject = rebuilt;
+            waitingEnquiries = waiting;
+            enabled = true;
+        }
+    }
+
+    // Called by ApplicationStore, under its lock, for a new Pending application
+    static synchronized void applicationSubmitted(int row) {
+        if (enabled) {
+            ProjectLevels levels = levels(ApplicationStore.getProjectId(row), true);
+            levels.pending++;
+            levels.pendingRows.push(row, ApplicationStore.getSubmittedAt(row));
+        }
+    }
+
+    static synchronized void applicationStatusChanged(int row, int was, int now) {
+        if (!enabled) {
+            return;
+        }
+        ProjectLevels levels = levels(ApplicationStore.getProjectId(row), true);
+        if (was == ApplicationStore.PENDING) {
+            levels.pending--;
+        }
+        if (now == ApplicationStore.PENDING) {
+            levels.pending++;
+            levels.pendingRows.push(row, ApplicationStore.getSubmittedAt(row));
+        }
+    }
+
+    // Called once the decision time is stamped
+    static synchronized void applicationDecided(int row) {
+        long submittedAt = ApplicationStore.getSubmittedAt(row);
+        if (enabled && submittedAt != 0) {
+            levels(ApplicationStore.getProjectId(row), true).decisions.record(ApplicationStore.getDecidedAt(row) - submittedAt);
+        }
+    }
+
+    // Called before the decision time of a rolled-back decision is cleared
+    static synchronized void decisionUndone(int row) {
+        long submittedAt = ApplicationStore.getSubmittedAt(row);
+        if (enabled && submittedAt != 0) {
+            levels(ApplicationStore.getProjectId(row), true).decisions.remove(ApplicationStore.getDecidedAt(row) - submittedAt);
+        }
+    }
+
+    static synchronized void enquirySubmitted(Enquiry enquiry) {
+        if (enabled) {
+            addEnquiry(byProject, waitingEnquiries, enquiry);
+        }
+    }
+
+    // Called after an enquiry gained its first reply, or lost its reply
+    static synchronized void enquiryAnswerChanged(Enquiry enquiry) {
+        if (!enabled) {
+            return;
+        }
+        ProjectLevels levels = levels(enquiry.getProjectId(), true);
+        int id = Math.toIntExact(enquiry.getEnquiryId());
+        if (enquiry.hasReply()) {
+            if (waitingEnquiries.get(id)) {
+                levels.unanswered--;
+                waitingEnquiries.clear(id);
+            }
+            if (enquiry.getSubmittedAt() != 0) {
+                levels.replies.record(enquiry.getRepliedAt() - enquiry.getSubmittedAt());
+            }
+        } else if (!waitingEnquiries.get(id)) {
+            levels.unanswered++;
+            waitingEnquiries.set(id);
+            levels.unansweredIds.push(id, enquiry.getSubmittedAt());
+        }
+    }
+
+    static synchronized void enquiryRemoved(Enquiry enquiry) {
+        int id = Math.toIntExact(enquiry.getEnquiryId());
+        if (enabled && waitingEnquiries.get(id)) {
+            levels(enquiry.getProjectId(), true).unanswered--;
+            waitingEnquiries.clear(id);
+        }
+    }
+
+    private static void addEnquiry(ArrayList<ProjectLevels> into, BitSet waiting, Enquiry enquiry) {
+        ProjectLevels levels = levels(into, enquiry.getProjectId(), true);
+        int id = Math.toIntExact(enquiry.getEnquiryId());
+        if (!enquiry.hasReply()) {
+            levels.unanswered++;
+            waiting.set(id);
+            levels.unansweredIds.push(id, enquiry.getSubmittedAt());
+        } else if (enquiry.getSubmittedAt() != 0 && enquiry.getRepliedAt() != 0) {
+            levels.replies.record(enquiry.getRepliedAt() - enquiry.getSubmittedAt());
+        }
+    }
+
+    private static ProjectLevels levels(int projectId, boolean create) {
+        return levels(byProject, projectId, create);
+    }
+
+    private static ProjectLevels levels(ArrayList<ProjectLevels> byProject, int projectId, boolean create) {
+        if (projectId < 0) {
+            projectId = 0;
+        }
+        if (projectId >= byProject.size()) {
+            if (!create) {
+                return null;
+            }
+            while (byProject.size() <= projectId) {
+                byProject.add(null);
+            }
+        }
+        ProjectLevels levels = byProject.get(projectId);
+        if (levels == null && create) {
+            levels = new ProjectLevels();
+            byProject.set(projectId, levels);
+        }
+        return levels;
+    }
+
+    private static final class ProjectLevels {
+        final LatencyHistogram decisions = new LatencyHistogram();
+        final LatencyHistogram replies = new LatencyHistogram();
+        int pending;
+        int unanswered;
+        final WaitHeap pendingRows = new WaitHeap();
+        final WaitHeap unansweredIds = new WaitHeap();
+
+        Summary summarize(long now) {
+            return new Summary(decisions.copy(), replies.copy(), pending, oldestPendingAge(now),
+                    unanswered, oldestUnansweredAge(now));
+        }
+
+        long oldestPendingAge(long now) {
+            while (!pendingRows.isEmpty()) {
+                if (ApplicationStore.getStatusOrdinal(pendingRows.peekKey()) == ApplicationStore.PENDING) {
+                    return ageOf(pendingRows.peekTime(), now);
+                }
+                pendingRows.pop();
+            }
+            return -1;
+        }
+
+        long oldestUnansweredAge(long now) {
+            while (!unansweredIds.isEmpty()) {
+                if (waitingEnquiries.get(unansweredIds.peekKey())) {
+                    return ageOf(unansweredIds.peekTime(), now);
+                }
+                unansweredIds.pop();
+            }
+            return -1;
+        }
+
+        private static long ageOf(long submittedAt, long now) {
+            return submittedAt == 0 ? -1 : Math.max(0, now - submittedAt);
+        }
+    }
+
+    // Binary min-heap of int keys, each carrying its submission time
+    private static final class WaitHeap {
+        private int[] keys = new int[8];
+        private long[] times = new long[8];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int peekKey() {
+            return keys[0];
+        }
+
+        long peekTime() {
+            return times[0];
+        }
+
+        void push(int key, long time) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            int position = size++;
+            while (position > 0 && keys[(position - 1) / 2] > key) {
+                int parent = (position - 1) / 2;
+                keys[position] = keys[parent];
+                times[position] = times[parent];
+                position = parent;
+            }
+            keys[position] = key;
+            times[position] = time;
+        }
+
+        void pop() {
+            size--;
+            int lastKey = keys[size];
+            long lastTime = times[size];
+            int position = 0;
+            while (true) {
+                int child = position * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= lastKey) {
+                    break;
+                }
+                keys[position] = keys[child];
+                times[position] = times[child];
+                position = child;
+            }
+            keys[position] = lastKey;
+            times[position] = lastTime;
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package main.models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.util.IntSnapshotList;
+import main.util.Log;
+import main.util.MonotonicClock;
+import main.util.RecoveryLog;
+
+/**
+ * Journals every change to the repositories so they survive a crash, including the state
+ * the CSV files do not hold: applications and their statuses, enquiries and replies, and
+ * pending officer registrations. Timestamps are written after the fields that were there
+ * before them and read only if present, so journals written before they existed still replay.
+ * Each change is recorded as the full new state of the one
+ * entity it touched, so replaying a record is an idempotent upsert and snapshots can be
+ * taken while the application keeps running. Files and checksums are handled by RecoveryLog.
+ *
+ * Once recovery state exists it is newer than the CSV files, which are only an export;
+ * delete the recovery directory to load the CSV files again.
+ *
+ * Configured with system properties:
+ *   bto.recovery.dir                directory of snapshots and journal (default ./data/recovery)
+ *   bto.recovery.snapshotIntervalMs time between snapshots while changes are made (default 30000)
+ *   bto.recovery.fsync              force each journal record to disk (default false; a JVM
+ *                                   crash loses nothing either way, only an OS crash can)
+ */
+public class StateJournal {
+    private static final long SNAPSHOT_INTERVAL_MS = Long.getLong("bto.recovery.snapshotIntervalMs", 30000);
+
+    private static final byte USER = 1;
+    private static final byte USER_REMOVED = 2;
+    private static final byte PROJECT = 3;
+    private static final byte PROJECT_REMOVED = 4;
+    private static final byte APPLICATION = 5;
+    private static final byte ENQUIRY = 6;
+    private static final byte ENQUIRY_REMOVED = 7;
+    private static final byte REGISTRATION = 8;
+    private static final byte TRANSACTION = 9;
+
+    private static final byte APPLICANT_ROLE = 0;
+    private static final byte OFFICER_ROLE = 1;
+    private static final byte MANAGER_ROLE = 2;
+
+    private static final RecoveryLog LOG = new RecoveryLog(
+            Paths.get(System.getProperty("bto.recovery.dir", "./data/recovery")),
+            Boolean.getBoolean("bto.recovery.fsync"));
+
+    // false while loading and replaying, so rebuilding state does not journal it again
+    private static volatile boolean recording = false;
+    // changes of the transaction running on this thread, encoded and appended together when it ends
+    private static final ThreadLocal<List<Encoder>> BATCH = new ThreadLocal<>();
+
+    /**
+     * Rebuilds the repositories from the newest snapshot and the journal after it.
+     * Returns false, leaving the repositories empty, if there is nothing to recover.
+     */
+    public static boolean recover() throws IOException {
+        boolean recovered = LOG.recover(StateJournal::apply);
+        if (recovered) {
+            // applications are listed under their project only once both are back
+            for (int row = 0; row < ApplicationStore.size(); row++) {
+                BTOProject project = ProjectRepository.getProjectById(ApplicationStore.getProjectId(row));
+                if (project != null) {
+                    project.addApplication(Application.fromRow(row));
+                }
+            }
+        }
+        return recovered;
+    }
+
+    // Starts journaling, snapshots the current state and keeps snapshotting in the background
+    public static void open() throws IOException {
+        synchronized (StateJournal.class) {
+            LOG.open();
+            recording = true;
+        }
+        LOG.snapshot(StateJournal::writeSnapshot);
+        LOG.startSnapshots(SNAPSHOT_INTERVAL_MS, StateJournal::writeSnapshot);
+        Runtime.getRuntime().addShutdownHook(new Thread(StateJournal::close, "recovery-shutdown"));
+    }
+
+    // Takes a final snapshot, so the next start has nothing to replay, and stops journaling
+    public static void close() {
+        synchronized (StateJournal.class) {
+            if (!recording) {
+                return;
+            }
+        }
+        try {
+            LOG.snapshot(StateJournal::writeSnapshot);
+        } catch (IOException | RuntimeException e) {
+            // the journal still holds every change; the next start replays it
+            Log.error("recovery.snapshot_failed", "final", true, "error", e);
+        }
+        synchronized (StateJournal.class) {
+            recording = false;
+        }
+        LOG.close(); // outside the lock: the snapshot thread may be waiting on a repository that journals
+    }
+
+    static void userChanged(User user) {
+        if (recording) {
+            record(out -> writeUser(out, user));
+        }
+    }
+
+    static void userRemoved(User user) {
+        if (recording) {
+            record(out -> {
+                out.writeByte(USER_REMOVED);
+                out.writeLong(user.getNricKey());
+            });
+        }
+    }
+
+    static void projectChanged(BTOProject project) {
+        if (recording) {
+            record(out -> writeProject(out, project));
+        }
+    }
+
+    static void projectRemoved(BTOProject project) {
+        if (recording) {
+            record(out -> {
+                out.writeByte(PROJECT_REMOVED);
+                out.writeInt(project.getProjectId());
+            });
+        }
+    }
+
+    static void applicationChanged(int row) {
+        if (recording) {
+            record(out -> writeApplication(out, row, ApplicationStore.getApplicantIndex(row),
+                    ApplicationStore.getProjectId(row), ApplicationStore.getFlatType(row),
+                    ApplicationStore.getStatusCode(row)));
+        }
+    }
+
+    static void enquiryChanged(Enquiry enquiry) {
+        if (recording) {
+            record(out -> writeEnquiry(out, enquiry));
+        }
+    }
+
+    static void enquiryRemoved(Enquiry enquiry) {
+        if (recording) {
+            record(out -> {
+                out.writeByte(ENQUIRY_REMOVED);
+                out.writeLong(enquiry.getEnquiryId());
+            });
+        }
+    }
+
+    // projectId 0 means the officer no longer has a pending registration
+    static void registrationChanged(HDBOfficer officer, int projectId) {
+        if (recording) {
+            record(out -> writeRegistration(out, officer.getNricKey(), projectId));
+        }
+    }
+
+    // Collect this thread's changes until endBatch, instead of appending each one
+    static void beginBatch() {
+        BATCH.set(new ArrayList<>());
+    }
+
+    // Appends the collected changes as one record, so replay applies all of them or none.
+    // Each entity is encoded here, from its state now, under the append lock: a project can
+    // also change outside any transaction (visibility, officers), and an image taken when the
+    // transaction touched it could then land after a newer one and undo it on replay.
+    static void endBatch() {
+        List<Encoder> batch = BATCH.get();
+        BATCH.remove();
+        if (batch.isEmpty()) {
+            return;
+        }
+        append(out -> {
+            out.writeByte(TRANSACTION);
+            out.writeInt(batch.size());
+            for (Encoder encoder : batch) {
+                byte[] change = encode(encoder);
+                out.writeInt(change.length);
+                out.write(change);
+            }
+        });
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static void record(Encoder encoder) {
+        List<Encoder> batch = BATCH.get();
+        if (batch == null) {
+            append(encoder);
+            return;
+        }
+        // only this thread sees the batch; the encoder reads live state when the batch ends
+        batch.add(encoder);
+    }
+
+    // Encoded and appended under one lock, so the journal order matches the order of the changes
+    private static synchronized void append(Encoder encoder) {
+        if (!recording) {
+            return;
+        }
+        try {
+            LOG.append(encode(encoder));
+        } catch (IOException e) {
+            Log.error("recovery.journal_failed", "error", e);
+        }
+    }
+
+    private static byte[] encode(Encoder encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        encoder.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Every entity, dependencies first; runs alongside writers, the journal covers what the versioned reads miss
+    private static void writeSnapshot(RecoveryLog.RecordSink sink) throws IOException {
+        for (User user : UserRepository.getAllUsers()) {
+            sink.accept(encode(out -> writeUser(out, user)));
+        }
+        List<BTOProject> projects = ProjectRepository.getAllProjects();
+        for (BTOProject project : projects) {
+            sink.accept(encode(out -> writeProject(out, project)));
+        }
+        ApplicationStore.Snapshot applications = ApplicationStore.snapshot();
+        for (int row = 0; row < applications.size(); row++) {
+            int current = row;
+            sink.accept(encode(out -> writeApplication(out, current, applications.getApplicantIndex(current),
+                    applications.getProjectId(current), applications.getFlatType(current),
+                    applications.getStatusCode(current))));
+        }
+        // one at a time, so a snapshot never holds every enquiry in memory
+        IntSnapshotList.View enquiryIds = EnquiryRepository.getAllEnquiryIds();
+        for (int i = 0; i < enquiryIds.size(); i++) {
+            Enquiry enquiry = EnquiryRepository.getEnquiryById(enquiryIds.get(i));
+            if (enquiry != null) {
+                sink.accept(encode(out -> writeEnquiry(out, enquiry)));
+            }
+        }
+        for (BTOProject project : projects) {
+            for (HDBOfficer officer : OfficerRegistrationRepository.getPending(project)) {
+                sink.accept(encode(out -> writeRegistration(out, officer.getNricKey(), project.getProjectId())));
+            }
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeByte(USER);
+        out.writeByte(user instanceof HDBOfficer ? OFFICER_ROLE
+                : user instanceof Applicant ? APPLICANT_ROLE : MANAGER_ROLE);
+        out.writeUTF(user.getNRIC());
+        out.writeUTF(user.getName());
+        out.writeInt(user.getAge());
+        out.writeUTF(user.getMaritalStatus());
+        out.writeUTF(user.getPassword());
+    }
+
+    private static void writeProject(DataOutputStream out, BTOProject project) throws IOException {
+        out.writeByte(PROJECT);
+        out.writeInt(project.getProjectId());
+        out.writeLong(project.getManager().getNricKey());
+        out.writeUTF(project.getProjectName());
+        out.writeUTF(project.getNeighborhood());
+        out.writeInt(project.getStartDay());
+        out.writeInt(project.getEndDay());
+        out.writeBoolean(project.isVisible());
+        out.writeInt(project.getMaxOfficers());
+        List<String> flatTypes = new ArrayList<>(project.getFlatTypes());
+        out.writeInt(flatTypes.size());
+        for (String flatType : flatTypes) {
+            int ordinal = FlatTypeRegistry.ordinalOf(flatType);
+            out.writeUTF(flatType);
+            out.writeInt(project.getUnits(ordinal));
+            out.writeInt(project.getPrice(ordinal));
+        }
+        List<HDBOfficer> officers = project.getHDBOfficers();
+        out.writeInt(officers.size());
+        for (HDBOfficer officer : officers) {
+            out.writeLong(officer.getNricKey());
+        }
+    }
+
+    private static void writeApplication(DataOutputStream out, int row, int applicantIndex, int projectId,
+            String flatType, int status) throws IOException {
+        out.writeByte(APPLICATION);
+        out.writeInt(row);
+        User applicant = UserRepository.getUserByIndex(applicantIndex);
+        out.writeLong(applicant != null ? applicant.getNricKey() : -1); // -1 once the applicant is removed
+        out.writeInt(projectId);
+        out.writeUTF(flatType);
+        out.writeByte(status);
+        // live values even for a snapshot; a later record of the row carries any newer ones
+        out.writeLong(ApplicationStore.getSubmittedAt(row));
+        out.writeLong(ApplicationStore.getDecidedAt(row));
+        out.writeLong(ApplicationStore.getStatusChangedAt(row));
+    }
+
+    private static void writeEnquiry(DataOutputStream out, Enquiry enquiry) throws IOException {
+        out.writeByte(ENQUIRY);
+        out.writeLong(enquiry.getEnquiryId());
+        out.writeLong(enquiry.getUserKey());
+        out.writeInt(enquiry.getProjectId());
+        out.writeUTF(enquiry.getMessage());
+        out.writeBoolean(enquiry.getReply() != null);
+        if (enquiry.getReply() != null) {
+            out.writeUTF(enquiry.getReply());
+        }
+        out.writeLong(enquiry.getSubmittedAt());
+        out.writeLong(enquiry.getRepliedAt());
+    }
+
+    private static void writeRegistration(DataOutputStream out, long officerKey, int projectId) throws IOException {
+        out.writeByte(REGISTRATION);
+        out.writeLong(officerKey);
+        out.writeInt(projectId);
+    }
+
+    // Upserts or removes the one entity a record describes
+    private static void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        switch (type) {
+            case USER:
+                applyUser(in);
+                break;
+            case USER_REMOVED: {
+                User user = UserRepository.getUser(in.readLong());
+                if (user != null) {
+                    UserRepository.removeUser(user);
+                }
+                break;
+            }
+            case PROJECT:
+                applyProject(in);
+                break;
+            case PROJECT_REMOVED: {
+                BTOProject project = ProjectRepository.getProjectById(in.readInt());
+                if (project != null) {
+                    project.getManager().removeProject(project);
+                    ProjectRepository.removeProject(project);
+                }
+                break;
+            }
+            case APPLICATION:
+                applyApplication(in);
+                break;
+            case ENQUIRY:
+                applyEnquiry(in);
+                break;
+            case ENQUIRY_REMOVED: {
+                Enquiry enquiry = EnquiryRepository.getEnquiryById(in.readLong());
+                if (enquiry != null) {
+                    EnquiryRepository.removeEnquiry(enquiry);
+                }
+                break;
+            }
+            case REGISTRATION: {
+                User officer = UserRepository.getUser(in.readLong());
+                int projectId = in.readInt();
+                if (officer instanceof HDBOfficer) {
+                    OfficerRegistrationRepository.restorePending((HDBOfficer) officer, projectId);
+                }
+                break;
+            }
+            case TRANSACTION: {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] change = new byte[in.readInt()];
+                    in.readFully(change);
+                    apply(change);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static void applyUser(DataInputStream in) throws IOException {
+        byte role = in.readByte();
+        String nric = in.readUTF();
+        String name = in.readUTF();
+        int age = in.readInt();
+        String maritalStatus = in.readUTF();
+        String password = in.readUTF();
+        User existing = UserRepository.getUser(nric);
+        if (existing != null) {
+            existing.password = password; // the only field that changes after registration
+            return;
+        }
+        User user = role == OFFICER_ROLE ? new HDBOfficer(nric, name, age, maritalStatus, password)
+                : role == APPLICANT_ROLE ? new Applicant(nric, name, age, maritalStatus, password)
+                : new HDBManager(nric, name, age, maritalStatus, password);
+        UserRepository.addUser(user);
+    }
+
+    private static void applyProject(DataInputStream in) throws IOException {
+        int projectId = in.readInt();
+        User manager = UserRepository.getUser(in.readLong());
+        String name = in.readUTF();
+        String neighborhood = in.readUTF();
+        int startDay = in.readInt();
+        int endDay = in.readInt();
+        boolean visible = in.readBoolean();
+        int maxOfficers = in.readInt();
+        if (!(manager instanceof HDBManager)) {
+            throw new IOException("Project " + projectId + " has no manager");
+        }
+
+        BTOProject project = ProjectRepository.getProjectById(projectId);
+        boolean created = project == null;
+        if (created) {
+            project = new BTOProject(projectId, (HDBManager) manager, name, neighborhood, startDay, endDay, maxOfficers);
+        } else {
+            project.setProjectName(name);
+            project.setNeighborhood(neighborhood);
+            project.setStartDay(startDay);
+            project.setEndDay(endDay);
+        }
+        project.setVisibility(visible);
+        int typeCount = in.readInt();
+        for (int t = 0; t < typeCount; t++) {
+            project.addFlatType(in.readUTF(), in.readInt(), in.readInt());
+        }
+        if (created) {
+            ProjectRepository.addProject(project);
+            project.getManager().addProject(project);
+        }
+
+        int officerCount = in.readInt();
+        List<HDBOfficer> officers = new ArrayList<>(officerCount);
+        for (int i = 0; i < officerCount; i++) {
+            User officer = UserRepository.getUser(in.readLong());
+            if (officer instanceof HDBOfficer) {
+                officers.add((HDBOfficer) officer);
+            }
+        }
+        for (HDBOfficer officer : project.getHDBOfficers()) {
+            if (!officers.contains(officer)) {
+                project.removeOfficer(officer);
+                officer.removeFromProject();
+            }
+        }
+        for (HDBOfficer officer : officers) {
+            if (!project.getHDBOfficers().contains(officer) && project.tryAddOfficer(officer)) {
+                officer.assignToProject(projectId);
+            }
+        }
+    }
+
+    private static void applyApplication(DataInputStream in) throws IOException {
+        int row = in.readInt();
+        User applicant = UserRepository.getUser(in.readLong());
+        int projectId = in.readInt();
+        String flatType = in.readUTF();
+        int status = in.readByte();
+        long submittedAt = readTime(in);
+        long decidedAt = readTime(in);
+        long changedAt = readTime(in);
+        // the row is kept even without its applicant, so later rows keep their numbers
+        ApplicationStore.restore(row, applicant != null ? applicant.getIndex() : -1, projectId,
+                FlatTypeRegistry.intern(flatType), status, submittedAt, decidedAt, changedAt);
+    }
+
+    private static void applyEnquiry(DataInputStream in) throws IOException {
+        long enquiryId = in.readLong();
+        long userKey = in.readLong();
+        int projectId = in.readInt();
+        String message = in.readUTF();
+        String reply = in.readBoolean() ? in.readUTF() : null;
+        long submittedAt = readTime(in);
+        long repliedAt = readTime(in);
+        MonotonicClock.advanceTo(Math.max(submittedAt, repliedAt));
+        Enquiry enquiry = EnquiryRepository.getEnquiryById(enquiryId);
+        if (enquiry == null) {
+            enquiry = new Enquiry(enquiryId, userKey, projectId, message);
+            enquiry.restore(message, reply, submittedAt, repliedAt);
+            EnquiryRepository.addEnquiry(enquiry);
+            return;
+        }
+        enquiry.restore(message, reply, submittedAt, repliedAt);
+    }
+
+    // A timestamp, or 0 for a record journaled before timestamps were kept
+    private static long readTime(DataInputStream in) throws IOException {
+        return in.available() >= Long.BYTES ? in.readLong() : 0;
+    }
+}
@@ -0,0 +1,222 @@
+package main.models;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A unit of work over applications, project inventory and repositories. The work runs while
+ * holding the lock stripe of every project it names, taken in stripe order so two
+ * transactions can never deadlock. Each change is applied straight away and its undo kept;
+ * if the work throws, the undos run in reverse and the exception is rethrown. Undos put project
+ * fields back without notifying, and each restored project is published once at the end. All of the
+ * changes reach the journal as one record, so recovery replays all of them or none.
+ *
+ * The locks serialize transactions over the same project. Lock-free readers (snapshots,
+ * listings) may still see a transaction half-way through.
+ */
+public final class Transaction {
+    public interface Work<T> {
+        T run(Transaction tx);
+    }
+
+    private static final int STRIPES = 64;
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private final BitSet stripes;
+    private final ArrayDeque<Runnable> undo = new ArrayDeque<>();
+    // projects whose fields the undos put back, to be published once the rollback is done
+    private final LinkedHashSet<BTOProject> restored = new LinkedHashSet<>();
+
+    private Transaction(BitSet stripes) {
+        this.stripes = stripes;
+    }
+
+    public static <T> T run(BTOProject project, Work<T> work) {
+        return run(Collections.singletonList(project), work);
+    }
+
+    public static <T> T run(Collection<BTOProject> projects, Work<T> work) {
+        BitSet stripes = new BitSet(STRIPES);
+        for (BTOProject project : projects) {
+            stripes.set(stripeOf(project));
+        }
+        Transaction outer = CURRENT.get();
+        if (outer != null) {
+            // nested work joins the running transaction, which must already hold its locks
+            BitSet missing = (BitSet) stripes.clone();
+            missing.andNot(outer.stripes);
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("Nested transaction needs locks its outer transaction does not hold.");
+            }
+            return work.run(outer);
+        }
+
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            LOCKS[i].lock();
+        }
+        Transaction tx = new Transaction(stripes);
+        CURRENT.set(tx);
+        StateJournal.beginBatch();
+        try {
+            T result = work.run(tx);
+            tx.undo.clear();
+            return result;
+        } catch (RuntimeException | Error e) {
+            tx.rollback();
+            throw e;
+        } finally {
+            // after a rollback the batch holds the restored state, which is what the journal must end with
+            StateJournal.endBatch();
+            CURRENT.remove();
+            for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+                LOCKS[i].unlock();
+            }
+        }
+    }
+
+    // Runs an attempt that reads projects and edits them conditionally, running it again
+    // each time it loses to a concurrent change; the last conflict is rethrown
+    public static <T> T retryOnConflict(int attempts, Supplier<T> attempt, Consumer<ProjectConflictException> onConflict) {
+        for (int i = 1; ; i++) {
+            try {
+                return attempt.get();
+            } catch (ProjectConflictException e) {
+                if (i >= attempts) {
+                    throw e;
+                }
+                onConflict.accept(e);
+            }
+        }
+    }
+
+    // Fails the transaction unless the project is still at the version the caller read
+    public void expectVersion(BTOProject project, long expectedVersion) {
+        requireLocked(project.getProjectId());
+        long actual = project.getVersion();
+        if (actual != expectedVersion) {
+            throw new ProjectConflictException(project, expectedVersion, actual);
+        }
+    }
+
+    public void setStatus(Application application, String status) {
+        requireLocked(application.getProjectId());
+        int row = application.getRow();
+        int previous = ApplicationStore.getStatusCode(row);
+        ApplicationStore.setStatus(row, status);
+        undo.push(() -> ApplicationStore.setStatusCode(row, previous));
+    }
+
+    public void setUnits(BTOProject project, int flatType, int units) {
+        requireLocked(project.getProjectId());
+        int previous = project.getUnits(flatType);
+        project.setUnits(flatType, units);
+        undo.push(() -> {
+            project.assignUnits(flatType, previous);
+            restored.add(project);
+        });
+    }
+
+    // Name, neighborhood and application window together, as one change to the project
+    public void setDetails(BTOProject project, String projectName, String neighborhood, int startDay, int endDay) {
+        requireLocked(project.getProjectId());
+        String oldName = project.getProjectName();
+        String oldNeighborhood = project.getNeighborhood();
+        int oldStartDay = project.getStartDay();
+        int oldEndDay = project.getEndDay();
+        project.assignDetails(projectName, neighborhood, startDay, endDay);
+        project.fieldsChanged();
+        undo.push(() -> {
+            project.assignDetails(oldName, oldNeighborhood, oldStartDay, oldEndDay);
+            restored.add(project);
+        });
+    }
+
+    // Takes one unit of the application's flat type for it; false if none are left
+    public boolean allocateUnit(Application application) {
+        int row = application.getRow();
+        if (ApplicationStore.holdsUnit(row)) {
+            return true;
+        }
+        BTOProject project = projectOf(application);
+        int flatType = ApplicationStore.getFlatTypeOrdinal(row);
+        int units = project.getUnits(flatType);
+        if (units <= 0) {
+            return false;
+        }
+        setUnits(project, flatType, units - 1);
+        setUnitHeld(row, true);
+        return true;
+    }
+
+    // Returns the application's unit to its project, if it holds one
+    public void releaseUnit(Application application) {
+        int row = application.getRow();
+        if (!ApplicationStore.holdsUnit(row)) {
+            return;
+        }
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
+        if (project != null) {
+            int flatType = ApplicationStore.getFlatTypeOrdinal(row);
+            setUnits(project, flatType, project.getUnits(flatType) + 1);
+        }
+        setUnitHeld(row, false);
+    }
+
+    // Registers the undo of a change made outside the operations above
+    public void onRollback(Runnable action) {
+        undo.push(action);
+    }
+
+    private void setUnitHeld(int row, boolean held) {
+        int previous = ApplicationStore.getStatusCode(row);
+        ApplicationStore.setStatusCode(row, held ? previous | ApplicationStore.UNIT_HELD
+                : previous & ~ApplicationStore.UNIT_HELD);
+        undo.push(() -> ApplicationStore.setStatusCode(row, previous));
+    }
+
+    private BTOProject projectOf(Application application) {
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
+        if (project == null) {
+            throw new IllegalStateException("Application " + application.getApplicationId() + " has no project.");
+        }
+        requireLocked(project.getProjectId());
+        return project;
+    }
+
+    private void requireLocked(int projectId) {
+        if (!stripes.get(stripeOf(projectId))) {
+            throw new IllegalStateException("Project " + projectId + " is not locked by this transaction.");
+        }
+    }
+
+    private void rollback() {
+        while (!undo.isEmpty()) {
+            undo.pop().run();
+        }
+        for (BTOProject project : restored) {
+            project.fieldsChanged();
+        }
+    }
+
+    private static int stripeOf(BTOProject project) {
+        return stripeOf(project.getProjectId());
+    }
+
+    // project IDs are sequential, so the low bits spread neighbouring projects over different stripes
+    private static int stripeOf(int projectId) {
+        return projectId & (STRIPES - 1);
+    }
+}
@@ -1,25 +1,42 @@
 package main.models;
 
-import java.util.regex.Pattern;
+import main.util.InputValidator;
+import main.util.NricCodec;
+import main.util.WriteBehindStore;
 
 public abstract class User {
     protected String nric;           // NRIC: S/T + 7 digits + 1 letter
+    private final long nricKey;      // the NRIC packed into a long, used as the lookup key
     protected String name;
     protected int age;
     protected String maritalStatus;  // "Single" or "Married"
     protected String password;
+    private int index = -1;          // dense slot assigned by UserRepository, -1 until registered
     
     public User(String nric, String name, int age, String maritalStatus, String password) {
         if (!isValidNRIC(nric)) {
             throw new IllegalArgumentException("Invalid NRIC format.");
         }
         this.nric = nric.toUpperCase();
+        this.nricKey = NricCodec.pack(this.nric);
         this.name = name;
         this.age = age;
         this.maritalStatus = maritalStatus;
         this.password = password;
     }    
 
+    public long getNricKey() {
+        return nricKey;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public String getNRIC() {
         return nric;
     }
@@ -49,10 +66,12 @@ public abstract class User {
             throw new IllegalArgumentException("Incorrect current password.");
         }
         this.password = newPassword;
+        StateJournal.userChanged(this);
+        WriteBehindStore.markDirty(this);
     }
 
     public static boolean isValidNRIC(String nric) {
-        return Pattern.matches("^[ST]\\d{7}[A-Z]$", nric.toUpperCase());
+        return InputValidator.isValidNRIC(nric);
     }
 
     // Abstract method to be implemented by subclasses
@@ -1,38 +1,106 @@
 package main.models;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 
-import main.models.User;
+import main.util.CuckooFilter;
+import main.util.LongIndex;
+import main.util.NricCodec;
+import main.util.WriteBehindStore;
 
 public class UserRepository {
-    private static HashMap<String, User> userDatabase = new HashMap<>();
+    // users by their dense index, so other stores can refer to a user with a plain int
+    private static final ArrayList<User> BY_INDEX = new ArrayList<>();
+    // packed NRIC -> index into BY_INDEX
+    private static final LongIndex BY_NRIC = new LongIndex(1024);
+    private static int removedCount = 0;
+    // packed NRICs of every user, so a lookup for an unknown NRIC stops before the index
+    private static volatile CuckooFilter nricFilter = new CuckooFilter(1024);
     
     public static void addUser(User user) {
-        userDatabase.put(user.getNRIC(), user);
+        synchronized (UserRepository.class) {
+            int existing = BY_NRIC.get(user.getNricKey());
+            if (existing != LongIndex.NOT_FOUND) {
+                user.setIndex(existing);
+                BY_INDEX.set(existing, user);
+            } else {
+                user.setIndex(BY_INDEX.size());
+                BY_INDEX.add(user);
+                BY_NRIC.put(user.getNricKey(), user.getIndex());
+                nricFilter.add(user.getNricKey());
+            }
+        }
+        // outside the lock, so the repositories called here never wait on this one
+        if (user instanceof HDBOfficer) {
+            OfficerRegistrationRepository.officerChanged((HDBOfficer) user);
+        }
+        StateJournal.userChanged(user);
+        WriteBehindStore.markDirty(user);
     }
     
     public static User getUser(String nric) {
-        return userDatabase.get(nric);
+        return getUser(NricCodec.pack(nric));
+    }
+
+    public static User getUser(long nricKey) {
+        if (nricKey < 0 || !nricFilter.mightContain(nricKey)) {
+            return null;
+        }
+        int index = BY_NRIC.get(nricKey);
+        return index == LongIndex.NOT_FOUND ? null : BY_INDEX.get(index);
+    }
+
+    public static User getUserByIndex(int index) {
+        if (index < 0 || index >= BY_INDEX.size()) {
+            return null;
+        }
+        return BY_INDEX.get(index);
     }
     
-    public static Collection<User> getAllUsers() {
-        return userDatabase.values();
+    // A copy taken under the lock, safe to iterate while users are added or removed
+    public static synchronized Collection<User> getAllUsers() {
+        ArrayList<User> users = new ArrayList<>(BY_INDEX.size() - removedCount);
+        for (User user : BY_INDEX) {
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
     }
     
     public static void removeUser(User user) {
-        userDatabase.remove(user.getNRIC());
+        synchronized (UserRepository.class) {
+            int index = BY_NRIC.remove(user.getNricKey());
+            if (index != LongIndex.NOT_FOUND) {
+                // the slot stays reserved so indexes held elsewhere never point at another user
+                BY_INDEX.set(index, null);
+                removedCount++;
+                nricFilter.remove(user.getNricKey());
+            }
+        }
+        if (user instanceof HDBOfficer) {
+            OfficerRegistrationRepository.officerRemoved((HDBOfficer) user);
+        }
+        StateJournal.userRemoved(user);
+        WriteBehindStore.markDirty(user);
     }
     
-    public static boolean containsUser(String nric) {
-        return userDatabase.containsKey(nric);
+    // Refills the NRIC filter from the index at its current size; called once loading is done
+    public static synchronized void rebuildFilter() {
+        CuckooFilter rebuilt = new CuckooFilter(BY_INDEX.size() - removedCount);
+        for (User user : BY_INDEX) {
+            if (user != null) {
+                rebuilt.add(user.getNricKey());
+            }
+        }
+        nricFilter = rebuilt;
     }
-    
-    public static void setUserDatabase(HashMap<String, User> database) {
-        userDatabase = database;
+
+    public static boolean containsUser(String nric) {
+        return getUser(nric) != null;
     }
-    
-    public static HashMap<String, User> getUserDatabase() {
-        return userDatabase;
+
+    public static boolean containsUser(long nricKey) {
+        return getUser(nricKey) != null;
     }
 }
\ No newline at end of file
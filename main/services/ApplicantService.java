@@ -2,162 +2,182 @@ package main.services;
 
 import java.util.*;
 import main.models.*;
+import main.util.AdmissionQueue;
+import main.util.DateCodec;
+import main.util.Log;
 
 public class ApplicantService {
-    private static List<Application> applications = new ArrayList<>();
 
-    public static void apply(Applicant applicant, BTOProject project, String flatType) {
-        if (hasApplied(applicant)) {
-            System.out.println("You already have an active application.");
-            return;
+    public enum ApplyResult { SUBMITTED, ALREADY_APPLIED, INVALID_FLAT_TYPE, NOT_ELIGIBLE }
+
+    public enum WithdrawResult { WITHDRAWN, NO_APPLICATION, NOT_WITHDRAWABLE }
+
+    // Outcome of editing or deleting an enquiry
+    public enum EnquiryChange { CHANGED, ALREADY_REPLIED, NOT_FOUND }
+
+    // Throws AdmissionRejectedException, having changed nothing, when the project is too busy
+    public static ApplyResult apply(Applicant applicant, BTOProject project, String flatType) {
+        AdmissionQueue.Ticket ticket = Admission.enterApplication(project.getProjectId());
+        try {
+            return submitApplication(applicant, project, flatType);
+        } finally {
+            ticket.close();
         }
+    }
 
-        boolean isSingle = applicant.getMaritalStatus().equalsIgnoreCase("Single");
-        boolean isMarried = applicant.getMaritalStatus().equalsIgnoreCase("Married");
-        int age = applicant.getAge();
+    private static ApplyResult submitApplication(Applicant applicant, BTOProject project, String flatType) {
+        if (hasApplied(applicant)) {
+            return ApplyResult.ALREADY_APPLIED;
+        }
 
-        if (flatType.equalsIgnoreCase("2-room")) {
-            if (!(isSingle && age >= 35) && !(isMarried && age >= 21)) {
-                System.out.println("Only singles aged 35+ or married applicants aged 21+ can apply for 2-room flats.");
-                return;
-            }
-        } else if (flatType.equalsIgnoreCase("3-room")) {
-            if (!(isMarried && age >= 21)) {
-                System.out.println("Only married applicants aged 21+ can apply for 3-room flats.");
-                return;
-            }
-        } else {
-            System.out.println("Invalid flat type.");
-            return;
+        int type = FlatTypeRegistry.ordinalOf(flatType);
+        if (!project.offersFlatType(type)) {
+            return ApplyResult.INVALID_FLAT_TYPE;
+        }
+        if (!FlatTypeRegistry.isEligible(type, applicant.getMaritalStatus(), applicant.getAge())) {
+            return ApplyResult.NOT_ELIGIBLE;
         }
 
-        Application application = new Application(applicant, project.getProjectName(), flatType);
-        applications.add(application);
+        Application application = Application.submit(applicant, project.getProjectId(), flatType);
+        if (application == null) {
+            return ApplyResult.ALREADY_APPLIED; // a concurrent submission got in first
+        }
         project.addApplication(application);
-        System.out.println("Application submitted successfully.");
+        Log.info("application.submitted", "nric", applicant.getNRIC(), "project", project.getProjectId(),
+                "flatType", flatType);
+        return ApplyResult.SUBMITTED;
     }
 
+    // A new application is only accepted once every earlier one is Unsuccessful,
+    // so the applicant's latest application decides whether one is still active
     public static boolean hasApplied(Applicant applicant) {
-        for (Application a : applications) {
-            if (a.getApplicant().getNRIC().equals(applicant.getNRIC()) && !a.getStatus().equalsIgnoreCase("Unsuccessful")) {
-                return true;
-            }
+        if (!ApplicationStore.mayHaveActiveApplication(applicant.getNricKey())) {
+            return false;
         }
-        return false;
+        int row = ApplicationStore.getLatestRow(applicant.getIndex());
+        return row >= 0 && ApplicationStore.getStatusOrdinal(row) != ApplicationStore.statusOrdinal("Unsuccessful");
     }
 
     public static Application getApplication(String nric) {
-        for (Application a : applications) {
-            if (a.getApplicant().getNRIC().equals(nric)) {
-                return a;
-            }
+        User user = UserRepository.getUser(nric);
+        if (user == null) {
+            return null;
         }
-        return null;
+        int row = ApplicationStore.getLatestRow(user.getIndex());
+        return row >= 0 ? Application.fromRow(row) : null;
     }
 
-    public static void viewAppliedProject(Applicant applicant, List<BTOProject> allProjects) {
+    // On NOT_WITHDRAWABLE the application's current status says why
+    public static WithdrawResult requestWithdrawal(Applicant applicant) {
         Application app = getApplication(applicant.getNRIC());
         if (app == null) {
-            System.out.println("No application found.");
-            return;
+            return WithdrawResult.NO_APPLICATION;
         }
 
-        System.out.println("Status: " + app.getStatus());
-        System.out.println("Flat Type: " + app.getFlatType());
-
-        for (BTOProject p : allProjects) {
-            if (p.getProjectName().equals(app.getProjectName())) {
-                System.out.println("Project Name: " + p.getProjectName());
-                System.out.println("Neighborhood: " + p.getNeighborhood());
-                System.out.println("Application Period: " + p.getStartDate() + " to " + p.getEndDate());
-                System.out.println("Manager: " + p.getManager().getNRIC());
-                return;
+        BTOProject project = ProjectRepository.getProjectById(app.getProjectId());
+        boolean withdrawn = project != null && Transaction.run(project, tx -> {
+            String status = app.getStatus();
+            if (!status.equalsIgnoreCase("Pending") && !status.equalsIgnoreCase("Successful")) {
+                return false;
             }
-        }
-        System.out.println("Applied project details are not found.");
-    }
-
-    public static boolean requestWithdrawal(Applicant applicant) {
-        Application app = getApplication(applicant.getNRIC());
-        if (app == null) {
-            System.out.println("No application to withdraw.");
-            return false;
-        }
-
-        if (app.getStatus().equalsIgnoreCase("Pending") || app.getStatus().equalsIgnoreCase("Successful")) {
-            app.setStatus("Unsuccessful");
-            System.out.println("Application withdrawn.");
+            tx.releaseUnit(app);
+            tx.setStatus(app, "Unsuccessful");
             return true;
+        });
+        if (withdrawn) {
+            Log.info("application.withdrawn", "nric", applicant.getNRIC(), "project", app.getProjectId());
+            return WithdrawResult.WITHDRAWN;
         }
-
-        System.out.println("Cannot withdraw application in current state: " + app.getStatus());
-        return false;
+        return WithdrawResult.NOT_WITHDRAWABLE;
     }
 
     public static List<BTOProject> viewAvailableProjects(Applicant applicant, List<BTOProject> allProjects) {
         List<BTOProject> result = new ArrayList<>();
-        Date today = new Date();
+        int today = DateCodec.today();
 
         for (BTOProject project : allProjects) {
             if (!project.isVisible()) continue;
-            if (today.before(project.getStartDate()) || today.after(project.getEndDate())) continue;
+            if (!project.isOpenOn(today)) continue;
 
-            boolean isSingle = applicant.getMaritalStatus().equalsIgnoreCase("Single") && applicant.getAge() >= 35;
-            boolean isMarried = applicant.getMaritalStatus().equalsIgnoreCase("Married") && applicant.getAge() >= 21;
-
-            if (isSingle && project.getUnits("2-room") > 0) {
-                result.add(project);
-            } else if (isMarried && (project.getUnits("2-room") > 0 || project.getUnits("3-room") > 0)) {
+            if (!getEligibleFlatTypes(applicant, project).isEmpty()) {
                 result.add(project);
             }
         }
         return result;
     }
 
-    public static void submitEnquiry(Applicant applicant, String projectName, String message) {
-        String enquiryId = "ENQ" + UUID.randomUUID().toString().substring(0, 8);
-        Enquiry enquiry = new Enquiry(enquiryId, applicant.getNRIC(), projectName, message);
-        EnquiryRepository.addEnquiry(enquiry);
-        System.out.println("Your enquiry has been submitted with ID: " + enquiryId);
+    // Filtered catalogue query with facet counts; applicants only ever see visible projects
+    public static ProjectCatalogue.Result browseProjects(CataloguePredicate filter) {
+        return ProjectCatalogue.query(CataloguePredicate.visible().and(filter));
     }
 
-    public static List<Enquiry> getApplicantEnquiries(Applicant applicant) {
-        List<Enquiry> applicantEnquiries = new ArrayList<>();
-        for (Enquiry enquiry : EnquiryRepository.getAllEnquiries()) {
-            if (enquiry.getUserNric().equals(applicant.getNRIC())) {
-                applicantEnquiries.add(enquiry);
+    // Autocomplete over visible project names and neighborhoods, limited to the given projects
+    public static List<BTOProject> suggestProjects(String prefix, int limit, Collection<BTOProject> within) {
+        return ProjectCatalogue.complete(prefix, limit, CataloguePredicate.visible().and(CataloguePredicate.among(within)));
+    }
+
+    // Flat types of the project with units left that the applicant may apply for
+    public static List<String> getEligibleFlatTypes(Applicant applicant, BTOProject project) {
+        List<String> eligible = new ArrayList<>();
+        for (String flatType : project.getFlatTypes()) {
+            int type = FlatTypeRegistry.ordinalOf(flatType);
+            if (project.getUnits(type) > 0
+                    && FlatTypeRegistry.isEligible(type, applicant.getMaritalStatus(), applicant.getAge())) {
+                eligible.add(flatType);
             }
         }
-        return applicantEnquiries;
+        return eligible;
+    }
+
+    // Returns the new enquiry's ID; throws AdmissionRejectedException when the project is too busy
+    public static long submitEnquiry(Applicant applicant, int projectId, String message) {
+        AdmissionQueue.Ticket ticket = Admission.enterEnquiry(projectId);
+        try {
+            return addEnquiry(applicant, projectId, message);
+        } finally {
+            ticket.close();
+        }
+    }
+
+    private static long addEnquiry(Applicant applicant, int projectId, String message) {
+        long enquiryId = EnquiryRepository.nextEnquiryId();
+        Enquiry enquiry = new Enquiry(enquiryId, applicant.getNricKey(), projectId, message);
+        EnquiryRepository.addEnquiry(enquiry);
+        Log.info("enquiry.submitted", "nric", applicant.getNRIC(), "project", projectId, "enquiry", enquiryId);
+        return enquiryId;
     }
 
-    public static boolean deleteEnquiry(Applicant applicant, String enquiryId) {
+    public static List<Enquiry> getApplicantEnquiries(Applicant applicant) {
+        return new ArrayList<>(EnquiryRepository.getUserEnquiries(applicant.getNricKey()));
+    }
+
+    public static EnquiryChange deleteEnquiry(Applicant applicant, long enquiryId) {
         Enquiry enquiry = EnquiryRepository.getEnquiryById(enquiryId);
-        if (enquiry != null && enquiry.getUserNric().equals(applicant.getNRIC()) && !enquiry.hasReply()) {
+        EnquiryChange check = checkChangeable(applicant, enquiry);
+        if (check == EnquiryChange.CHANGED) {
             EnquiryRepository.removeEnquiry(enquiry);
-            System.out.println("Enquiry deleted successfully.");
-            return true;
-        } else if (enquiry.hasReply()) {
-            System.out.println("Cannot delete an enquiry that has been replied to.");
-            return false;
-        } else {
-            System.out.println("Enquiry not found or you don't have permission to delete it.");
-            return false;
+            Log.info("enquiry.deleted", "nric", applicant.getNRIC(), "enquiry", enquiryId);
         }
+        return check;
     }
 
-    public static boolean editEnquiry(Applicant applicant, String enquiryId, String newMessage) {
+    public static EnquiryChange editEnquiry(Applicant applicant, long enquiryId, String newMessage) {
         Enquiry enquiry = EnquiryRepository.getEnquiryById(enquiryId);
-        if (enquiry != null && enquiry.getUserNric().equals(applicant.getNRIC()) && !enquiry.hasReply()) {
+        EnquiryChange check = checkChangeable(applicant, enquiry);
+        if (check == EnquiryChange.CHANGED) {
             enquiry.setMessage(newMessage);
-            System.out.println("Enquiry updated successfully.");
-            return true;
-        } else if (enquiry.hasReply()) {
-            System.out.println("Cannot edit an enquiry that has been replied to.");
-            return false;
-        } else {
-            System.out.println("Enquiry not found or you don't have permission to edit it.");
-            return false;
+            Log.info("enquiry.edited", "nric", applicant.getNRIC(), "enquiry", enquiryId);
+        }
+        return check;
+    }
+
+    // Only the applicant's own enquiries without a reply may change
+    private static EnquiryChange checkChangeable(Applicant applicant, Enquiry enquiry) {
+        if (enquiry != null && enquiry.getUserKey() == applicant.getNricKey() && !enquiry.hasReply()) {
+            return EnquiryChange.CHANGED;
+        } else if (enquiry != null && enquiry.hasReply()) {
+            return EnquiryChange.ALREADY_REPLIED;
         }
+        return EnquiryChange.NOT_FOUND;
     }
 }
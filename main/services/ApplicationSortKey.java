@@ -0,0 +1,8 @@
+package main.services;
+
+// Orderings supported by the paged application listing
+public enum ApplicationSortKey {
+    STATUS,
+    FLAT_TYPE,
+    SUBMISSION_TIME
+}
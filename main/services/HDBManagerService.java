@@ -1,39 +1,55 @@
 package main.services;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 
 import main.models.*;
+import main.util.AdmissionQueue;
+import main.util.IntSnapshotList;
+import main.util.Page;
+import main.util.SlidingTopK;
 
 public class HDBManagerService {
 
     // Create a new project
-    public static boolean createProject(HDBManager manager, String name, String neighborhood, Date startDate,
-            Date endDate, ArrayList<String> flatTypes, int twoRoomUnits, int threeRoomUnits) {
-        ArrayList<BTOProject> existingProjects = manager.getProjects();
+    // units.get(i) is the number of units of flatTypes.get(i)
+    public static boolean createProject(HDBManager manager, String name, String neighborhood, int startDay,
+            int endDay, List<String> flatTypes, List<Integer> units) {
+        List<BTOProject> existingProjects = manager.getProjects();
 
         for (BTOProject project : existingProjects) {
-            // Fix: use getter methods assuming start/endDate are private
-            if (startDate.before(project.getEndDate()) && endDate.after(project.getStartDate())) {
+            if (startDay < project.getEndDay() && endDay > project.getStartDay()) {
                 return false; // Overlap found
             }
         }
 
-        BTOProject newProject = new BTOProject(manager, name, neighborhood, startDate, endDate, flatTypes, twoRoomUnits,
-                threeRoomUnits, 10);
+        BTOProject newProject = new BTOProject(manager, name, neighborhood, startDay, endDay, 10);
+        for (int i = 0; i < flatTypes.size(); i++) {
+            newProject.addFlatType(flatTypes.get(i), units.get(i), 0);
+        }
         ProjectRepository.addProject(newProject);
         manager.addProject(newProject);
         return true;
     }
 
     // View all projects
-    public static ArrayList<BTOProject> viewAllProjects() {
+    public static List<BTOProject> viewAllProjects() {
         return ProjectRepository.getAllProjects();
     }
 
+    // View one page of all projects
+    public static Page<BTOProject> viewAllProjects(int cursor, int pageSize) {
+        return Page.of(ProjectRepository.getAllProjects(), cursor, pageSize);
+    }
+
+    // Autocomplete over project names and neighborhoods, limited to the given projects
+    public static List<BTOProject> suggestProjects(String prefix, int limit, Collection<BTOProject> within) {
+        return ProjectCatalogue.complete(prefix, limit, CataloguePredicate.among(within));
+    }
+
     // View manager's own projects
-    public static ArrayList<BTOProject> viewOwnProjects(HDBManager manager) {
+    public static List<BTOProject> viewOwnProjects(HDBManager manager) {
         return manager.getProjects();
     }
 
@@ -44,17 +60,21 @@ public class HDBManagerService {
         }
     }
 
-    // Edit a BTO project
-    public static void editBTOProject(HDBManager manager, BTOProject project, String newName, String newNeighborhood,
-            Date newStartDate, Date newEndDate, ArrayList<String> flatTypes, int newTwoRoomUnits,
-            int newThreeRoomUnits) {
+    // Edit a BTO project, provided it is still at the version the edit was based on;
+    // throws ProjectConflictException, having changed nothing, if it is not
+    public static void editBTOProject(HDBManager manager, BTOProject project, long expectedVersion, String newName,
+            String newNeighborhood, int newStartDay, int newEndDay, List<Integer> newUnits) {
         if (project.getManager().equals(manager)) {
-            project.setProjectName(newName);
-            project.setNeighborhood(newNeighborhood);
-            project.setStartDate(newStartDate);
-            project.setEndDate(newEndDate);
-            project.setTwoRoomUnitsAvailable(newTwoRoomUnits);
-            project.setThreeRoomUnitsAvailable(newThreeRoomUnits);
+            Transaction.run(project, tx -> {
+                tx.expectVersion(project, expectedVersion);
+                tx.setDetails(project, newName, newNeighborhood, newStartDay, newEndDay);
+                // newUnits follows the order of project.getFlatTypes()
+                List<String> flatTypes = project.getFlatTypes();
+                for (int i = 0; i < flatTypes.size() && i < newUnits.size(); i++) {
+                    tx.setUnits(project, FlatTypeRegistry.ordinalOf(flatTypes.get(i)), newUnits.get(i));
+                }
+                return null;
+            });
         }
     }
 
@@ -66,91 +86,114 @@ public class HDBManagerService {
         }
     }
 
-    // Officer registration
-    public static boolean handleOfficerRegistration(HDBManager manager, BTOProject project, HDBOfficer officer) {
-        if (!project.getManager().equals(manager)) {
+    // Handle BTO application approval: the status change and the unit it takes happen together
+    public static boolean handleBTOApplication(HDBManager manager, Application application) {
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
+        if (project == null || !project.getManager().equals(manager)) {
             return false;
         }
-        if (project.getHDBOfficers().size() < project.getMaxOfficers()) {
-            project.getHDBOfficers().add(officer);
+
+        return Transaction.run(project, tx -> {
+            if (!"Pending".equalsIgnoreCase(application.getStatus()) || !tx.allocateUnit(application)) {
+                return false;
+            }
+            tx.setStatus(application, "Successful");
             return true;
-        }
-        return false;
+        });
     }
 
-    // Handle BTO application approval
-    public static boolean handleBTOApplication(HDBManager manager, Application application) {
-        String projectName = application.getProjectName();
-        ArrayList<BTOProject> all = ProjectRepository.getAllProjects();
-
-        for (BTOProject project : all) {
-            if (project.getProjectName().equalsIgnoreCase(projectName)) {
-                if (!project.getManager().equals(manager)) {
-                    return false;
-                }
+    // Reject a pending or successful application, returning its unit if it holds one
+    public static boolean rejectApplication(HDBManager manager, Application application) {
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
+        if (project == null || !project.getManager().equals(manager)) {
+            return false;
+        }
 
-                String flatType = application.getFlatType();
-                int available = project.getUnits(flatType);
-                if (available > 0) {
-                    // Assume update status and reduce count happens elsewhere
-                    return true;
-                }
+        return Transaction.run(project, tx -> {
+            String status = application.getStatus();
+            if (!"Pending".equalsIgnoreCase(status) && !"Successful".equalsIgnoreCase(status)) {
+                return false;
             }
-        }
-        return false;
+            tx.releaseUnit(application);
+            tx.setStatus(application, "Unsuccessful");
+            return true;
+        });
     }
 
     // Handle withdrawal request
     public static void handleWithdrawal(HDBManager manager, Application application) {
-        String projectName = application.getProjectName();
-        ArrayList<BTOProject> all = ProjectRepository.getAllProjects();
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
+
+        if (project != null && project.getManager().equals(manager)) {
+            Transaction.run(project, tx -> {
+                tx.releaseUnit(application);
+                tx.setStatus(application, "Withdrawn");
+                return null;
+            });
+        }
+    }
 
-        for (BTOProject project : all) {
-            if (project.getManager().equals(manager) && project.getProjectName().equalsIgnoreCase(projectName)) {
-                String status = application.getStatus();
+    // One booked application in a booking report
+    public static final class Booking {
+        private final Applicant applicant;
+        private final String flatType;
+        private final String projectName;
 
-                if ("Successful".equalsIgnoreCase(status) || "Booked".equalsIgnoreCase(status)) {
-                    String flatType = application.getFlatType();
-                    int current = project.getUnits(flatType);
-                    project.setUnits(flatType, current + 1);
-                }
+        Booking(Applicant applicant, String flatType, String projectName) {
+            this.applicant = applicant;
+            this.flatType = flatType;
+            this.projectName = projectName;
+        }
 
-                application.setStatus("Withdrawn");
-            }
+        public Applicant getApplicant() {
+            return applicant;
+        }
+
+        public String getFlatType() {
+            return flatType;
+        }
+
+        public String getProjectName() {
+            return projectName;
         }
     }
 
-    // Generate booking report based on 2-room or 3-room
-    public static void bookingReport(HDBManager manager, String filter) {
-        ArrayList<BTOProject> all = manager.getProjects();
+    // Generate booking report for one flat type, as of one point in time; bookings made
+    // while the report runs neither block on it nor show up half-way through
+    public static List<Booking> bookingReport(HDBManager manager, String filter) {
+        List<BTOProject> all = manager.getProjects();
+        ApplicationStore.Snapshot applications = ApplicationStore.snapshot();
+
+        int booked = ApplicationStore.statusOrdinal("Booked");
+        int flatType = ApplicationStore.flatTypeOrdinal(filter);
 
+        // scan the status and flat-type columns; only matching rows are materialized
+        List<Booking> bookings = new ArrayList<>();
         for (BTOProject project : all) {
-            for (Application application : project.getApplications()) {
-                if ("Booked".equalsIgnoreCase(application.getStatus())
-                        && application.getFlatType().equalsIgnoreCase(filter)) {
-
-                    System.out.println("Applicant: " + application.getApplicant().getNRIC()
-                            + ", Flat type: " + application.getFlatType()
-                            + ", Project name: " + project.getProjectName()
-                            + ", Age: " + application.getApplicant().getAge()
-                            + ", Marital status: " + application.getApplicant().getMaritalStatus());
+            IntSnapshotList.View rows = project.getApplicationRows(applications);
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (applications.getStatusOrdinal(row) == booked
+                        && applications.getFlatTypeOrdinal(row) == flatType) {
+                    Applicant applicant = (Applicant) UserRepository.getUserByIndex(applications.getApplicantIndex(row));
+                    bookings.add(new Booking(applicant, applications.getFlatType(row), project.getProjectName()));
                 }
             }
         }
+        return bookings;
     }
 
+    // Officers who registered for this project, in the order they registered
     public static List<HDBOfficer> viewPendingOfficerRegistrations(HDBManager manager, BTOProject project) {
-        List<HDBOfficer> pendingOfficers = new ArrayList<>();
-        // Find officers who aren't handling a project yet
-        for (User user : UserRepository.getAllUsers()) {
-            if (user instanceof HDBOfficer) {
-                HDBOfficer officer = (HDBOfficer) user;
-                if (!officer.isHandlingProject()) {
-                    pendingOfficers.add(officer);
-                }
-            }
+        if (!project.getManager().equals(manager)) {
+            return new ArrayList<>();
         }
-        return pendingOfficers;
+        return OfficerRegistrationRepository.getPending(project);
+    }
+
+    // Officers not handling any project
+    public static List<HDBOfficer> viewUnassignedOfficers() {
+        return OfficerRegistrationRepository.getUnassignedOfficers();
     }
 
     public static boolean approveOfficerRegistration(HDBManager manager, BTOProject project, HDBOfficer officer) {
@@ -158,105 +201,201 @@ public class HDBManagerService {
         if (!project.getManager().equals(manager)) {
             return false;
         }
-
-        // Check if project has available slots
-        if (project.getHDBOfficers().size() >= project.getMaxOfficers()) {
-            return false;
-        }
-
-        // Assign officer to project
-        project.getHDBOfficers().add(officer);
-        officer.assignToProject(project.getProjectName());
-        return true;
+        // Fails if the registration is gone or every officer slot is taken
+        return OfficerRegistrationRepository.approve(project, officer);
     }
 
     public static boolean rejectOfficerRegistration(HDBManager manager, BTOProject project, HDBOfficer officer) {
-        return true;
+        if (!project.getManager().equals(manager)) {
+            return false;
+        }
+        return OfficerRegistrationRepository.reject(project, officer);
     }
 
     public static boolean approveWithdrawalRequest(HDBManager manager, Application application) {
         // Check if manager is in charge of the project
-        BTOProject project = null;
-        for (BTOProject p : ProjectRepository.getAllProjects()) {
-            if (p.getProjectName().equals(application.getProjectName()) && p.getManager().equals(manager)) {
-                project = p;
-                break;
-            }
-        }
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
 
-        if (project == null) {
+        if (project == null || !project.getManager().equals(manager)) {
             return false; // Manager isn't in charge of this project
         }
 
-        // Process withdrawal
-        if ("Withdrawal Requested".equals(application.getStatus())) {
-            application.setStatus("Withdrawn");
-
-            // If the application was previously approved, return the unit to available pool
-            if ("Successful".equals(application.getStatus())) {
-                String flatType = application.getFlatType();
-                int currentUnits = project.getUnits(flatType);
-                project.setUnits(flatType, currentUnits + 1);
+        // Process withdrawal; an application that was approved returns its unit to the pool
+        return Transaction.run(project, tx -> {
+            if (!"Withdrawal Requested".equals(application.getStatus())) {
+                return false;
             }
-
+            tx.releaseUnit(application);
+            tx.setStatus(application, "Withdrawn");
             return true;
-        }
-
-        return false;
+        });
     }
 
     public static boolean rejectWithdrawalRequest(HDBManager manager, Application application) {
         // Check if manager is in charge of the project
-        BTOProject project = null;
-        for (BTOProject p : ProjectRepository.getAllProjects()) {
-            if (p.getProjectName().equals(application.getProjectName()) && p.getManager().equals(manager)) {
-                project = p;
-                break;
-            }
-        }
+        BTOProject project = ProjectRepository.getProjectById(application.getProjectId());
 
-        if (project == null) {
+        if (project == null || !project.getManager().equals(manager)) {
             return false; // Manager isn't in charge of this project
         }
 
-        // Reject withdrawal by returning status to previous status
-        if ("Withdrawal Requested".equals(application.getStatus())) {
-            // We don't know the previous status, so we'll set it to "Pending" again
-            application.setStatus("Pending");
+        // Reject withdrawal; an application still holding a unit had been approved
+        return Transaction.run(project, tx -> {
+            if (!"Withdrawal Requested".equals(application.getStatus())) {
+                return false;
+            }
+            tx.setStatus(application, application.holdsUnit() ? "Successful" : "Pending");
             return true;
-        }
-
-        return false;
+        });
     }
     public static List<Enquiry> viewAllEnquiries() {
         return EnquiryRepository.getAllEnquiries();
     }
+
+    public static Page<Enquiry> viewAllEnquiries(int cursor, int pageSize) {
+        return EnquiryRepository.getAllEnquiries(cursor, pageSize);
+    }
     
-    public static List<Enquiry> viewProjectEnquiries(HDBManager manager, String projectName) {
-        List<Enquiry> projectEnquiries = new ArrayList<>();
-        for (Enquiry enquiry : EnquiryRepository.getAllEnquiries()) {
-            if (enquiry.getProjectName().equals(projectName)) {
-                projectEnquiries.add(enquiry);
+    public static List<Enquiry> viewProjectEnquiries(HDBManager manager, int projectId) {
+        return new ArrayList<>(EnquiryRepository.getProjectEnquiries(projectId));
+    }
+
+    public static Page<Enquiry> viewProjectEnquiries(HDBManager manager, int projectId, int cursor, int pageSize) {
+        return EnquiryRepository.getProjectEnquiries(projectId, cursor, pageSize);
+    }
+
+    // View one page of a project's applications in the requested order.
+    // Submission order is the stored order, so that page is cut directly; status and flat type
+    // are small fixed sets, so those orders are a stable bucket pass over the ordinal columns.
+    // The page is cut from one snapshot, so concurrent approvals cannot move rows between buckets mid-pass.
+    public static Page<Application> viewApplications(BTOProject project, int cursor, int pageSize,
+            ApplicationSortKey sortKey) {
+        ApplicationStore.Snapshot applications = ApplicationStore.snapshot();
+        IntSnapshotList.View rows = project.getApplicationRows(applications);
+        int total = rows.size();
+        int from = Math.max(0, Math.min(cursor, total));
+        int to = Math.min(total, from + Math.max(1, pageSize));
+        List<Application> items = new ArrayList<>(to - from);
+
+        if (sortKey == ApplicationSortKey.SUBMISSION_TIME) {
+            for (int i = from; i < to; i++) {
+                items.add(Application.fromRow(rows.get(i)));
             }
+            return new Page<>(items, from, total);
         }
-        return projectEnquiries;
+
+        // flat types are registered in display order, so their ordinal is their rank
+        boolean byStatus = sortKey == ApplicationSortKey.STATUS;
+        int buckets = byStatus ? STATUS_RANK.length : FlatTypeRegistry.count();
+        int position = 0;
+        for (int bucket = 0; bucket < buckets && position < to; bucket++) {
+            for (int i = 0; i < total && position < to; i++) {
+                int row = rows.get(i);
+                int rank = byStatus
+                        ? STATUS_RANK[applications.getStatusOrdinal(row)]
+                        : applications.getFlatTypeOrdinal(row);
+                if (rank != bucket) {
+                    continue;
+                }
+                if (position >= from) {
+                    items.add(Application.fromRow(row));
+                }
+                position++;
+            }
+        }
+        return new Page<>(items, from, total);
+    }
+
+    // A project's applications in one status, oldest first, filtered from one snapshot of its rows
+    public static List<Application> viewApplicationsWithStatus(BTOProject project, String status) {
+        int ordinal = ApplicationStore.statusOrdinal(status);
+        ApplicationStore.Snapshot applications = ApplicationStore.snapshot();
+        IntSnapshotList.View rows = project.getApplicationRows(applications);
+        List<Application> items = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            if (applications.getStatusOrdinal(row) == ordinal) {
+                items.add(Application.fromRow(row));
+            }
+        }
+        return items;
+    }
+
+    // Display rank of each status ordinal: Pending, Withdrawal Requested, Successful, Booked, Unsuccessful, Withdrawn
+    private static final int[] STATUS_RANK = rankOf(new String[] {
+        "Pending", "Withdrawal Requested", "Successful", "Booked", "Unsuccessful", "Withdrawn"
+    });
+
+    private static int[] rankOf(String[] order) {
+        int[] rank = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            rank[ApplicationStore.statusOrdinal(order[i])] = i;
+        }
+        return rank;
+    }
+    
+    // Projects with the most applications submitted over the last windowMillis, busiest first
+    public static List<SlidingTopK.Count> viewApplicationHotSpots(int limit, long windowMillis) {
+        return ProjectActivity.topByApplications(limit, windowMillis);
+    }
+
+    public static List<SlidingTopK.Count> viewEnquiryHotSpots(int limit, long windowMillis) {
+        return ProjectActivity.topByEnquiries(limit, windowMillis);
+    }
+
+    // Decision and reply wait times and backlog for one project, or every project if projectId is 0
+    public static ServiceLevels.Summary viewWaitTimes(int projectId) {
+        return ServiceLevels.summarize(projectId);
+    }
+
+    // Admission control queues for applications and enquiries; projectId 0 means all projects
+    public static AdmissionQueue.Stats viewApplicationAdmission(int projectId) {
+        return Admission.applicationStats(projectId);
+    }
+
+    public static AdmissionQueue.Stats viewEnquiryAdmission(int projectId) {
+        return Admission.enquiryStats(projectId);
+    }
+
+    // Ranked keyword/"phrase" search over enquiry messages and replies; projectId 0 means all projects
+    public static List<Enquiry> searchEnquiries(String query, int projectId, EnquirySearchIndex.StatusFilter status,
+            int limit) {
+        return EnquirySearchIndex.search(query, projectId, status, limit);
     }
     
     public static boolean replyToEnquiry(HDBManager manager, Enquiry enquiry, String reply) {
         // Check if manager is in charge of this project
-        boolean isManagerInCharge = false;
-        for (BTOProject project : manager.getProjects()) {
-            if (project.getProjectName().equals(enquiry.getProjectName())) {
-                isManagerInCharge = true;
-                break;
-            }
-        }
-        
-        if (!isManagerInCharge) {
+        BTOProject project = ProjectRepository.getProjectById(enquiry.getProjectId());
+        if (project == null || !project.getManager().equals(manager)) {
             return false;
         }
         
         enquiry.setReply(reply);
         return true;
     }
+
+    // Unanswered enquiries of the same project that ask nearly the same question as this one
+    public static List<Enquiry> viewSimilarUnansweredEnquiries(Enquiry enquiry) {
+        List<Enquiry> similar = new ArrayList<>();
+        for (Enquiry other : EnquiryClusterIndex.getCluster(enquiry)) {
+            if (other.getEnquiryId() != enquiry.getEnquiryId() && !other.hasReply()
+                    && other.getProjectId() == enquiry.getProjectId()) {
+                similar.add(other);
+            }
+        }
+        return similar;
+    }
+
+    // Apply one reply to an enquiry and every unanswered near-duplicate of it; returns how many were answered
+    public static int replyToEnquiryCluster(HDBManager manager, Enquiry enquiry, String reply) {
+        if (!replyToEnquiry(manager, enquiry, reply)) {
+            return 0;
+        }
+        int answered = 1;
+        for (Enquiry other : viewSimilarUnansweredEnquiries(enquiry)) {
+            other.setReply(reply);
+            answered++;
+        }
+        return answered;
+    }
 }
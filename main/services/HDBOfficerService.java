@@ -1,36 +1,57 @@
 package main.services;
 
+import main.models.BTOProject;
 import main.models.HDBOfficer;
+import main.models.OfficerRegistrationRepository;
+import main.models.ProjectRepository;
+import main.util.Log;
 
 public class HDBOfficerService {
 
-    public void assignToProject(HDBOfficer officer, String projectId) {
+    public boolean assignToProject(HDBOfficer officer, int projectId) {
         if (officer.isHandlingProject()) {
-            System.out.println("Officer already handling a project.");
-        } else {
-            officer.assignToProject(projectId);
-            System.out.println("Officer assigned to project: " + projectId);
+            return false;
         }
+        officer.assignToProject(projectId);
+        Log.info("officer.assigned", "officer", officer.getNRIC(), "project", projectId);
+        return true;
     }
 
-    public void removeFromProject(HDBOfficer officer) {
+    public OfficerRegistrationRepository.Result registerForProject(HDBOfficer officer, BTOProject project) {
+        OfficerRegistrationRepository.Result result = OfficerRegistrationRepository.submit(officer, project);
+        Log.info("officer.registration", "officer", officer.getNRIC(), "project", project.getProjectId(),
+                "result", result);
+        return result;
+    }
+
+    // Name of the project the officer's pending registration is for, or null
+    public String getPendingRegistration(HDBOfficer officer) {
+        BTOProject project = ProjectRepository.getProjectById(OfficerRegistrationRepository.getPendingProjectId(officer));
+        return project != null ? project.getProjectName() : null;
+    }
+
+    public boolean removeFromProject(HDBOfficer officer) {
         if (!officer.isHandlingProject()) {
-            System.out.println("Officer is not currently handling a project.");
-        } else {
-            String oldProject = officer.getHandlingProjectId();
-            officer.removeFromProject();
-            System.out.println("Officer removed from project: " + oldProject);
+            return false;
+        }
+        int projectId = officer.getHandlingProjectId();
+        BTOProject project = ProjectRepository.getProjectById(projectId);
+        if (project != null) {
+            project.removeOfficer(officer);
         }
+        officer.removeFromProject();
+        Log.info("officer.removed", "officer", officer.getNRIC(), "project", projectId);
+        return true;
     }
 
     // Placeholder methods for expansion
     public void bookFlat(String applicantNric, String flatType) {
-        System.out.println("Flat of type " + flatType + " booked for applicant " + applicantNric);
+        Log.info("flat.booked", "nric", applicantNric, "flatType", flatType);
         // Eventually link to Project/Applicant/Flat service
     }
 
     public void replyToEnquiry(String enquiryId, String message) {
-        System.out.println("Replied to enquiry " + enquiryId + ": " + message);
+        Log.info("enquiry.replied", "enquiry", enquiryId);
         // Eventually update enquiry records
     }
 }
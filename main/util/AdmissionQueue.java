@@ -0,0 +1,298 @@
+package main.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Admission control for work keyed by an int, such as a project ID. At most maxConcurrent
+ * callers hold a ticket at once, and at most perKeyConcurrent of them for one key. Callers
+ * that cannot start yet wait in a bounded queue for their key; the queues are served round
+ * robin, one caller per key in turn, so a burst on one key does not hold back the others.
+ *
+ * A caller is refused at once when its key's queue is full, and gives up when it has waited
+ * maxWaitMillis; either way the ticket says so and carries a hint of when to retry, worked
+ * out from the queue ahead and the recent time a ticket is held. Admitted work keeps its
+ * pace under overload, since the excess is turned away instead of piling up.
+ *
+ *   try (AdmissionQueue.Ticket ticket = queue.acquire(projectId)) {
+ *       if (ticket.isAdmitted()) { ... }
+ *   }
+ *
+ * Queue waits are kept per key in LatencyHistograms, in microseconds.
+ */
+public class AdmissionQueue {
+    private static final long MIN_RETRY_MILLIS = 100;
+
+    public enum Outcome { ADMITTED, QUEUE_FULL, TIMED_OUT }
+
+    private final int maxConcurrent;
+    private final int perKeyConcurrent;
+    private final int queueLimit;
+    private final long maxWaitNanos;
+
+    private final HashMap<Integer, KeyState> keys = new HashMap<>();
+    // keys with callers waiting, in the order they are next served
+    private final ArrayDeque<KeyState> ready = new ArrayDeque<>();
+    private int inFlight;
+    // moving average of how long a ticket is held
+    private double heldNanos;
+
+    /**
+     * @param maxConcurrent    tickets held at once over all keys
+     * @param perKeyConcurrent tickets held at once for one key
+     * @param queueLimit       callers that may wait for one key
+     * @param maxWaitMillis    longest a caller waits before giving up
+     */
+    public AdmissionQueue(int maxConcurrent, int perKeyConcurrent, int queueLimit, long maxWaitMillis) {
+        if (maxConcurrent <= 0 || perKeyConcurrent <= 0 || queueLimit < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Admission limits must be positive.");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.perKeyConcurrent = Math.min(perKeyConcurrent, maxConcurrent);
+        this.queueLimit = queueLimit;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    public final class Ticket implements AutoCloseable {
+        private final KeyState key;
+        private final Outcome outcome;
+        private final long retryAfterMillis;
+        private final long admittedAt;
+        private boolean released;
+
+        private Ticket(KeyState key, Outcome outcome, long retryAfterMillis, long admittedAt) {
+            this.key = key;
+            this.outcome = outcome;
+            this.retryAfterMillis = retryAfterMillis;
+            this.admittedAt = admittedAt;
+        }
+
+        public boolean isAdmitted() {
+            return outcome == Outcome.ADMITTED;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        // For a refused caller, roughly how long until a retry would be admitted; 0 if admitted
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        // Gives the slot to the next caller in line; does nothing for a refused ticket or a second call
+        @Override
+        public void close() {
+            if (isAdmitted()) {
+                release(this);
+            }
+        }
+    }
+
+    public static final class Stats {
+        private final int queued;
+        private final int inFlight;
+        private final long admitted;
+        private final long queueFull;
+        private final long timedOut;
+        private final LatencyHistogram waits;
+
+        Stats(int queued, int inFlight, long admitted, long queueFull, long timedOut, LatencyHistogram waits) {
+            this.queued = queued;
+            this.inFlight = inFlight;
+            this.admitted = admitted;
+            this.queueFull = queueFull;
+            this.timedOut = timedOut;
+            this.waits = waits;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        // Refused at once because the queue was full
+        public long getQueueFull() {
+            return queueFull;
+        }
+
+        // Gave up after waiting the longest allowed
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        // Time admitted callers spent queued, in microseconds; 0 for those admitted at once
+        public LatencyHistogram getWaitMicros() {
+            return waits;
+        }
+    }
+
+    // Waits for a ticket for the key; the ticket must be closed once the work is done
+    public Ticket acquire(int key) {
+        Waiter waiter;
+        KeyState state;
+        synchronized (this) {
+            state = state(key);
+            if (state.waiting.isEmpty() && canRun(state)) {
+                state.waits.record(0);
+                return admit(state);
+            }
+            if (state.waiting.size() >= queueLimit) {
+                state.queueFull++;
+                return new Ticket(state, Outcome.QUEUE_FULL, retryAfterMillis(state), 0);
+            }
+            waiter = new Waiter(Thread.currentThread(), System.nanoTime());
+            state.waiting.add(waiter);
+            if (!state.scheduled) {
+                state.scheduled = true;
+                ready.add(state);
+            }
+        }
+        long deadline = waiter.queuedAt + maxWaitNanos;
+        while (!waiter.granted) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        synchronized (this) {
+            if (waiter.granted) {
+                return new Ticket(state, Outcome.ADMITTED, 0, waiter.grantedAt);
+            }
+            state.waiting.remove(waiter);
+            if (state.waiting.isEmpty() && state.scheduled) {
+                state.scheduled = false;
+                ready.remove(state);
+            }
+            state.timedOut++;
+            return new Ticket(state, Outcome.TIMED_OUT, retryAfterMillis(state), 0);
+        }
+    }
+
+    public synchronized Stats stats(int key) {
+        KeyState state = keys.get(key);
+        return state == null ? new Stats(0, 0, 0, 0, 0, new LatencyHistogram()) : state.stats();
+    }
+
+    // Figures for every key together
+    public synchronized Stats stats() {
+        int queued = 0;
+        long admitted = 0;
+        long queueFull = 0;
+        long timedOut = 0;
+        LatencyHistogram waits = new LatencyHistogram();
+        for (KeyState state : keys.values()) {
+            queued += state.waiting.size();
+            admitted += state.admitted;
+            queueFull += state.queueFull;
+            timedOut += state.timedOut;
+            waits.merge(state.waits);
+        }
+        return new Stats(queued, inFlight, admitted, queueFull, timedOut, waits);
+    }
+
+    private KeyState state(int key) {
+        KeyState state = keys.get(key);
+        if (state == null) {
+            state = new KeyState();
+            keys.put(key, state);
+        }
+        return state;
+    }
+
+    private boolean canRun(KeyState state) {
+        return inFlight < maxConcurrent && state.inFlight < perKeyConcurrent;
+    }
+
+    private Ticket admit(KeyState state) {
+        inFlight++;
+        state.inFlight++;
+        state.admitted++;
+        return new Ticket(state, Outcome.ADMITTED, 0, System.nanoTime());
+    }
+
+    private synchronized void release(Ticket ticket) {
+        if (ticket.released) {
+            return;
+        }
+        ticket.released = true;
+        inFlight--;
+        ticket.key.inFlight--;
+        long held = System.nanoTime() - ticket.admittedAt;
+        heldNanos = heldNanos == 0 ? held : heldNanos * 0.9 + held * 0.1;
+        dispatch();
+    }
+
+    // Hands free slots to waiting callers, one per key in turn, skipping keys at their own limit
+    private void dispatch() {
+        int skipped = 0;
+        while (inFlight < maxConcurrent && skipped < ready.size()) {
+            KeyState state = ready.poll();
+            if (state.inFlight >= perKeyConcurrent) {
+                ready.add(state);
+                skipped++;
+                continue;
+            }
+            skipped = 0;
+            Waiter waiter = state.waiting.poll();
+            long now = System.nanoTime();
+            inFlight++;
+            state.inFlight++;
+            state.admitted++;
+            state.waits.record(TimeUnit.NANOSECONDS.toMicros(now - waiter.queuedAt));
+            waiter.grantedAt = now;
+            waiter.granted = true;
+            LockSupport.unpark(waiter.thread);
+            if (state.waiting.isEmpty()) {
+                state.scheduled = false;
+            } else {
+                ready.add(state);
+            }
+        }
+    }
+
+    // Time for the callers queued for the key to be served, at the key's share of the slots
+    private long retryAfterMillis(KeyState state) {
+        int busyKeys = Math.max(1, ready.size());
+        int share = Math.max(1, Math.min(perKeyConcurrent, maxConcurrent / busyKeys));
+        double held = heldNanos > 0 ? heldNanos : maxWaitNanos;
+        long estimate = TimeUnit.NANOSECONDS.toMillis((long) ((state.waiting.size() + 1) * held / share));
+        return Math.max(MIN_RETRY_MILLIS, estimate);
+    }
+
+    private static final class Waiter {
+        final Thread thread;
+        final long queuedAt;
+        long grantedAt;
+        volatile boolean granted;
+
+        Waiter(Thread thread, long queuedAt) {
+            this.thread = thread;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static final class KeyState {
+        final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        final LatencyHistogram waits = new LatencyHistogram();
+        int inFlight;
+        long admitted;
+        long queueFull;
+        long timedOut;
+        boolean scheduled;
+
+        Stats stats() {
+            return new Stats(waiting.size(), inFlight, admitted, queueFull, timedOut, waits.copy());
+        }
+    }
+}
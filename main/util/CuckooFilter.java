@@ -0,0 +1,229 @@
+package main.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An approximate set of long keys that supports deletes. mightContain never answers false for
+ * a key that was added and not removed, and answers true for an absent key about once in
+ * several thousand checks, so a "no" lets a caller skip the real lookup.
+ *
+ * Each key is a 16-bit fingerprint stored in one of two buckets of four, a bucket packed into
+ * one long. When both buckets are full, a path of fingerprints is moved to their other
+ * buckets to make room. The path is found first and then moved from its far end, each
+ * fingerprint written to its new slot before its old slot is reused. A move is bracketed by
+ * a sequence count (a seqlock): odd while fingerprints are moving, bumped again after, so a
+ * reader that may have looked at a fingerprint's two buckets on either side of its move
+ * looks again and can never miss a key. When no path is found the filter adds a table twice
+ * the size of the last, so it keeps accepting keys however many it was sized for.
+ *
+ * Reads take no lock. Writers are serialized on the filter. A key should be added once and
+ * removed at most once; removing a key that was never added may remove another's fingerprint.
+ */
+public class CuckooFilter {
+    private static final int SLOTS = 4;                // fingerprints per bucket
+    private static final int FINGERPRINT_BITS = 16;
+    private static final long FINGERPRINT_MASK = (1L << FINGERPRINT_BITS) - 1;
+    private static final int MAX_PATH = 128;
+    private static final int PATH_ATTEMPTS = 8;
+
+    private volatile Table[] tables;
+    // odd while a relocation is moving fingerprints; changes with every relocation
+    private volatile long relocations;
+
+    public CuckooFilter(int expectedKeys) {
+        tables = new Table[] { new Table(expectedKeys) };
+    }
+
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int fingerprint = fingerprint(hash);
+        while (true) {
+            long before = relocations;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait(); // a relocation is under way
+                continue;
+            }
+            for (Table table : tables) {
+                int first = (int) hash & table.mask;
+                if (table.holds(first, fingerprint) || table.holds(table.alternate(first, fingerprint), fingerprint)) {
+                    return true;
+                }
+            }
+            if (relocations == before) {
+                return false;
+            }
+        }
+    }
+
+    public synchronized void add(long key) {
+        long hash = mix(key);
+        int fingerprint = fingerprint(hash);
+        Table[] current = tables;
+        Table last = current[current.length - 1];
+        if (last.insert(hash, fingerprint, this)) {
+            return;
+        }
+        Table grown = new Table(last.capacity() * 2);
+        grown.insert(hash, fingerprint, this);
+        Table[] next = new Table[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = grown;
+        tables = next;
+    }
+
+    // Removes one copy of the key's fingerprint; false if none was there
+    public synchronized boolean remove(long key) {
+        long hash = mix(key);
+        int fingerprint = fingerprint(hash);
+        Table[] current = tables;
+        for (int t = current.length - 1; t >= 0; t--) {
+            Table table = current[t];
+            int first = (int) hash & table.mask;
+            if (table.clear(first, fingerprint) || table.clear(table.alternate(first, fingerprint), fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int fingerprint(long hash) {
+        int fingerprint = (int) ((hash >>> 40) & FINGERPRINT_MASK);
+        return fingerprint != 0 ? fingerprint : 1;  // 0 marks an empty slot
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Table {
+        private final AtomicLongArray buckets;
+        private final int mask;
+
+        Table(int expectedKeys) {
+            // about 90% full when it holds the expected keys
+            int wanted = Math.max(16, (int) Math.min(1 << 30, (long) (expectedKeys / (SLOTS * 0.9)) + 1));
+            int size = Integer.highestOneBit(wanted - 1) << 1;
+            buckets = new AtomicLongArray(size);
+            mask = size - 1;
+        }
+
+        int capacity() {
+            return buckets.length() * SLOTS;
+        }
+
+        // The other bucket a fingerprint may live in; applying it twice gives the first bucket back
+        int alternate(int bucket, int fingerprint) {
+            return (bucket ^ (int) mix(fingerprint)) & mask;
+        }
+
+        boolean holds(int bucket, int fingerprint) {
+            long slots = buckets.get(bucket);
+            for (int s = 0; s < SLOTS; s++) {
+                if (lane(slots, s) == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // owner's sequence count is bumped around any relocation; writers hold the owner's lock
+        boolean insert(long hash, int fingerprint, CuckooFilter owner) {
+            int first = (int) hash & mask;
+            int second = alternate(first, fingerprint);
+            if (place(first, fingerprint) || place(second, fingerprint)) {
+                return true;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int[] pathBuckets = new int[MAX_PATH];
+            int[] pathSlots = new int[MAX_PATH];
+            for (int attempt = 0; attempt < PATH_ATTEMPTS; attempt++) {
+                int length = findPath(random.nextBoolean() ? first : second, pathBuckets, pathSlots, random);
+                if (length > 0) {
+                    owner.relocations++;
+                    move(pathBuckets, pathSlots, length, fingerprint);
+                    owner.relocations++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Walks from the bucket, each step to the other bucket of a fingerprint in a full one,
+        // until a bucket has a free slot; returns the number of steps, or 0 if none was found.
+        // Only reads, so the table is unchanged until the whole path is known.
+        private int findPath(int bucket, int[] pathBuckets, int[] pathSlots, ThreadLocalRandom random) {
+            for (int step = 0; step < MAX_PATH; step++) {
+                int slot = random.nextInt(SLOTS);
+                for (int k = 0; k < step; k++) {
+                    if (pathBuckets[k] == bucket && pathSlots[k] == slot) {
+                        return 0;   // moving one slot twice would lose a fingerprint
+                    }
+                }
+                pathBuckets[step] = bucket;
+                pathSlots[step] = slot;
+                int victim = lane(buckets.get(bucket), slot);
+                bucket = alternate(bucket, victim);
+                if (freeSlot(buckets.get(bucket)) >= 0) {
+                    return step + 1;
+                }
+            }
+            return 0;
+        }
+
+        // Moves each fingerprint on the path one step on, from the far end back, then takes the first slot
+        private void move(int[] pathBuckets, int[] pathSlots, int length, int fingerprint) {
+            int lastBucket = pathBuckets[length - 1];
+            int lastVictim = lane(buckets.get(lastBucket), pathSlots[length - 1]);
+            place(alternate(lastBucket, lastVictim), lastVictim);
+            for (int k = length - 1; k > 0; k--) {
+                int victim = lane(buckets.get(pathBuckets[k - 1]), pathSlots[k - 1]);
+                setLane(pathBuckets[k], pathSlots[k], victim);
+            }
+            setLane(pathBuckets[0], pathSlots[0], fingerprint);
+        }
+
+        private boolean place(int bucket, int fingerprint) {
+            int slot = freeSlot(buckets.get(bucket));
+            if (slot < 0) {
+                return false;
+            }
+            setLane(bucket, slot, fingerprint);
+            return true;
+        }
+
+        boolean clear(int bucket, int fingerprint) {
+            long slots = buckets.get(bucket);
+            for (int s = 0; s < SLOTS; s++) {
+                if (lane(slots, s) == fingerprint) {
+                    setLane(bucket, s, 0);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void setLane(int bucket, int slot, int fingerprint) {
+            int shift = slot * FINGERPRINT_BITS;
+            long slots = buckets.get(bucket);
+            buckets.set(bucket, (slots & ~(FINGERPRINT_MASK << shift)) | ((long) fingerprint << shift));
+        }
+
+        private static int freeSlot(long slots) {
+            for (int s = 0; s < SLOTS; s++) {
+                if (lane(slots, s) == 0) {
+                    return s;
+                }
+            }
+            return -1;
+        }
+
+        private static int lane(long slots, int slot) {
+            return (int) ((slots >>> (slot * FINGERPRINT_BITS)) & FINGERPRINT_MASK);
+        }
+    }
+}
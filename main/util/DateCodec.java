@@ -0,0 +1,118 @@
+package main.util;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+
+/**
+ * Dates as epoch-day ints (days since 1970-01-01), the form projects store them in.
+ * The fixed dd/MM/yyyy layout is parsed and validated in place without allocating;
+ * anything else (e.g. 5/3/2025) falls back to an immutable java.time formatter.
+ * Everything here is stateless, so it is safe to share between threads.
+ */
+public final class DateCodec {
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    private static final DateTimeFormatter LENIENT_LAYOUT =
+            DateTimeFormatter.ofPattern("d/M/uuuu").withResolverStyle(ResolverStyle.STRICT);
+    private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private DateCodec() {
+    }
+
+    // Epoch day of a dd/MM/yyyy date, or INVALID
+    public static int parse(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start == 10 && text.charAt(start + 2) == '/' && text.charAt(start + 5) == '/') {
+            int day = digits(text, start, 2);
+            int month = digits(text, start + 3, 2);
+            int year = digits(text, start + 6, 4);
+            if (day < 0 || month < 0 || year < 0) {
+                return INVALID;
+            }
+            return isValid(year, month, day) ? toEpochDay(year, month, day) : INVALID;
+        }
+        try {
+            return (int) LocalDate.parse(text.subSequence(start, end), LENIENT_LAYOUT).toEpochDay();
+        } catch (DateTimeException e) {
+            return INVALID;
+        }
+    }
+
+    // dd/MM/yyyy text of an epoch day
+    public static String format(int epochDay) {
+        char[] out = new char[10];
+        // civil-from-days (H. Hinnant), with eras of 400 years
+        long z = (long) epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        out[0] = (char) ('0' + day / 10);
+        out[1] = (char) ('0' + day % 10);
+        out[2] = '/';
+        out[3] = (char) ('0' + month / 10);
+        out[4] = (char) ('0' + month % 10);
+        out[5] = '/';
+        out[6] = (char) ('0' + year / 1000 % 10);
+        out[7] = (char) ('0' + year / 100 % 10);
+        out[8] = (char) ('0' + year / 10 % 10);
+        out[9] = (char) ('0' + year % 10);
+        return new String(out);
+    }
+
+    public static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    public static LocalDate toLocalDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static boolean isValid(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        int length = month == 2 && leap ? 29 : DAYS_IN_MONTH[month - 1];
+        return day <= length;
+    }
+
+    // days-from-civil (H. Hinnant)
+    private static int toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,197 @@
+package main.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A fixed ring of preallocated event slots, published to by any number of threads and read
+ * by consumers that each run on their own thread. A publisher claims the next sequence,
+ * fills that slot in place and publishes it, so nothing is allocated per event:
+ *
+ *   long sequence = ring.claim();
+ *   ring.slot(sequence).set(...);
+ *   ring.publish(sequence);
+ *
+ * A consumer handles every event available to it in one batch and is told which event
+ * ends the batch, so it can do expensive work such as a disk commit once per batch.
+ *
+ * A publisher that would lap the slowest consumer waits for it, so no event is dropped.
+ * Consumers are added before start(); stop() lets each one finish what was published.
+ */
+public class EventRing<E> {
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public interface Handler<E> {
+        void onEvent(E event, long sequence, boolean endOfBatch) throws Exception;
+    }
+
+    private final E[] slots;
+    private final int mask;
+    // sequence published in each slot, so a consumer knows a claimed slot is filled
+    private final AtomicLongArray available;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final List<Subscription<E>> subscriptions = new ArrayList<>();
+    private volatile boolean started;
+    private volatile boolean stopping;
+
+    @SuppressWarnings("unchecked")
+    public EventRing(int size, Supplier<E> factory) {
+        int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        slots = (E[]) new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+        }
+        mask = capacity - 1;
+        available = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            available.set(i, -1);
+        }
+    }
+
+    public synchronized Subscription<E> subscribe(String name, Handler<E> handler) {
+        if (started) {
+            throw new IllegalStateException("Consumers must be added before the ring starts.");
+        }
+        Subscription<E> subscription = new Subscription<>(this, name, handler);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (Subscription<E> subscription : subscriptions) {
+            subscription.thread.start();
+        }
+    }
+
+    public boolean isStarted() {
+        return started && !stopping;
+    }
+
+    // Claims the next sequence, once its slot has been handled by every consumer; it must be published
+    public long claim() {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+        long waitNanos = 1000;
+        while (wrapPoint > slowestConsumer()) {
+            LockSupport.parkNanos(waitNanos);
+            waitNanos = Math.min(waitNanos * 2, MAX_WAIT_NANOS);
+        }
+        return sequence;
+    }
+
+    // The slot for a claimed sequence, to be filled before it is published
+    public E slot(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    // Makes a claimed and filled slot visible to consumers
+    public void publish(long sequence) {
+        available.set((int) (sequence & mask), sequence);
+        for (Subscription<E> subscription : subscriptions) {
+            if (subscription.idle) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+    }
+
+    // Lets every consumer handle what was published, then ends their threads
+    public void stop() {
+        synchronized (this) {
+            if (!started || stopping) {
+                return;
+            }
+        }
+        for (Subscription<E> subscription : subscriptions) {
+            subscription.awaitCaughtUp();
+        }
+        stopping = true;
+        for (Subscription<E> subscription : subscriptions) {
+            LockSupport.unpark(subscription.thread);
+            try {
+                subscription.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long slowestConsumer() {
+        long slowest = Long.MAX_VALUE;
+        for (Subscription<E> subscription : subscriptions) {
+            if (subscription.thread.isAlive()) {
+                slowest = Math.min(slowest, subscription.sequence);
+            }
+        }
+        return slowest == Long.MAX_VALUE ? claimed.get() : slowest;
+    }
+
+    public static final class Subscription<E> {
+        private final EventRing<E> ring;
+        private final Handler<E> handler;
+        private final Thread thread;
+        // last sequence handled
+        private volatile long sequence = -1;
+        private volatile boolean idle;
+
+        private Subscription(EventRing<E> ring, String name, Handler<E> handler) {
+            this.ring = ring;
+            this.handler = handler;
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        // Waits until this consumer has handled everything published before the call
+        public void awaitCaughtUp() {
+            long target = ring.claimed.get();
+            long waitNanos = 1000;
+            while (sequence < target && thread.isAlive()) {
+                LockSupport.parkNanos(waitNanos);
+                waitNanos = Math.min(waitNanos * 2, MAX_WAIT_NANOS);
+            }
+        }
+
+        private void run() {
+            long waitNanos = 1000;
+            while (true) {
+                long next = sequence + 1;
+                long last = next - 1;
+                // the batch runs to the last slot published without a gap
+                while (last - next + 1 < ring.slots.length
+                        && ring.available.get((int) ((last + 1) & ring.mask)) == last + 1) {
+                    last++;
+                }
+                if (last < next) {
+                    if (ring.stopping) {
+                        return;
+                    }
+                    idle = true;
+                    if (ring.available.get((int) (next & ring.mask)) != next) {
+                        LockSupport.parkNanos(waitNanos);
+                        waitNanos = Math.min(waitNanos * 2, MAX_WAIT_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+                waitNanos = 1000;
+                for (long s = next; s <= last; s++) {
+                    try {
+                        handler.onEvent(ring.slots[(int) (s & ring.mask)], s, s == last);
+                    } catch (Exception e) {
+                        // straight to stderr: Log itself runs on a ring and must not wait on its own writer
+                        System.err.println("Event handler " + thread.getName() + " failed: " + e.getMessage());
+                    }
+                }
+                sequence = last;
+            }
+        }
+    }
+}
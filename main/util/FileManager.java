@@ -1,8 +1,13 @@
 package main.util;
 
 import java.io.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import main.models.*;
 
@@ -12,7 +17,6 @@ public class FileManager {
     private static final String OFFICER_FILE = "./data/OfficerList.csv";
     private static final String PROJECT_FILE = "./data/ProjectList.csv";
     private static final String CSV_DELIMITER = ";";
-    private static SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
 
     /**
      * Loads all applicants from the CSV file
@@ -20,15 +24,23 @@ public class FileManager {
     public static List<Applicant> loadApplicants() {
         List<Applicant> applicants = new ArrayList<>();
         
+        BitSet invalidRows = findInvalidNricRows(APPLICANT_FILE);
+        
         try (BufferedReader reader = new BufferedReader(new FileReader(APPLICANT_FILE))) {
             String line;
             boolean isFirstLine = true;
+            int lineNumber = -1;
             
             while ((line = reader.readLine()) != null) {
+                lineNumber++;
                 if (isFirstLine) {
                     isFirstLine = false;
                     continue; // Skip header line
                 }
+                if (invalidRows.get(lineNumber)) {
+                    Log.warn("load.skipped", "file", "applicants", "line", lineNumber + 1, "reason", "invalid NRIC");
+                    continue;
+                }
                 
                 String[] data = line.split(CSV_DELIMITER);
                 if (data.length >= 5) {
@@ -43,7 +55,7 @@ public class FileManager {
                 }
             }
         } catch (IOException e) {
-            System.out.println("Error loading applicants: " + e.getMessage());
+            Log.error("load.failed", "file", "applicants", "error", e);
         }
         
         return applicants;
@@ -55,15 +67,23 @@ public class FileManager {
     public static List<HDBManager> loadManagers() {
         List<HDBManager> managers = new ArrayList<>();
         
+        BitSet invalidRows = findInvalidNricRows(MANAGER_FILE);
+        
         try (BufferedReader reader = new BufferedReader(new FileReader(MANAGER_FILE))) {
             String line;
             boolean isFirstLine = true;
+            int lineNumber = -1;
             
             while ((line = reader.readLine()) != null) {
+                lineNumber++;
                 if (isFirstLine) {
                     isFirstLine = false;
                     continue; // Skip header line
                 }
+                if (invalidRows.get(lineNumber)) {
+                    Log.warn("load.skipped", "file", "managers", "line", lineNumber + 1, "reason", "invalid NRIC");
+                    continue;
+                }
                 
                 String[] data = line.split(CSV_DELIMITER);
                 if (data.length >= 5) {
@@ -78,7 +98,7 @@ public class FileManager {
                 }
             }
         } catch (IOException e) {
-            System.out.println("Error loading managers: " + e.getMessage());
+            Log.error("load.failed", "file", "managers", "error", e);
         }
         
         return managers;
@@ -90,15 +110,23 @@ public class FileManager {
     public static List<HDBOfficer> loadOfficers() {
         List<HDBOfficer> officers = new ArrayList<>();
         
+        BitSet invalidRows = findInvalidNricRows(OFFICER_FILE);
+        
         try (BufferedReader reader = new BufferedReader(new FileReader(OFFICER_FILE))) {
             String line;
             boolean isFirstLine = true;
+            int lineNumber = -1;
             
             while ((line = reader.readLine()) != null) {
+                lineNumber++;
                 if (isFirstLine) {
                     isFirstLine = false;
                     continue; // Skip header line
                 }
+                if (invalidRows.get(lineNumber)) {
+                    Log.warn("load.skipped", "file", "officers", "line", lineNumber + 1, "reason", "invalid NRIC");
+                    continue;
+                }
                 
                 String[] data = line.split(CSV_DELIMITER);
                 if (data.length >= 5) {
@@ -113,16 +141,27 @@ public class FileManager {
                 }
             }
         } catch (IOException e) {
-            System.out.println("Error loading officers: " + e.getMessage());
+            Log.error("load.failed", "file", "officers", "error", e);
         }
         
         return officers;
     }
     
+    /**
+     * Validates the NRIC column of a user file in one pass before it is parsed
+     */
+    private static BitSet findInvalidNricRows(String file) {
+        try {
+            return InputValidator.findInvalidNRICs(Paths.get(file), 1, CSV_DELIMITER.charAt(0));
+        } catch (IOException e) {
+            return new BitSet(); // the loader reports the read error itself
+        }
+    }
+    
     /**
      * Loads all projects from the CSV file
      */
-    public static List<BTOProject> loadProjects(Map<String, User> userDatabase) {
+    public static List<BTOProject> loadProjects(Collection<User> users) {
         List<BTOProject> projects = new ArrayList<>();
         
         try (BufferedReader reader = new BufferedReader(new FileReader(PROJECT_FILE))) {
@@ -135,31 +174,26 @@ public class FileManager {
                     continue; // Skip header line
                 }
                 
-                String[] data = line.split(CSV_DELIMITER);
-                if (data.length >= 13) {
+                // name; neighborhood; N x (type; units; price); opening; closing; manager; officer slots; officers
+                String[] data = line.split(CSV_DELIMITER, -1);
+                if (data.length >= 10 && (data.length - 7) % 3 == 0) {
                     String projectName = data[0];
                     String neighborhood = data[1];
-                    
-                    // Flat types
-                    String type1 = data[2]; 
-                    int units1 = Integer.parseInt(data[3]);
-                    
-                    String type2 = data[5]; 
-                    int units2 = Integer.parseInt(data[6]);
-                    
-                    // Create flat types list
-                    ArrayList<String> flatTypes = new ArrayList<>();
-                    flatTypes.add(type1);
-                    flatTypes.add(type2);
+                    int typeCount = (data.length - 7) / 3;
+                    int tail = 2 + typeCount * 3;
                     
                     // Dates
-                    Date openingDate = dateFormat.parse(data[8]);
-                    Date closingDate = dateFormat.parse(data[9]);
+                    int openingDay = DateCodec.parse(data[tail]);
+                    int closingDay = DateCodec.parse(data[tail + 1]);
+                    if (openingDay == DateCodec.INVALID || closingDay == DateCodec.INVALID) {
+                        Log.warn("load.skipped", "file", "projects", "project", projectName, "reason", "invalid application dates");
+                        continue;
+                    }
                     
                     // Find manager by name
-                    String managerName = data[10];
+                    String managerName = data[tail + 2];
                     HDBManager manager = null;
-                    for (User user : userDatabase.values()) {
+                    for (User user : users) {
                         if (user instanceof HDBManager && user.getName().equals(managerName)) {
                             manager = (HDBManager) user;
                             break;
@@ -167,30 +201,36 @@ public class FileManager {
                     }
                     
                     if (manager == null) {
-                        System.out.println("Warning: Manager not found for project " + projectName);
+                        Log.warn("load.skipped", "file", "projects", "project", projectName, "reason", "manager not found",
+                                "manager", managerName);
                         continue;
                     }
                     
                     // Officer slots
-                    int officerSlots = Integer.parseInt(data[11]);
+                    int officerSlots = Integer.parseInt(data[tail + 3].trim());
                     
                     // Create project with the available information
                     BTOProject project = new BTOProject(
                         manager,
                         projectName,
                         neighborhood,
-                        openingDate,
-                        closingDate,
-                        flatTypes,
-                        getTwoRoomUnits(type1, units1, type2, units2),
-                        getThreeRoomUnits(type1, units1, type2, units2),
+                        openingDay,
+                        closingDay,
                         officerSlots
                     );
                     
+                    // Flat types, units and prices
+                    for (int t = 0; t < typeCount; t++) {
+                        String flatType = data[2 + t * 3];
+                        int units = Integer.parseInt(data[3 + t * 3].trim());
+                        String price = data[4 + t * 3].trim();
+                        project.addFlatType(flatType, units, price.isEmpty() ? 0 : Integer.parseInt(price));
+                    }
+                    
                     // Find and assign officers
-                    String[] officerNames = data[12].split(",");
+                    String[] officerNames = data[tail + 4].split(",");
                     for (String officerName : officerNames) {
-                        for (User user : userDatabase.values()) {
+                        for (User user : users) {
                             if (user instanceof HDBOfficer && user.getName().equals(officerName.trim())) {
                                 assignOfficerToProject((HDBOfficer) user, project);
                                 break;
@@ -199,69 +239,82 @@ public class FileManager {
                     }
                     
                     projects.add(project);
+                } else if (!line.trim().isEmpty()) {
+                    Log.warn("load.skipped", "file", "projects", "reason", "malformed row", "row", line);
                 }
             }
-        } catch (IOException | ParseException e) {
-            System.out.println("Error loading projects: " + e.getMessage());
+        } catch (IOException e) {
+            Log.error("load.failed", "file", "projects", "error", e);
         }
         
         return projects;
     }
     
     /**
-     * Helper method to determine the number of 2-room units
+     * Helper method to assign an officer to a project
      */
-    private static int getTwoRoomUnits(String type1, int units1, String type2, int units2) {
-        if (type1.toLowerCase().contains("2-room")) {
-            return units1;
-        } else if (type2.toLowerCase().contains("2-room")) {
-            return units2;
-        }
-        return 0;
+    private static void assignOfficerToProject(HDBOfficer officer, BTOProject project) {
+      if (!project.tryAddOfficer(officer)) {
+          Log.warn("officer.unassigned", "officer", officer.getName(), "project", project.getProjectName(),
+                  "reason", "no officer slots left");
+          return;
+      }
+      
+      officer.assignToProject(project.getProjectId());
+      
+      Log.info("officer.assigned", "officer", officer.getName(), "project", project.getProjectName());
+  }
+    
+    /**
+     * Saves all applicants to the CSV file
+     */
+    public static void saveApplicants(List<? extends User> applicants) {
+        saveUsers(APPLICANT_FILE, applicants, "applicants");
     }
     
     /**
-     * Helper method to determine the number of 3-room units
+     * Saves all managers to the CSV file
      */
-    private static int getThreeRoomUnits(String type1, int units1, String type2, int units2) {
-        if (type1.toLowerCase().contains("3-room")) {
-            return units1;
-        } else if (type2.toLowerCase().contains("3-room")) {
-            return units2;
-        }
-        return 0;
+    public static void saveManagers(List<? extends User> managers) {
+        saveUsers(MANAGER_FILE, managers, "managers");
     }
     
     /**
-     * Helper method to assign an officer to a project
+     * Saves all officers to the CSV file
      */
-    private static void assignOfficerToProject(HDBOfficer officer, BTOProject project) {
-      project.getHDBOfficers().add(officer);
-      
-      officer.assignToProject(project.getProjectName());
-      
-      System.out.println("Officer " + officer.getName() + " assigned to project: " + project.getProjectName());
-  }
+    public static void saveOfficers(List<? extends User> officers) {
+        saveUsers(OFFICER_FILE, officers, "officers");
+    }
     
     /**
-     * Saves all applicants to the CSV file
+     * The user files share one layout
      */
-    public static void saveApplicants(List<Applicant> applicants) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(APPLICANT_FILE))) {
+    private static void saveUsers(String file, List<? extends User> users, String label) {
+        Path temp = Paths.get(file + ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp))) {
             // Write header
             writer.println("Name;NRIC;Age;Marital Status;Password");
             
             // Write data
-            for (Applicant applicant : applicants) {
+            for (User user : users) {
                 writer.println(String.format("%s;%s;%d;%s;%s",
-                    applicant.getName(),
-                    applicant.getNRIC(),
-                    applicant.getAge(),
-                    applicant.getMaritalStatus(),
-                    applicant.getPassword()));
+                    user.getName(),
+                    user.getNRIC(),
+                    user.getAge(),
+                    user.getMaritalStatus(),
+                    user.getPassword()));
             }
+            if (writer.checkError()) {
+                throw new IOException("write failed");
+            }
+        } catch (IOException e) {
+            Log.error("save.failed", "file", label, "error", e);
+            return;
+        }
+        try {
+            moveIntoPlace(temp, Paths.get(file));
         } catch (IOException e) {
-            System.out.println("Error saving applicants: " + e.getMessage());
+            Log.error("save.failed", "file", label, "error", e);
         }
     }
     
@@ -269,47 +322,76 @@ public class FileManager {
      * Saves all projects to the CSV file
      */
     public static void saveProjects(List<BTOProject> projects) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(PROJECT_FILE))) {
-            // Write header
-            writer.println("Project Name;Neighborhood;Type 1;Number of units for Type 1;Selling price for Type 1;Type 2;Number of units for Type 2;Selling price for Type 2;Application opening date;Application closing date;Manager;Officer Slot;Officer");
+        Path temp = Paths.get(PROJECT_FILE + ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp))) {
+            // Write header, with one type/units/price triplet per flat type of the widest project
+            int maxTypes = 0;
+            for (BTOProject project : projects) {
+                maxTypes = Math.max(maxTypes, project.getFlatTypes().size());
+            }
+            StringBuilder header = new StringBuilder("Project Name;Neighborhood");
+            for (int t = 1; t <= maxTypes; t++) {
+                header.append(";Type ").append(t)
+                      .append(";Number of units for Type ").append(t)
+                      .append(";Selling price for Type ").append(t);
+            }
+            header.append(";Application opening date;Application closing date;Manager;Officer Slot;Officer");
+            writer.println(header);
             
             // Write data
             for (BTOProject project : projects) {
-                ArrayList<String> flatTypes = project.getFlatTypes();
+                StringBuilder row = new StringBuilder();
+                row.append(project.getProjectName()).append(';').append(project.getNeighborhood());
+                for (String flatType : project.getFlatTypes()) {
+                    int type = FlatTypeRegistry.ordinalOf(flatType);
+                    row.append(';').append(flatType)
+                       .append(';').append(project.getUnits(type))
+                       .append(';').append(project.getPrice(type));
+                }
                 
-                if (flatTypes.size() >= 2) {
-                    String type1 = flatTypes.get(0);
-                    String type2 = flatTypes.get(1);
-                    
-                    
-                    // Build officer string
-                    StringBuilder officerStr = new StringBuilder();
-                    List<HDBOfficer> officers = project.getHDBOfficers();
-                    for (int i = 0; i < officers.size(); i++) {
-                        if (i > 0) {
-                            officerStr.append(",");
-                        }
-                        officerStr.append(officers.get(i).getName());
+                // Build officer string
+                StringBuilder officerStr = new StringBuilder();
+                List<HDBOfficer> officers = project.getHDBOfficers();
+                for (int i = 0; i < officers.size(); i++) {
+                    if (i > 0) {
+                        officerStr.append(",");
                     }
-                    
-                    writer.println(String.format("%s;%s;%s;%d;%d;%s;%d;%d;%s;%s;%s;%d;%s",
-                        project.getProjectName(),
-                        project.getNeighborhood(),
-                        type1,
-                        project.getUnits(type1),
-                        
-                        type2,
-                        project.getUnits(type2),
-                        
-                        dateFormat.format(project.getStartDate()),
-                        dateFormat.format(project.getEndDate()),
-                        project.getManager().getName(),
-                        project.getMaxOfficers(),
-                        officerStr.toString()));
+                    officerStr.append(officers.get(i).getName());
                 }
+                
+                row.append(';').append(DateCodec.format(project.getStartDay()))
+                   .append(';').append(DateCodec.format(project.getEndDay()))
+                   .append(';').append(project.getManager().getName())
+                   .append(';').append(project.getMaxOfficers())
+                   .append(';').append(officerStr);
+                writer.println(row);
+            }
+            if (writer.checkError()) {
+                throw new IOException("write failed");
             }
         } catch (IOException e) {
-            System.out.println("Error saving projects: " + e.getMessage());
+            Log.error("save.failed", "file", "projects", "error", e);
+            return;
+        }
+        try {
+            moveIntoPlace(temp, Paths.get(PROJECT_FILE));
+        } catch (IOException e) {
+            Log.error("save.failed", "file", "projects", "error", e);
+        }
+    }
+    
+    /**
+     * Replaces a file with a fully written temporary one, so readers and crashes only ever
+     * see the old or the new contents, never a half-written file
+     */
+    static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 }
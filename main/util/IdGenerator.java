@@ -0,0 +1,27 @@
+package main.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Monotonic, collision-free numeric IDs. Each sequence is a single atomic counter,
+// so handing out an ID never blocks and never touches a random number source.
+public class IdGenerator {
+    private final AtomicLong next;
+
+    public IdGenerator(long firstId) {
+        this.next = new AtomicLong(firstId);
+    }
+
+    public long nextId() {
+        return next.getAndIncrement();
+    }
+
+    // IDs that must fit in an int (used as array indexes)
+    public int nextIntId() {
+        return Math.toIntExact(next.getAndIncrement());
+    }
+
+    // Make sure IDs handed out from now on are above one that already exists
+    public void advancePast(long existingId) {
+        next.accumulateAndGet(existingId + 1, Math::max);
+    }
+}
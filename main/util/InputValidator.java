@@ -1,14 +1,109 @@
 package main.util;
 
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
 
 public class InputValidator {
-    // Condition for a valid NRIC (starts with S or T, followed by 7-digit number and ends with another letter)
-    private static final Pattern NRIC_PATTERN = Pattern.compile("^[ST]\\d{7}[A-Z]$");
+    // Weights and check letters of the official NRIC checksum (S/T series)
+    private static final int[] CHECKSUM_WEIGHTS = {2, 7, 6, 5, 4, 3, 2};
+    private static final String CHECK_LETTERS = "JZIHGFEDCBA";
 
-    // Validate NRIC format
-    public static boolean isValidNRIC(String nric) {
-        return nric != null && NRIC_PATTERN.matcher(nric).matches();
+    // Whether the check letter must match the checksum, and not just be a letter.
+    // Off by default because the sample data uses made-up NRICs; enable with -Dbto.nric.verifyCheckLetter=true
+    private static volatile boolean verifyCheckLetter = Boolean.getBoolean("bto.nric.verifyCheckLetter");
+
+    // Size of each mapped window when validating a whole file
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    // Validate NRIC: starts with S or T (any case), followed by a 7-digit number and ends with a letter.
+    // Walks the characters once without allocating.
+    public static boolean isValidNRIC(CharSequence nric) {
+        long key = NricCodec.pack(nric);
+        return key != NricCodec.INVALID && (!verifyCheckLetter || hasValidCheckLetter(key));
+    }
+
+    // Check letter of a packed NRIC against the official checksum
+    public static boolean hasValidCheckLetter(long nricKey) {
+        int digits = NricCodec.digits(nricKey);
+        int sum = NricCodec.isTPrefix(nricKey) ? 4 : 0;
+        for (int i = CHECKSUM_WEIGHTS.length - 1; i >= 0; i--) {
+            sum += (digits % 10) * CHECKSUM_WEIGHTS[i];
+            digits /= 10;
+        }
+        return CHECK_LETTERS.charAt(sum % 11) == NricCodec.letter(nricKey);
+    }
+
+    public static boolean isVerifyingCheckLetter() {
+        return verifyCheckLetter;
+    }
+
+    public static void setVerifyCheckLetter(boolean verify) {
+        verifyCheckLetter = verify;
+    }
+
+    /**
+     * Validates one column of NRICs across a whole delimited file by scanning a memory-mapped
+     * view of it, reusing a single field buffer for every row. Returns the 0-based line numbers
+     * whose NRIC is invalid; lines that do not reach the column (blank lines) are left alone.
+     */
+    public static BitSet findInvalidNRICs(Path file, int column, char delimiter) throws IOException {
+        BitSet invalid = new BitSet();
+        char[] field = new char[16];
+        CharBuffer fieldView = CharBuffer.wrap(field);
+        int fieldLength = 0;
+        int currentColumn = 0;
+        int line = 0;
+        boolean lineHasData = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                while (window.hasRemaining()) {
+                    byte b = window.get();
+                    if (b == '\n') {
+                        if (lineHasData && currentColumn >= column) {
+                            fieldView.limit(Math.min(fieldLength, field.length)).position(0);
+                            if (fieldLength > field.length || !isValidNRIC(fieldView)) {
+                                invalid.set(line);
+                            }
+                        }
+                        line++;
+                        currentColumn = 0;
+                        fieldLength = 0;
+                        lineHasData = false;
+                    } else if (b == '\r') {
+                        continue;
+                    } else if (b == delimiter) {
+                        currentColumn++;
+                        lineHasData = true;
+                    } else {
+                        lineHasData = true;
+                        if (currentColumn == column) {
+                            if (fieldLength < field.length) {
+                                field[fieldLength] = (char) (b & 0xFF);
+                            }
+                            fieldLength++;
+                        }
+                    }
+                }
+            }
+        }
+
+        // last line without a trailing newline
+        if (lineHasData && currentColumn >= column) {
+            fieldView.limit(Math.min(fieldLength, field.length)).position(0);
+            if (fieldLength > field.length || !isValidNRIC(fieldView)) {
+                invalid.set(line);
+            }
+        }
+        return invalid;
     }
 
     // Validate password (non-empty)
@@ -0,0 +1,82 @@
+package main.util;
+
+import java.util.Arrays;
+
+// Growable list of primitive ints, for row and ID lists that would otherwise box every element
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        values[index] = value;
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    // Only valid while the list is kept in ascending order
+    public boolean containsSorted(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    public boolean removeValue(int value) {
+        int index = indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,82 @@
+package main.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// SnapshotList for primitive ints, so row lists can be versioned without boxing every element
+public class IntSnapshotList {
+    private volatile View current = new View(new int[8], 0);
+
+    // The current version; it stays the same however the list changes afterwards
+    public View snapshot() {
+        return current;
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    public synchronized void add(int value) {
+        View view = current;
+        int[] values = view.values;
+        if (view.size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[view.size] = value;
+        current = new View(values, view.size + 1);
+    }
+
+    public synchronized boolean removeValue(int value) {
+        View view = current;
+        int index = view.indexOf(value);
+        if (index < 0) {
+            return false;
+        }
+        int[] values = new int[view.values.length];
+        System.arraycopy(view.values, 0, values, 0, index);
+        System.arraycopy(view.values, index + 1, values, index, view.size - index - 1);
+        current = new View(values, view.size - 1);
+        return true;
+    }
+
+    // One version of the list
+    public static final class View {
+        private final int[] values;
+        private final int size;
+
+        View(int[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int get(int index) {
+            Objects.checkIndex(index, size);
+            return values[index];
+        }
+
+        public int indexOf(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Only valid while the list is kept in ascending order
+        public boolean containsSorted(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        // The leading values below the bound; only valid while the list is kept in ascending order
+        public View headBelow(int bound) {
+            int index = Arrays.binarySearch(values, 0, size, bound);
+            int count = index >= 0 ? index : -index - 1;
+            return count == size ? this : new View(values, count);
+        }
+    }
+}
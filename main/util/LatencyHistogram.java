@@ -0,0 +1,85 @@
+package main.util;
+
+/**
+ * Counts of durations in log-linear buckets: exact below 32 ms, then 16 buckets per power of
+ * two, so any percentile is within about 6% of the true value. Memory is fixed whatever the
+ * number of samples. Histograms merge by adding bucket counts, so per-project histograms add
+ * up to an overall one, and a sample can be taken back out again.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long max;
+
+    public void record(long millis) {
+        counts[bucketOf(millis)]++;
+        total++;
+        max = Math.max(max, Math.max(0, millis));
+    }
+
+    // Takes back a sample recorded earlier; the maximum stays as it was
+    public void remove(long millis) {
+        int bucket = bucketOf(millis);
+        if (counts[bucket] > 0) {
+            counts[bucket]--;
+            total--;
+        }
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.merge(this);
+        return copy;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    // Duration at or below which the given percent of samples fall (upper edge of its bucket); 0 if empty
+    public long percentile(double percent) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperEdge(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int bucketOf(long millis) {
+        long value = Math.max(0, millis);
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long upperEdge(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,215 @@
+package main.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Structured logging that does no I/O on the calling thread. A call at or above the
+ * configured level copies the level, time, thread name, an event name and its key/value
+ * fields into a slot of an EventRing and returns. A background thread turns each record
+ * into one logfmt line, appends it to a rolling file and flushes once per batch.
+ *
+ *   Log.info("application.submitted", "nric", nric, "project", projectId);
+ *   2026-10-19T08:15:02.114Z INFO [main] application.submitted nric=S1234567A project=3
+ *
+ * Records at or above the console level are also written to standard error, by the same
+ * background thread.
+ *
+ * Configured with system properties:
+ *   bto.log.file      the log file (default ./logs/bto.log)
+ *   bto.log.level     DEBUG, INFO, WARN, ERROR or OFF (default INFO)
+ *   bto.log.console   level also written to standard error (default WARN)
+ *   bto.log.maxBytes  size at which the file is rolled over (default 10 MB)
+ *   bto.log.files     rolled files kept, as bto.log.1 (newest) to bto.log.N (default 5)
+ */
+public class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Level LEVEL = level("bto.log.level", Level.INFO);
+    private static final Level CONSOLE = level("bto.log.console", Level.WARN);
+    private static final Path FILE = Paths.get(System.getProperty("bto.log.file", "./logs/bto.log"));
+    private static final long MAX_BYTES = Long.getLong("bto.log.maxBytes", 10L * 1024 * 1024);
+    private static final int FILES = Integer.getInteger("bto.log.files", 5);
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    private static final EventRing<Record> RING = new EventRing<>(4096, Record::new);
+
+    // touched only by the writer thread
+    private static BufferedWriter writer;
+    private static long written;
+    private static boolean fileFailed;
+    private static final StringBuilder LINE = new StringBuilder(256);
+
+    static {
+        RING.subscribe("log-writer", Log::write);
+        RING.start();
+    }
+
+    private static final class Record {
+        Level level;
+        long millis;
+        String thread;
+        String event;
+        Object[] fields;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0 && level != Level.OFF;
+    }
+
+    public static void debug(String event, Object... fields) {
+        log(Level.DEBUG, event, fields);
+    }
+
+    public static void info(String event, Object... fields) {
+        log(Level.INFO, event, fields);
+    }
+
+    public static void warn(String event, Object... fields) {
+        log(Level.WARN, event, fields);
+    }
+
+    public static void error(String event, Object... fields) {
+        log(Level.ERROR, event, fields);
+    }
+
+    // Fields are alternating keys and values; values are turned into text on the writer thread
+    public static void log(Level level, String event, Object... fields) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long sequence = RING.claim();
+        Record record = RING.slot(sequence);
+        record.level = level;
+        record.millis = System.currentTimeMillis();
+        record.thread = Thread.currentThread().getName();
+        record.event = event;
+        record.fields = fields != null ? fields : NO_FIELDS;
+        RING.publish(sequence);
+    }
+
+    // Writes out everything logged so far and closes the file; later records are dropped
+    public static void shutdown() {
+        RING.stop();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Log: could not close " + FILE + ": " + e.getMessage());
+        }
+    }
+
+    private static void write(Record record, long sequence, boolean endOfBatch) throws IOException {
+        StringBuilder line = LINE;
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(record.millis)).append(' ').append(record.level)
+                .append(" [").append(record.thread).append("] ").append(record.event);
+        Object[] fields = record.fields;
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, fields[i + 1]);
+        }
+        record.fields = null; // the slot is reused; do not keep the values alive
+        if (record.level.compareTo(CONSOLE) >= 0 && CONSOLE != Level.OFF) {
+            System.err.println(line);
+        }
+        line.append('\n');
+        BufferedWriter out = open(line.length());
+        if (out != null) {
+            out.append(line);
+            written += line.length();
+            if (endOfBatch) {
+                out.flush();
+            }
+        }
+    }
+
+    // Quotes values with spaces, quotes or equals signs so every line splits back into fields
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = value instanceof Throwable ? value.getClass().getSimpleName() + ": " + ((Throwable) value).getMessage()
+                : String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ' ' || c == '"' || c == '=' || c < 0x20;
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else if (c >= 0x20) {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    // The open file, rolled over first if the next line would take it past MAX_BYTES; null if it cannot be written
+    private static BufferedWriter open(int nextLength) {
+        if (fileFailed) {
+            return null;
+        }
+        try {
+            if (writer != null && written + nextLength > MAX_BYTES) {
+                writer.close();
+                writer = null;
+                roll();
+            }
+            if (writer == null) {
+                Path parent = FILE.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                writer = Files.newBufferedWriter(FILE, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                written = Files.size(FILE);
+            }
+            return writer;
+        } catch (IOException e) {
+            fileFailed = true;
+            System.err.println("Log: cannot write " + FILE + ", file logging disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // bto.log becomes bto.log.1, each older file moves up one and the oldest is dropped
+    private static void roll() throws IOException {
+        String name = FILE.getFileName().toString();
+        Files.deleteIfExists(FILE.resolveSibling(name + "." + FILES));
+        for (int i = FILES - 1; i >= 1; i--) {
+            Path older = FILE.resolveSibling(name + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, FILE.resolveSibling(name + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (FILES > 0) {
+            Files.move(FILE, FILE.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(FILE);
+        }
+    }
+
+    private static Level level(String property, Level fallback) {
+        try {
+            return Level.valueOf(System.getProperty(property, fallback.name()).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package main.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A log-structured map from long keys to byte-array values. Writes go to an in-memory
+ * memtable; a full memtable is queued for a background thread, which writes it out as an
+ * immutable segment file sorted by key, so a write never waits. A lookup checks the
+ * memtable, the queued memtables, then each segment from newest to oldest; every segment
+ * keeps a bloom filter and a sparse index in memory, so a miss costs no I/O and a hit costs
+ * one read of a small block.
+ *
+ * Backpressure is separate from writing: awaitCapacity() waits while flushing or compaction
+ * has fallen behind, and callers make it before taking any lock of their own, so a writer
+ * that holds one never stalls the readers queued behind it.
+ *
+ * Segments are compacted size-tiered on a second thread, so a long merge never holds up a
+ * flush: once TIER_FANOUT neighbouring segments are of the same size tier they are merged
+ * into one, keeping the newest value of each key. Deletes are written as tombstones and
+ * dropped once a merge reaches the oldest segment.
+ *
+ * The files are a spill area, not a durable copy: opening a store deletes whatever an
+ * earlier run left in its directory, and whoever owns the data rebuilds it from its own log.
+ *
+ * Segment file: record* with record = key:long length:int bytes, length -1 for a tombstone.
+ */
+public class LogStructuredStore {
+    private static final int TIER_FANOUT = 4;
+    // past this many segments awaitCapacity waits for compaction, so lookups stay cheap
+    private static final int MAX_SEGMENTS = TIER_FANOUT * 8;
+    // and past this many full memtables it waits for the flusher
+    private static final int MAX_QUEUED = 2;
+    private static final int INDEX_INTERVAL = 32;     // records per sparse-index entry
+    private static final int TOMBSTONE_LENGTH = -1;
+    // stands for a delete in the memtable; compared by identity
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    private final Path dir;
+    private final int memtableLimit;
+    private final Thread flusher;
+    private final Thread compactor;
+
+    // guarded by this
+    private TreeMap<Long, byte[]> memtable = new TreeMap<>();
+    // full memtables waiting to be written, newest first, never changed in place
+    private List<TreeMap<Long, byte[]>> flushing = Collections.emptyList();
+    private List<Segment> segments = Collections.emptyList();   // newest first, never changed in place
+    private long nextSegmentNumber;
+    private boolean compactionPending;
+    private boolean closed;
+
+    // readers hold it shared while they read segment files; compaction takes it to delete them,
+    // and fairness keeps a steady stream of readers from starving it
+    private final ReentrantReadWriteLock files = new ReentrantReadWriteLock(true);
+
+    public LogStructuredStore(Path dir, int memtableLimit) {
+        this.dir = dir;
+        this.memtableLimit = Math.max(16, memtableLimit);
+        this.flusher = new Thread(this::runFlusher, "lsm-flush-" + dir.getFileName());
+        this.compactor = new Thread(this::runCompactor, "lsm-compact-" + dir.getFileName());
+        flusher.setDaemon(true);
+        compactor.setDaemon(true);
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(dir, "segment-*.sst")) {
+                for (Path path : stale) {
+                    Files.delete(path);
+                }
+            }
+        } catch (IOException e) {
+            // the first flush reports it again and keeps the data in memory
+            Log.error("store.prepare_failed", "dir", dir, "error", e);
+        }
+        flusher.start();
+        compactor.start();
+    }
+
+    public void put(long key, byte[] value) {
+        write(key, value);
+    }
+
+    public void remove(long key) {
+        write(key, TOMBSTONE);
+    }
+
+    // The value stored under the key, or null if there is none
+    public byte[] get(long key) {
+        List<Segment> current;
+        files.readLock().lock();
+        try {
+            synchronized (this) {
+                byte[] value = memtable.get(key);
+                for (int i = 0; value == null && i < flushing.size(); i++) {
+                    value = flushing.get(i).get(key);
+                }
+                if (value != null) {
+                    return value == TOMBSTONE ? null : value;
+                }
+                current = segments;
+            }
+            for (Segment segment : current) {
+                byte[] value = segment.get(key);
+                if (value != null) {
+                    return value == TOMBSTONE ? null : value;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read segment in " + dir, e);
+        } finally {
+            files.readLock().unlock();
+        }
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    // Waits while memtables are queued faster than they are flushed or segments outrun
+    // compaction; call it holding no lock, before a write
+    public synchronized void awaitCapacity() {
+        while ((flushing.size() >= MAX_QUEUED || segments.size() >= MAX_SEGMENTS) && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Stops the background threads; the store must not be used afterwards
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            compactor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        files.writeLock().lock();
+        try {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            files.writeLock().unlock();
+        }
+    }
+
+    private synchronized void write(long key, byte[] value) {
+        memtable.put(key, value);
+        if (memtable.size() < memtableLimit || closed) {
+            return;
+        }
+        List<TreeMap<Long, byte[]>> queued = new ArrayList<>(flushing.size() + 1);
+        queued.add(memtable);
+        queued.addAll(flushing);
+        flushing = Collections.unmodifiableList(queued);
+        memtable = new TreeMap<>();
+        notifyAll();
+    }
+
+    private void runFlusher() {
+        while (true) {
+            TreeMap<Long, byte[]> toFlush;
+            synchronized (this) {
+                while (flushing.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (flushing.isEmpty()) {
+                    return;
+                }
+                // oldest first, so each new segment goes in front of everything older
+                toFlush = flushing.get(flushing.size() - 1);
+            }
+            Segment flushed = flush(toFlush);
+            synchronized (this) {
+                List<Segment> next = new ArrayList<>(segments.size() + 1);
+                next.add(flushed);
+                next.addAll(segments);
+                segments = Collections.unmodifiableList(next);
+                flushing = Collections.unmodifiableList(new ArrayList<>(flushing.subList(0, flushing.size() - 1)));
+                compactionPending = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private void runCompactor() {
+        while (true) {
+            synchronized (this) {
+                while (!compactionPending && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                compactionPending = false;
+            }
+            compact();
+        }
+    }
+
+    private Segment flush(TreeMap<Long, byte[]> entries) {
+        try {
+            return Segment.write(nextPath(), entries.entrySet().iterator(), entries.size());
+        } catch (IOException e) {
+            // keep serving the entries from memory rather than lose them
+            Log.error("store.flush_failed", "dir", dir, "keptInMemory", entries.size(), "error", e);
+            return Segment.resident(entries);
+        }
+    }
+
+    // Merges TIER_FANOUT segments of one size tier, with any smaller ones between them, until
+    // no tier has that many without a bigger segment in between; smallest tier first
+    private void compact() {
+        while (true) {
+            List<Segment> current;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                current = segments;
+            }
+            int start = -1;
+            int end = -1;
+            int maxTier = 0;
+            for (Segment segment : current) {
+                maxTier = Math.max(maxTier, tier(segment));
+            }
+            for (int tier = 0; tier <= maxTier && start < 0; tier++) {
+                int first = -1;
+                int found = 0;
+                for (int i = 0; i < current.size(); i++) {
+                    int t = tier(current.get(i));
+                    if (t > tier) {
+                        first = -1;
+                        found = 0;
+                    } else if (t == tier) {
+                        if (first < 0) {
+                            first = i;
+                        }
+                        if (++found == TIER_FANOUT) {
+                            start = first;
+                            end = i + 1;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (start < 0 && current.size() >= MAX_SEGMENTS) {
+                // writers are waiting and the tiers are too mixed for a run: merge the cheapest neighbours
+                long cheapest = Long.MAX_VALUE;
+                for (int i = 0; i + TIER_FANOUT <= current.size(); i++) {
+                    long records = 0;
+                    for (int j = i; j < i + TIER_FANOUT; j++) {
+                        records += current.get(j).count;
+                    }
+                    if (records < cheapest) {
+                        cheapest = records;
+                        start = i;
+                        end = i + TIER_FANOUT;
+                    }
+                }
+            }
+            if (start < 0) {
+                return;
+            }
+            List<Segment> run = current.subList(start, end);
+            // nothing older can be hidden by a tombstone once the run includes the oldest segment
+            boolean dropTombstones = end == current.size();
+            Segment merged;
+            try {
+                merged = merge(run, dropTombstones);
+            } catch (IOException e) {
+                Log.error("store.compaction_failed", "dir", dir, "error", e);
+                return;
+            }
+            synchronized (this) {
+                // flushes only ever add in front, so the run is still at the same distance from the end
+                List<Segment> latest = segments;
+                int offset = latest.size() - current.size();
+                List<Segment> next = new ArrayList<>(latest.subList(0, start + offset));
+                next.add(merged);
+                next.addAll(latest.subList(end + offset, latest.size()));
+                segments = Collections.unmodifiableList(next);
+                notifyAll();
+            }
+            files.writeLock().lock();
+            try {
+                for (Segment segment : run) {
+                    segment.close();
+                    segment.delete();
+                }
+            } finally {
+                files.writeLock().unlock();
+            }
+        }
+    }
+
+    private Segment merge(List<Segment> run, boolean dropTombstones) throws IOException {
+        // cursors newest first, so on equal keys the first one wins
+        List<Iterator<Map.Entry<Long, byte[]>>> cursors = new ArrayList<>();
+        List<Map.Entry<Long, byte[]>> heads = new ArrayList<>();
+        int total = 0;
+        try {
+            for (Segment segment : run) {
+                Iterator<Map.Entry<Long, byte[]>> cursor = segment.iterator();
+                cursors.add(cursor);
+                heads.add(cursor.hasNext() ? cursor.next() : null);
+                total += segment.count;
+            }
+            Iterator<Map.Entry<Long, byte[]>> merged = new Iterator<>() {
+                private Map.Entry<Long, byte[]> next = advance();
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<Long, byte[]> next() {
+                    Map.Entry<Long, byte[]> current = next;
+                    next = advance();
+                    return current;
+                }
+
+                private Map.Entry<Long, byte[]> advance() {
+                    while (true) {
+                        Map.Entry<Long, byte[]> smallest = null;
+                        for (Map.Entry<Long, byte[]> head : heads) {
+                            if (head != null && (smallest == null || head.getKey() < smallest.getKey())) {
+                                smallest = head;
+                            }
+                        }
+                        if (smallest == null) {
+                            return null;
+                        }
+                        long key = smallest.getKey();
+                        for (int i = 0; i < heads.size(); i++) {
+                            Map.Entry<Long, byte[]> head = heads.get(i);
+                            if (head != null && head.getKey() == key) {
+                                Iterator<Map.Entry<Long, byte[]>> cursor = cursors.get(i);
+                                heads.set(i, cursor.hasNext() ? cursor.next() : null);
+                            }
+                        }
+                        if (!dropTombstones || smallest.getValue() != TOMBSTONE) {
+                            return smallest;
+                        }
+                    }
+                }
+            };
+            return Segment.write(nextPath(), merged, total);
+        } catch (IllegalStateException e) {
+            // iterators report read errors unchecked
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private synchronized Path nextPath() {
+        return dir.resolve(String.format("segment-%016d.sst", nextSegmentNumber++));
+    }
+
+    // 0 for segments up to TIER_FANOUT memtables, 1 up to TIER_FANOUT^2, and so on
+    private int tier(Segment segment) {
+        int tier = 0;
+        for (long size = (long) memtableLimit * TIER_FANOUT; segment.count > size; size *= TIER_FANOUT) {
+            tier++;
+        }
+        return tier;
+    }
+
+    // An immutable sorted run of records, in a file or, if it could not be written, in memory
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final TreeMap<Long, byte[]> resident;
+        private final int count;
+        private final long minKey;
+        private final long maxKey;
+        private final long[] indexKeys;       // key of every INDEX_INTERVAL-th record
+        private final long[] indexOffsets;    // and where that record starts; one extra for the end
+        private final BloomFilter filter;
+
+        private Segment(Path path, FileChannel channel, TreeMap<Long, byte[]> resident, int count, long minKey,
+                long maxKey, long[] indexKeys, long[] indexOffsets, BloomFilter filter) {
+            this.path = path;
+            this.channel = channel;
+            this.resident = resident;
+            this.count = count;
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.filter = filter;
+        }
+
+        static Segment resident(TreeMap<Long, byte[]> entries) {
+            return new Segment(null, null, entries, entries.size(), entries.firstKey(), entries.lastKey(),
+                    null, null, null);
+        }
+
+        // Writes the entries, which must be in ascending key order, at most expected of them
+        static Segment write(Path path, Iterator<Map.Entry<Long, byte[]>> entries, int expected) throws IOException {
+            BloomFilter filter = new BloomFilter(Math.max(1, expected));
+            long[] indexKeys = new long[expected / INDEX_INTERVAL + 1];
+            long[] indexOffsets = new long[expected / INDEX_INTERVAL + 2];
+            int count = 0;
+            long offset = 0;
+            long minKey = 0;
+            long maxKey = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 1 << 16))) {
+                while (entries.hasNext()) {
+                    Map.Entry<Long, byte[]> entry = entries.next();
+                    long key = entry.getKey();
+                    byte[] value = entry.getValue();
+                    if (count % INDEX_INTERVAL == 0) {
+                        indexKeys[count / INDEX_INTERVAL] = key;
+                        indexOffsets[count / INDEX_INTERVAL] = offset;
+                    }
+                    if (count == 0) {
+                        minKey = key;
+                    }
+                    maxKey = key;
+                    filter.add(key);
+                    out.writeLong(key);
+                    if (value == TOMBSTONE) {
+                        out.writeInt(TOMBSTONE_LENGTH);
+                        offset += 12;
+                    } else {
+                        out.writeInt(value.length);
+                        out.write(value);
+                        offset += 12 + value.length;
+                    }
+                    count++;
+                }
+            }
+            int blocks = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            indexKeys = Arrays.copyOf(indexKeys, blocks);
+            indexOffsets = Arrays.copyOf(indexOffsets, blocks + 1);
+            indexOffsets[blocks] = offset;
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new Segment(path, channel, null, count, minKey, maxKey, indexKeys, indexOffsets, filter);
+        }
+
+        // The value, TOMBSTONE for a delete, or null if the key is not in this segment
+        byte[] get(long key) throws IOException {
+            if (count == 0 || key < minKey || key > maxKey) {
+                return null;
+            }
+            if (resident != null) {
+                return resident.get(key);
+            }
+            if (!filter.mightContain(key)) {
+                return null;
+            }
+            int block = Arrays.binarySearch(indexKeys, key);
+            if (block < 0) {
+                block = -block - 2;
+            }
+            long from = indexOffsets[block];
+            ByteBuffer buffer = ByteBuffer.allocate((int) (indexOffsets[block + 1] - from));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, from + buffer.position()) < 0) {
+                    throw new EOFException("Segment " + path + " is shorter than its index");
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                long found = buffer.getLong();
+                int length = buffer.getInt();
+                if (found == key) {
+                    if (length == TOMBSTONE_LENGTH) {
+                        return TOMBSTONE;
+                    }
+                    byte[] value = new byte[length];
+                    buffer.get(value);
+                    return value;
+                }
+                if (found > key) {
+                    return null;
+                }
+                if (length > 0) {
+                    buffer.position(buffer.position() + length);
+                }
+            }
+            return null;
+        }
+
+        // Every record in key order; read errors surface as IllegalStateException
+        Iterator<Map.Entry<Long, byte[]>> iterator() throws IOException {
+            if (resident != null) {
+                return resident.entrySet().iterator();
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), 1 << 16));
+            return new Iterator<>() {
+                private int read = 0;
+
+                @Override
+                public boolean hasNext() {
+                    if (read < count) {
+                        return true;
+                    }
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                        // read fully; nothing is lost
+                    }
+                    return false;
+                }
+
+                @Override
+                public Map.Entry<Long, byte[]> next() {
+                    try {
+                        long key = in.readLong();
+                        int length = in.readInt();
+                        byte[] value = TOMBSTONE;
+                        if (length != TOMBSTONE_LENGTH) {
+                            value = new byte[length];
+                            in.readFully(value);
+                        }
+                        read++;
+                        return Map.entry(key, value);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // read-only; nothing to lose
+                }
+            }
+        }
+
+        void delete() {
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    Log.warn("store.delete_failed", "path", path, "error", e);
+                }
+            }
+        }
+    }
+
+    // Ten bits and seven probes per key: about one false positive in a hundred lookups
+    private static final class BloomFilter {
+        private static final int BITS_PER_KEY = 10;
+        private static final int PROBES = 7;
+        private final long[] words;
+        private final long bits;
+
+        BloomFilter(int expectedKeys) {
+            bits = Math.max(64, (long) expectedKeys * BITS_PER_KEY);
+            words = new long[(int) ((bits + 63) >>> 6)];
+        }
+
+        void add(long key) {
+            long hash = mix(key);
+            long step = (hash >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++, hash += step) {
+                long bit = Long.remainderUnsigned(hash, bits);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long key) {
+            long hash = mix(key);
+            long step = (hash >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++, hash += step) {
+                long bit = Long.remainderUnsigned(hash, bits);
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // SplitMix64 finalizer, so sequential IDs spread over the whole filter
+        private static long mix(long key) {
+            long z = key + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package main.util;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from non-negative long keys to int values (linear probing).
+// Keys and values sit in two flat primitive arrays, so nothing is boxed.
+public class LongIndex {
+    public static final int NOT_FOUND = -1;
+
+    private static final long EMPTY = -1L;
+    private static final long DELETED = -2L;
+    private static final float MAX_LOAD = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;       // live entries
+    private int used;       // live entries plus tombstones
+
+    public LongIndex() {
+        this(16);
+    }
+
+    public LongIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(long key) {
+        checkKey(key);
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    // Store a value for the key and return the previous one, or NOT_FOUND
+    public int put(long key, int value) {
+        checkKey(key);
+        if (used + 1 > keys.length * MAX_LOAD) {
+            rehash(size + 1 > keys.length * MAX_LOAD / 2 ? keys.length * 2 : keys.length);
+        }
+        int mask = keys.length - 1;
+        int tombstone = -1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == DELETED && tombstone < 0) {
+                tombstone = slot;
+            } else if (k == EMPTY) {
+                int target = tombstone >= 0 ? tombstone : slot;
+                if (target == slot) {
+                    used++;
+                }
+                keys[target] = key;
+                values[target] = value;
+                size++;
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    // Remove the key and return its value, or NOT_FOUND
+    public int remove(long key) {
+        checkKey(key);
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                keys[slot] = DELETED;
+                size--;
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] >= 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    private static void checkKey(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys must be non-negative: " + key);
+        }
+    }
+
+    // 64-bit finalizer from MurmurHash3, folded to an int
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,18 @@
+package main.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Wall-clock milliseconds that never go backwards, for timestamps whose differences must not be negative
+public class MonotonicClock {
+    private static final AtomicLong LAST = new AtomicLong();
+
+    // Current time in epoch milliseconds, never less than any value returned or seen before
+    public static long now() {
+        return LAST.accumulateAndGet(System.currentTimeMillis(), Math::max);
+    }
+
+    // Called with timestamps read back from storage, so new ones never sort before them
+    public static void advanceTo(long millis) {
+        LAST.accumulateAndGet(millis, Math::max);
+    }
+}
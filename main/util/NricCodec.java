@@ -0,0 +1,67 @@
+package main.util;
+
+// Packs an NRIC (S/T, seven digits, check letter) into a single non-negative long and back.
+// Layout: bit 29 = prefix (0 for S, 1 for T), bits 5-28 = the seven digits, bits 0-4 = check letter.
+public class NricCodec {
+    public static final long INVALID = -1L;
+
+    private static final int LETTER_BITS = 5;
+    private static final int DIGIT_BITS = 24;   // 9,999,999 < 2^24
+
+    // Packed key for an NRIC, case-insensitive, or INVALID if it is not S/T + 7 digits + letter.
+    // Reads the characters in place, so nothing is allocated.
+    public static long pack(CharSequence nric) {
+        if (nric == null || nric.length() != 9) {
+            return INVALID;
+        }
+        char prefix = Character.toUpperCase(nric.charAt(0));
+        if (prefix != 'S' && prefix != 'T') {
+            return INVALID;
+        }
+        long digits = 0;
+        for (int i = 1; i <= 7; i++) {
+            char c = nric.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            digits = digits * 10 + (c - '0');
+        }
+        char letter = Character.toUpperCase(nric.charAt(8));
+        if (letter < 'A' || letter > 'Z') {
+            return INVALID;
+        }
+        long prefixBit = prefix == 'T' ? 1L : 0L;
+        return (prefixBit << (DIGIT_BITS + LETTER_BITS)) | (digits << LETTER_BITS) | (letter - 'A');
+    }
+
+    // True for a T-prefixed NRIC, false for S
+    public static boolean isTPrefix(long key) {
+        return ((key >>> (DIGIT_BITS + LETTER_BITS)) & 1L) == 1L;
+    }
+
+    // The seven digits as a number
+    public static int digits(long key) {
+        return (int) ((key >>> LETTER_BITS) & ((1L << DIGIT_BITS) - 1));
+    }
+
+    // The upper-case check letter
+    public static char letter(long key) {
+        return (char) ('A' + (key & ((1L << LETTER_BITS) - 1)));
+    }
+
+    // The upper-case NRIC string for a packed key
+    public static String unpack(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Not a packed NRIC: " + key);
+        }
+        char[] chars = new char[9];
+        chars[0] = isTPrefix(key) ? 'T' : 'S';
+        int digits = digits(key);
+        for (int i = 7; i >= 1; i--) {
+            chars[i] = (char) ('0' + digits % 10);
+            digits /= 10;
+        }
+        chars[8] = letter(key);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,62 @@
+package main.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One page of a listing, plus the cursor to continue from
+public class Page<T> {
+    private final List<T> items;
+    private final int cursor;       // position of the first item in the full listing
+    private final int total;        // size of the full listing
+
+    public Page(List<T> items, int cursor, int total) {
+        this.items = items;
+        this.cursor = cursor;
+        this.total = total;
+    }
+
+    // Cut a page out of a list that is already in display order, copying only the page
+    public static <T> Page<T> of(List<T> source, int cursor, int pageSize) {
+        int total = source.size();
+        int from = Math.max(0, Math.min(cursor, total));
+        int to = Math.min(total, from + Math.max(1, pageSize));
+        return new Page<>(new ArrayList<>(source.subList(from, to)), from, total);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getCursor() {
+        return cursor;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public boolean hasNext() {
+        return cursor + items.size() < total;
+    }
+
+    public boolean hasPrevious() {
+        return cursor > 0;
+    }
+
+    // Cursor to pass back in for the following page
+    public int getNextCursor() {
+        return cursor + items.size();
+    }
+
+    public int getPreviousCursor(int pageSize) {
+        return Math.max(0, cursor - pageSize);
+    }
+}
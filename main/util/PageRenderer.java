@@ -0,0 +1,22 @@
+package main.util;
+
+import java.util.function.Function;
+
+public class PageRenderer {
+
+    /**
+     * Renders a page into one buffer and writes it to the console in a single call,
+     * numbering rows by their position in the full listing
+     */
+    public static <T> void render(Page<T> page, Function<T, String> formatter) {
+        StringBuilder out = new StringBuilder(page.size() * 96);
+        int number = page.getCursor() + 1;
+        for (T item : page.getItems()) {
+            out.append(number++).append(". ").append(formatter.apply(item)).append('\n');
+        }
+        out.append("-- Showing ").append(page.getCursor() + 1).append('-').append(page.getNextCursor())
+           .append(" of ").append(page.getTotal()).append(" --\n");
+        System.out.print(out);
+        System.out.flush();
+    }
+}
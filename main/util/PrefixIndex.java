@@ -0,0 +1,172 @@
+package main.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TreeSet;
+
+/**
+ * Sorted-array prefix index from lower-cased keys to int IDs, for autocomplete.
+ * Keys sharing a prefix are contiguous, so completing a prefix is one binary search
+ * followed by a forward scan. Every word of a key is also indexed on its own, so
+ * "bre" finds "Acacia Breeze". Inserts and removals shift the arrays, which is cheap
+ * for the number of projects this holds and keeps lookups allocation-light; replace
+ * re-keys an ID in one pass instead of shifting once per word.
+ */
+public class PrefixIndex {
+    private String[] keys = new String[16];
+    private int[] ids = new int[16];
+    private int size = 0;
+
+    public synchronized void add(String text, int id) {
+        String key = normalize(text);
+        for (int start = 0; start < key.length(); start = nextWord(key, start)) {
+            insert(key.substring(start), id);
+        }
+    }
+
+    public synchronized void remove(String text, int id) {
+        String key = normalize(text);
+        for (int start = 0; start < key.length(); start = nextWord(key, start)) {
+            delete(key.substring(start), id);
+        }
+    }
+
+    // Moves an ID from one text to another. Words the two texts share stay put, and an
+    // unchanged text costs nothing.
+    public synchronized void replace(String oldText, String newText, int id) {
+        TreeSet<String> removed = suffixes(normalize(oldText));
+        TreeSet<String> added = suffixes(normalize(newText));
+        TreeSet<String> shared = new TreeSet<>(removed);
+        shared.retainAll(added);
+        removed.removeAll(shared);
+        added.removeAll(shared);
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+
+        // compact out the removed keys, starting at the first one
+        int write = removed.isEmpty() ? size : lowerBound(removed.first(), id);
+        for (int read = write; read < size; read++) {
+            if (ids[read] != id || !removed.contains(keys[read])) {
+                keys[write] = keys[read];
+                ids[write] = ids[read];
+                write++;
+            }
+        }
+        Arrays.fill(keys, write, size, null);
+        size = write;
+
+        added.removeIf(key -> {
+            int position = lowerBound(key, id);
+            return position < size && keys[position].equals(key) && ids[position] == id;
+        });
+        if (size + added.size() > keys.length) {
+            int grown = Math.max(size + added.size(), keys.length * 2);
+            keys = Arrays.copyOf(keys, grown);
+            ids = Arrays.copyOf(ids, grown);
+        }
+        // merge the added keys in from the back, moving each existing entry at most once
+        int read = size - 1;
+        write = size + added.size() - 1;
+        for (String key : added.descendingSet()) {
+            while (read >= 0 && (keys[read].compareTo(key) > 0 || (keys[read].equals(key) && ids[read] > id))) {
+                keys[write] = keys[read];
+                ids[write] = ids[read];
+                write--;
+                read--;
+            }
+            keys[write] = key;
+            ids[write] = id;
+            write--;
+        }
+        size += added.size();
+    }
+
+    // Up to limit distinct IDs with a key starting with prefix, in key order.
+    // IDs outside allowed (when given) are skipped without counting toward the limit.
+    public synchronized IntList complete(String prefix, int limit, BitSet allowed) {
+        IntList result = new IntList();
+        String key = normalize(prefix);
+        BitSet seen = new BitSet();
+        for (int i = lowerBound(key, Integer.MIN_VALUE); i < size && result.size() < limit; i++) {
+            if (!keys[i].startsWith(key)) {
+                break;
+            }
+            int id = ids[i];
+            if (!seen.get(id) && (allowed == null || allowed.get(id))) {
+                seen.set(id);
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void insert(String key, int id) {
+        int position = lowerBound(key, id);
+        if (position < size && keys[position].equals(key) && ids[position] == id) {
+            return;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        keys[position] = key;
+        ids[position] = id;
+        size++;
+    }
+
+    private void delete(String key, int id) {
+        int position = lowerBound(key, id);
+        if (position < size && keys[position].equals(key) && ids[position] == id) {
+            System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            keys[--size] = null;
+        }
+    }
+
+    // First position whose (key, id) is not less than the given pair
+    private int lowerBound(String key, int id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = keys[mid].compareTo(key);
+            if (cmp < 0 || (cmp == 0 && ids[mid] < id)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static TreeSet<String> suffixes(String key) {
+        TreeSet<String> suffixes = new TreeSet<>();
+        for (int start = 0; start < key.length(); start = nextWord(key, start)) {
+            suffixes.add(key.substring(start));
+        }
+        return suffixes;
+    }
+
+    // Start of the word after the one at start, or the key length if there is none
+    private static int nextWord(String key, int start) {
+        int i = key.indexOf(' ', start);
+        if (i < 0) {
+            return key.length();
+        }
+        while (i < key.length() && key.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,367 @@
+package main.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Crash recovery for state that has no CSV file. Every change is appended to a journal
+ * segment as one checksummed record; a snapshot periodically captures the whole state, after
+ * which older segments and snapshots are deleted. Recovery loads the newest snapshot whose
+ * checksums all verify and replays the segments written after it, stopping at the first torn
+ * or corrupt record, so the work done on startup is bounded by the snapshot interval.
+ *
+ * Records are opaque byte arrays. Replaying a record must be idempotent: snapshots are taken
+ * while writers keep going, so a snapshot may already include changes that are also in the
+ * segments replayed after it.
+ *
+ * File layout (all ints big-endian):
+ *   segment  = "BTOJ" version frame*
+ *   snapshot = "BTOS" version firstSegment:long frame* end-frame(count:int)
+ *   frame    = length:int crc32:int payload
+ * Snapshots are written to a temporary file and renamed into place, so a crash while one is
+ * written leaves the previous snapshot untouched.
+ */
+public class RecoveryLog {
+
+    // Writes the full state, one record per call to the sink
+    public interface SnapshotSource {
+        void writeTo(RecordSink sink) throws IOException;
+    }
+
+    public interface RecordSink {
+        void accept(byte[] record) throws IOException;
+    }
+
+    private static final int SEGMENT_MAGIC = 0x42544F4A;   // "BTOJ"
+    private static final int SNAPSHOT_MAGIC = 0x42544F53;  // "BTOS"
+    private static final int VERSION = 1;
+    private static final int FRAME_HEADER = 8;
+    private static final int MAX_RECORD = 16 << 20;
+    // the end frame is the only one with a negative length
+    private static final int END_FRAME = -1;
+    private static final int SNAPSHOTS_KEPT = 2;
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    private final Path dir;
+    private final boolean fsync;
+    private FileChannel segment;
+    private long segmentNumber;
+    private long recordsSinceSnapshot;
+    private Thread snapshotter;
+
+    public RecoveryLog(Path dir, boolean fsync) {
+        this.dir = dir;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Applies the newest valid snapshot and the journal written after it, in order.
+     * Returns false, applying nothing, if there is no valid snapshot.
+     */
+    public synchronized boolean recover(RecordSink apply) throws IOException {
+        Files.createDirectories(dir);
+        TreeMap<Long, Path> snapshots = list("snapshot-", ".snap");
+        for (Long number : snapshots.descendingKeySet()) {
+            List<byte[]> records = readSnapshot(snapshots.get(number), number);
+            if (records == null) {
+                Log.warn("recovery.snapshot_damaged", "snapshot", number);
+                continue;
+            }
+            for (byte[] record : records) {
+                apply.accept(record);
+            }
+            replayJournal(number, apply);
+            return true;
+        }
+        return false;
+    }
+
+    // Starts a fresh segment after every existing one; appends before this are ignored
+    public synchronized void open() throws IOException {
+        Files.createDirectories(dir);
+        TreeMap<Long, Path> segments = list("journal-", ".log");
+        long last = segments.isEmpty() ? 0 : segments.lastKey();
+        TreeMap<Long, Path> snapshots = list("snapshot-", ".snap");
+        if (!snapshots.isEmpty()) {
+            last = Math.max(last, snapshots.lastKey());
+        }
+        roll(last + 1);
+    }
+
+    public synchronized void append(byte[] record) throws IOException {
+        if (segment == null) {
+            return;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + record.length);
+        frame.putInt(record.length).putInt(crc(record, record.length)).put(record).flip();
+        while (frame.hasRemaining()) {
+            segment.write(frame);
+        }
+        if (fsync) {
+            segment.force(false);
+        }
+        recordsSinceSnapshot++;
+    }
+
+    public synchronized long recordsSinceSnapshot() {
+        return recordsSinceSnapshot;
+    }
+
+    /**
+     * Rolls to a new segment, writes a snapshot that replay starts from, then deletes the
+     * snapshots and segments it makes redundant. Writers are only held up for the roll.
+     */
+    public void snapshot(SnapshotSource source) throws IOException {
+        long first;
+        synchronized (this) {
+            if (segment == null) {
+                return;
+            }
+            first = segmentNumber + 1;
+            roll(first);
+        }
+        Path target = dir.resolve(String.format("snapshot-%016d.snap", first));
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        for (int attempt = 1; ; attempt++) {
+            try {
+                writeSnapshot(temp, first, source);
+                break;
+            } catch (ConcurrentModificationException e) {
+                // a collection changed while it was being copied; start the file over
+                if (attempt == SNAPSHOT_ATTEMPTS) {
+                    Files.deleteIfExists(temp);
+                    throw new IOException("State kept changing while the snapshot was written.", e);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+        FileManager.moveIntoPlace(temp, target);
+        compact();
+    }
+
+    // Takes a snapshot every intervalMs while anything was journaled since the last one, or
+    // the last attempt failed. Any failure is logged and the thread keeps going, since without
+    // snapshots the journal, and the time to replay it, would grow without limit.
+    public synchronized void startSnapshots(long intervalMs, SnapshotSource source) {
+        if (snapshotter != null) {
+            return;
+        }
+        snapshotter = new Thread(() -> {
+            boolean failed = false;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (failed || recordsSinceSnapshot() > 0) {
+                        snapshot(source);
+                    }
+                    failed = false;
+                } catch (IOException | RuntimeException e) {
+                    Log.error("recovery.snapshot_failed", "error", e);
+                    failed = true;
+                }
+            }
+        }, "recovery-snapshotter");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+    }
+
+    // Stops the snapshot thread and closes the current segment
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = snapshotter;
+            snapshotter = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            closeSegment();
+        }
+    }
+
+    private void roll(long number) throws IOException {
+        closeSegment();
+        Path path = dir.resolve(String.format("journal-%016d.log", number));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(SEGMENT_MAGIC).putInt(VERSION);
+        header.flip();
+        channel.write(header);
+        segment = channel;
+        segmentNumber = number;
+        recordsSinceSnapshot = 0;
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.force(false);
+            segment.close();
+        } catch (IOException e) {
+            Log.error("recovery.close_failed", "error", e);
+        }
+        segment = null;
+    }
+
+    private void writeSnapshot(Path temp, long first, SnapshotSource source) throws IOException {
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(16).putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(first);
+            header.flip();
+            out.write(header);
+            int[] count = { 0 };
+            source.writeTo(record -> {
+                ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + record.length);
+                frame.putInt(record.length).putInt(crc(record, record.length)).put(record).flip();
+                while (frame.hasRemaining()) {
+                    out.write(frame);
+                }
+                count[0]++;
+            });
+            // the end frame proves the snapshot was written to the end
+            byte[] trailer = ByteBuffer.allocate(4).putInt(count[0]).array();
+            ByteBuffer end = ByteBuffer.allocate(FRAME_HEADER + 4);
+            end.putInt(END_FRAME).putInt(crc(trailer, 4)).put(trailer).flip();
+            out.write(end);
+            out.force(true);
+        }
+    }
+
+    // Every record of a snapshot, or null if any part of it fails to verify
+    private List<byte[]> readSnapshot(Path path, long number) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (data.remaining() < 16 || data.getInt() != SNAPSHOT_MAGIC || data.getInt() != VERSION
+                || data.getLong() != number) {
+            return null;
+        }
+        List<byte[]> records = new ArrayList<>();
+        while (data.remaining() >= FRAME_HEADER) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length == END_FRAME) {
+                if (data.remaining() != 4) {
+                    return null;
+                }
+                byte[] trailer = new byte[4];
+                data.get(trailer);
+                boolean complete = crc(trailer, 4) == checksum && ByteBuffer.wrap(trailer).getInt() == records.size();
+                return complete ? records : null;
+            }
+            byte[] record = readFrame(data, length, checksum);
+            if (record == null) {
+                return null;
+            }
+            records.add(record);
+        }
+        return null; // no end frame: the snapshot was cut short
+    }
+
+    // Replays segments from the given one on; a bad record ends replay and the log is cut there
+    private void replayJournal(long first, RecordSink apply) throws IOException {
+        TreeMap<Long, Path> segments = list("journal-", ".log");
+        boolean damaged = false;
+        for (Path path : segments.tailMap(first, true).values()) {
+            if (damaged) {
+                // later segments cannot be applied on top of a gap
+                Log.warn("recovery.segment_discarded", "segment", path.getFileName(), "reason", "after a damaged record");
+                Files.delete(path);
+                continue;
+            }
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (data.remaining() < 8 || data.getInt() != SEGMENT_MAGIC || data.getInt() != VERSION) {
+                damaged = true;
+                Log.warn("recovery.segment_discarded", "segment", path.getFileName(), "reason", "no valid header");
+                Files.delete(path);
+                continue;
+            }
+            int good = data.position();
+            while (data.remaining() >= FRAME_HEADER) {
+                byte[] record = readFrame(data, data.getInt(), data.getInt());
+                if (record == null) {
+                    break;
+                }
+                apply.accept(record);
+                good = data.position();
+            }
+            if (good < data.limit()) {
+                // a torn write at the tail, or corruption; keep only what verified
+                damaged = true;
+                Log.error("recovery.segment_damaged", "segment", path.getFileName(), "validBytes", good);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(good);
+                }
+            }
+        }
+    }
+
+    private static byte[] readFrame(ByteBuffer data, int length, int checksum) {
+        if (length < 0 || length > MAX_RECORD || length > data.remaining()) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        data.get(record);
+        return crc(record, length) == checksum ? record : null;
+    }
+
+    // Keeps the newest snapshots and the segments they need; removes everything older
+    private void compact() throws IOException {
+        TreeMap<Long, Path> snapshots = list("snapshot-", ".snap");
+        while (snapshots.size() > SNAPSHOTS_KEPT) {
+            Files.deleteIfExists(snapshots.pollFirstEntry().getValue());
+        }
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        long oldestNeeded = snapshots.firstKey();
+        for (Path path : list("journal-", ".log").headMap(oldestNeeded, false).values()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // Files named prefix + number + suffix, by number
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String digits = name.substring(prefix.length(), name.length() - suffix.length());
+                try {
+                    files.put(Long.parseLong(digits), path);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+}
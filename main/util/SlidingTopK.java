@@ -0,0 +1,263 @@
+package main.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Approximate event counts per int key over a sliding time window, and the keys counted
+ * most often in it, in memory fixed when the tracker is made however many events arrive.
+ *
+ * Time is cut into slices of equal length, kept in a ring that covers the longest window.
+ * Each slice has a count-min sketch, which never undercounts a key, and a space-saving
+ * summary of the keys counted most often in that slice. A query adds up the slices inside
+ * the window: candidates come from their summaries, and each candidate's count is the sum,
+ * slice by slice, of the smaller of the two estimates. A window is rounded to whole slices,
+ * the current one included.
+ */
+public class SlidingTopK {
+    private final long sliceMillis;
+    private final Slice[] slices;
+    private final int width;
+    private final int depth;
+    private final int capacity;
+
+    public static final class Count {
+        private final int key;
+        private final long count;
+
+        Count(int key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public int getKey() {
+            return key;
+        }
+
+        // may be over the true count, never under it
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * @param sliceMillis length of one slice
+     * @param sliceCount  slices kept; the longest window is sliceMillis * sliceCount
+     * @param width       counters per sketch row, rounded up to a power of two
+     * @param depth       sketch rows
+     * @param capacity    keys each slice's summary tracks
+     */
+    public SlidingTopK(long sliceMillis, int sliceCount, int width, int depth, int capacity) {
+        if (sliceMillis <= 0 || sliceCount <= 0 || width <= 0 || depth <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Tracker sizes must be positive.");
+        }
+        this.sliceMillis = sliceMillis;
+        this.slices = new Slice[sliceCount];
+        this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.depth = depth;
+        this.capacity = capacity;
+    }
+
+    public long windowMillis() {
+        return sliceMillis * slices.length;
+    }
+
+    public synchronized void record(int key, long nowMillis) {
+        long epoch = nowMillis / sliceMillis;
+        int position = (int) Math.floorMod(epoch, (long) slices.length);
+        Slice slice = slices[position];
+        if (slice == null) {
+            slice = slices[position] = new Slice(width, depth, capacity);
+        }
+        if (slice.epoch != epoch) {
+            slice.reset(epoch);
+        }
+        slice.add(key);
+    }
+
+    // Estimated count of one key over the window ending now
+    public synchronized long estimate(int key, long windowMillis, long nowMillis) {
+        long total = 0;
+        for (Slice slice : slicesIn(windowMillis, nowMillis)) {
+            total += slice.estimate(key);
+        }
+        return total;
+    }
+
+    // The n keys counted most over the window ending now, most counted first
+    public synchronized List<Count> top(int n, long windowMillis, long nowMillis) {
+        List<Slice> window = slicesIn(windowMillis, nowMillis);
+        Set<Integer> candidates = new HashSet<>();
+        for (Slice slice : window) {
+            slice.summary.keysInto(candidates);
+        }
+        List<Count> counts = new ArrayList<>(candidates.size());
+        for (int key : candidates) {
+            long total = 0;
+            for (Slice slice : window) {
+                total += slice.estimate(key);
+            }
+            counts.add(new Count(key, total));
+        }
+        counts.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : Integer.compare(a.key, b.key));
+        return counts.size() > n ? new ArrayList<>(counts.subList(0, Math.max(0, n))) : counts;
+    }
+
+    private List<Slice> slicesIn(long windowMillis, long nowMillis) {
+        long current = nowMillis / sliceMillis;
+        long count = Math.min(slices.length, Math.max(1, (windowMillis + sliceMillis - 1) / sliceMillis));
+        List<Slice> window = new ArrayList<>((int) count);
+        for (long epoch = current - count + 1; epoch <= current; epoch++) {
+            Slice slice = slices[(int) Math.floorMod(epoch, (long) slices.length)];
+            if (slice != null && slice.epoch == epoch) {
+                window.add(slice);
+            }
+        }
+        return window;
+    }
+
+    private static int hash(int key, int row) {
+        long z = key * 0x9E3779B97F4A7C15L + row * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 31)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 29));
+    }
+
+    private static final class Slice {
+        long epoch = Long.MIN_VALUE;
+        final int[][] sketch;
+        final SpaceSaving summary;
+
+        Slice(int width, int depth, int capacity) {
+            sketch = new int[depth][width];
+            summary = new SpaceSaving(capacity);
+        }
+
+        void reset(long newEpoch) {
+            epoch = newEpoch;
+            for (int[] row : sketch) {
+                Arrays.fill(row, 0);
+            }
+            summary.clear();
+        }
+
+        void add(int key) {
+            int mask = sketch[0].length - 1;
+            for (int row = 0; row < sketch.length; row++) {
+                sketch[row][hash(key, row) & mask]++;
+            }
+            summary.add(key);
+        }
+
+        // The smaller of the sketch and summary upper bounds
+        long estimate(int key) {
+            int mask = sketch[0].length - 1;
+            long best = Long.MAX_VALUE;
+            for (int row = 0; row < sketch.length; row++) {
+                best = Math.min(best, sketch[row][hash(key, row) & mask]);
+            }
+            return Math.min(best, summary.upperBound(key));
+        }
+    }
+
+    /**
+     * Space-saving summary: at most capacity keys, each with a count that is never under its
+     * true count. A new key when full takes the place of the least counted key and inherits
+     * its count. Kept as a min-heap on count, with each key's heap position in a map.
+     */
+    private static final class SpaceSaving {
+        final int[] keys;
+        final long[] counts;
+        final HashMap<Integer, Integer> positions;
+        int size;
+
+        SpaceSaving(int capacity) {
+            keys = new int[capacity];
+            counts = new long[capacity];
+            positions = new HashMap<>(capacity * 2);
+        }
+
+        void clear() {
+            size = 0;
+            positions.clear();
+        }
+
+        void add(int key) {
+            Integer position = positions.get(key);
+            if (position != null) {
+                counts[position]++;
+                siftDown(position);
+            } else if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = 1;
+                positions.put(key, size);
+                siftUp(size++);
+            } else {
+                positions.remove(keys[0]);
+                keys[0] = key;
+                counts[0]++;
+                positions.put(key, 0);
+                siftDown(0);
+            }
+        }
+
+        // A tracked key's count; an untracked key was counted no more than the least tracked one
+        long upperBound(int key) {
+            Integer position = positions.get(key);
+            if (position != null) {
+                return counts[position];
+            }
+            return size < keys.length ? 0 : counts[0];
+        }
+
+        void keysInto(Set<Integer> into) {
+            for (int i = 0; i < size; i++) {
+                into.add(keys[i]);
+            }
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (counts[parent] <= counts[position]) {
+                    return;
+                }
+                swap(position, parent);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                int smallest = position;
+                int left = position * 2 + 1;
+                int right = left + 1;
+                if (left < size && counts[left] < counts[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && counts[right] < counts[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == position) {
+                    return;
+                }
+                swap(position, smallest);
+                position = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int key = keys[a];
+            long count = counts[a];
+            keys[a] = keys[b];
+            counts[a] = counts[b];
+            keys[b] = key;
+            counts[b] = count;
+            positions.put(keys[a], a);
+            positions.put(keys[b], b);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package main.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list that readers see as a series of immutable versions. Writers append in place past the
+ * end of every published version, and only copy the array to grow it or to remove an element,
+ * so a snapshot is one volatile read: readers never lock, never block a writer, and never see
+ * a ConcurrentModificationException. Writers are serialized on the list.
+ */
+public class SnapshotList<T> {
+    private volatile View<T> current = new View<>(new Object[8], 0);
+
+    // The current version; it stays the same however the list changes afterwards
+    public List<T> snapshot() {
+        return current;
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    public boolean contains(Object item) {
+        return current.indexOf(item) >= 0;
+    }
+
+    public synchronized void add(T item) {
+        View<T> view = current;
+        Object[] items = view.items;
+        if (view.size == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+        }
+        // no published version reaches this slot, so it can be written in place
+        items[view.size] = item;
+        current = new View<>(items, view.size + 1);
+    }
+
+    public synchronized boolean remove(Object item) {
+        View<T> view = current;
+        int index = view.indexOf(item);
+        if (index < 0) {
+            return false;
+        }
+        Object[] items = new Object[view.items.length];
+        System.arraycopy(view.items, 0, items, 0, index);
+        System.arraycopy(view.items, index + 1, items, index, view.size - index - 1);
+        current = new View<>(items, view.size - 1);
+        return true;
+    }
+
+    // One version of the list; unmodifiable
+    private static final class View<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] items;
+        private final int size;
+
+        View(Object[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size);
+            return (T) items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
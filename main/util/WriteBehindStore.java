@@ -0,0 +1,223 @@
+package main.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import main.models.Applicant;
+import main.models.BTOProject;
+import main.models.HDBOfficer;
+import main.models.ProjectRepository;
+import main.models.User;
+import main.models.UserRepository;
+
+/**
+ * Write-behind persistence for the CSV files. Mutations call markDirty, which only enqueues
+ * the entity on a bounded queue; a background flusher drains the queue, coalesces repeated
+ * updates to the same entity, and rewrites each affected file once per batch. A batch is
+ * written when the configured number of distinct entities is dirty or the flush interval has
+ * passed since the oldest unwritten change, whichever comes first. A shutdown hook stops the
+ * flusher and writes whatever is still queued.
+ *
+ * Configured with system properties:
+ *   bto.writeBehind.intervalMs     longest delay before a change is written (default 2000)
+ *   bto.writeBehind.batchSize      dirty entities that trigger an early write (default 256)
+ *   bto.writeBehind.queueCapacity  bound of the pending-change queue (default 4096)
+ *
+ * Changes made before start() are not queued, so loading the CSV files does not rewrite them.
+ */
+public class WriteBehindStore {
+
+    public enum Kind { PROJECT, APPLICANT, OFFICER, MANAGER }
+
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("bto.writeBehind.intervalMs", 2000);
+    private static final int BATCH_SIZE = Integer.getInteger("bto.writeBehind.batchSize", 256);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("bto.writeBehind.queueCapacity", 4096);
+    private static final int KIND_SHIFT = 56;
+
+    // kind in the top byte, entity ID below it
+    private static final ArrayBlockingQueue<Long> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // kinds whose whole file is rewritten with the next batch, e.g. because a change could not be queued
+    private static final boolean[] OVERFLOWED = new boolean[Kind.values().length];
+
+    private static volatile boolean running = false;
+    private static Thread flusher;
+
+    public static synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(WriteBehindStore::runFlusher, "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(WriteBehindStore::shutdown, "write-behind-shutdown"));
+    }
+
+    public static void markDirty(Kind kind, long id) {
+        if (!running) {
+            return;
+        }
+        if (!QUEUE.offer(((long) kind.ordinal() << KIND_SHIFT) | id)) {
+            // never block the caller on a full queue; the flusher picks the kind up from here
+            synchronized (OVERFLOWED) {
+                OVERFLOWED[kind.ordinal()] = true;
+            }
+        }
+    }
+
+    // Rewrite every file with the next batch
+    public static void markAllDirty() {
+        if (!running) {
+            return;
+        }
+        synchronized (OVERFLOWED) {
+            Arrays.fill(OVERFLOWED, true);
+        }
+    }
+
+    public static void markDirty(BTOProject project) {
+        markDirty(Kind.PROJECT, project.getProjectId());
+    }
+
+    public static void markDirty(User user) {
+        markDirty(kindOf(user), user.getNricKey());
+    }
+
+    // Stops the flusher and writes everything still pending on the calling thread
+    public static void shutdown() {
+        Thread thread;
+        synchronized (WriteBehindStore.class) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = flusher;
+        }
+        thread.interrupt();
+        try {
+            thread.join(FLUSH_INTERVAL_MS * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        HashSet<Long> pending = new HashSet<>();
+        drainInto(pending);
+        write(pending);
+    }
+
+    private static void runFlusher() {
+        HashSet<Long> pending = new HashSet<>();
+        long oldestChange = 0;
+        while (running) {
+            try {
+                long wait = pending.isEmpty() ? FLUSH_INTERVAL_MS
+                        : Math.max(1, oldestChange + FLUSH_INTERVAL_MS - System.currentTimeMillis());
+                Long first = QUEUE.poll(wait, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    if (pending.isEmpty()) {
+                        oldestChange = System.currentTimeMillis();
+                    }
+                    pending.add(first);
+                }
+                drainInto(pending);
+            } catch (InterruptedException e) {
+                break; // shutdown() writes the rest
+            }
+            if (pending.isEmpty() && !hasOverflow()) {
+                continue;
+            }
+            boolean due = System.currentTimeMillis() - oldestChange >= FLUSH_INTERVAL_MS;
+            if (due || pending.size() >= BATCH_SIZE || hasOverflow()) {
+                pending = write(pending);
+                oldestChange = System.currentTimeMillis();
+            }
+        }
+        // hand anything collected back to the queue for shutdown() to write
+        for (Long entry : pending) {
+            if (!QUEUE.offer(entry)) {
+                synchronized (OVERFLOWED) {
+                    OVERFLOWED[(int) (entry >>> KIND_SHIFT)] = true;
+                }
+            }
+        }
+    }
+
+    private static void drainInto(HashSet<Long> pending) {
+        List<Long> batch = new ArrayList<>();
+        QUEUE.drainTo(batch);
+        pending.addAll(batch); // repeated updates to one entity collapse here
+    }
+
+    private static boolean hasOverflow() {
+        synchronized (OVERFLOWED) {
+            for (boolean overflowed : OVERFLOWED) {
+                if (overflowed) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Rewrites each file with a dirty entity once; returns the entries that must be retried
+    private static HashSet<Long> write(HashSet<Long> pending) {
+        boolean[] dirty = new boolean[Kind.values().length];
+        for (Long entry : pending) {
+            dirty[(int) (entry >>> KIND_SHIFT)] = true;
+        }
+        synchronized (OVERFLOWED) {
+            for (int kind = 0; kind < dirty.length; kind++) {
+                dirty[kind] |= OVERFLOWED[kind];
+                OVERFLOWED[kind] = false;
+            }
+        }
+
+        HashSet<Long> retry = new HashSet<>();
+        for (Kind kind : Kind.values()) {
+            if (!dirty[kind.ordinal()]) {
+                continue;
+            }
+            try {
+                writeKind(kind);
+            } catch (RuntimeException e) {
+                // keep the flusher alive and the kind dirty, so the next batch tries again
+                Log.error("writeBehind.write_failed", "kind", kind, "error", e);
+                retry.add((long) kind.ordinal() << KIND_SHIFT);
+            }
+        }
+        return retry;
+    }
+
+    private static void writeKind(Kind kind) {
+        if (kind == Kind.PROJECT) {
+            FileManager.saveProjects(ProjectRepository.getAllProjects());
+            return;
+        }
+        List<User> users = new ArrayList<>();
+        for (User user : UserRepository.getAllUsers()) {
+            if (kindOf(user) == kind) {
+                users.add(user);
+            }
+        }
+        if (kind == Kind.APPLICANT) {
+            FileManager.saveApplicants(users);
+        } else if (kind == Kind.OFFICER) {
+            FileManager.saveOfficers(users);
+        } else {
+            FileManager.saveManagers(users);
+        }
+    }
+
+    private static Kind kindOf(User user) {
+        if (user instanceof HDBOfficer) {
+            return Kind.OFFICER;
+        }
+        if (user instanceof Applicant) {
+            return Kind.APPLICANT;
+        }
+        return Kind.MANAGER;
+    }
+}